@@ -71,6 +71,7 @@ public class ADNList extends ListActivity {
 
 
     protected QueryHandler mQueryHandler;
+    protected SimPhoneBookCache mPhoneBookCache;
     protected CursorAdapter mCursorAdapter;
     protected Cursor mCursor = null;
 
@@ -86,6 +87,7 @@ public class ADNList extends ListActivity {
         setContentView(R.layout.adn_list);
         mEmptyText = (TextView) findViewById(android.R.id.empty);
         mQueryHandler = new QueryHandler(getContentResolver());
+        mPhoneBookCache = SimPhoneBookCache.getInstance(this);
     }
 
     @Override
@@ -113,8 +115,14 @@ public class ADNList extends ListActivity {
 
     private void query() {
         Uri uri = resolveIntent();
+        Cursor cached = mPhoneBookCache.query(uri);
+        if (cached != null) {
+            if (DBG) log("query: using cached phone book");
+            onQueryResult(cached);
+            return;
+        }
         if (DBG) log("query: starting an async query");
-        mQueryHandler.startQuery(QUERY_TOKEN, null, uri, COLUMN_NAMES,
+        mQueryHandler.startQuery(QUERY_TOKEN, uri, uri, COLUMN_NAMES,
                 null, null, null);
         displayProgress(true);
     }
@@ -163,6 +171,15 @@ public class ADNList extends ListActivity {
         }
     }
 
+    private void onQueryResult(Cursor c) {
+        mCursor = c;
+        setAdapter();
+        displayProgress(false);
+
+        // Cursor is refreshed and inherited classes may have menu items depending on it.
+        invalidateOptionsMenu();
+    }
+
     protected CursorAdapter newAdapter() {
         return new SimpleCursorAdapter(this,
                     android.R.layout.simple_list_item_2,
@@ -192,15 +209,14 @@ public class ADNList extends ListActivity {
 
         @Override
         protected void onQueryComplete(int token, Object cookie, Cursor c) {
-            if (DBG) log("onQueryComplete: cursor.count=" + c.getCount());
-            mCursor = c;
-            setAdapter();
-            displayProgress(false);
-
-            // Cursor is refreshed and inherited classes may have menu items depending on it.
-            invalidateOptionsMenu();
+            if (DBG) log("onQueryComplete: cursor.count=" + (c != null ? c.getCount() : 0));
+            onQueryResult(mPhoneBookCache.put((Uri) cookie, c));
         }
 
+        /**
+         * The cookie of insert, update and delete requests is the phone book
+         * URI whose cached copy was already modified; roll it back on failure.
+         */
         @Override
         protected void onInsertComplete(int token, Object cookie, Uri uri) {
             if (DBG) log("onInsertComplete: requery");
@@ -208,6 +224,7 @@ public class ADNList extends ListActivity {
             if (uri != null) {
                 showAlertDialog(getString(R.string.contactAddSuccess));
             } else {
+                invalidateCache(cookie);
                 showAlertDialog(getString(R.string.contactAddFailed));
             }
             reQuery();
@@ -220,6 +237,7 @@ public class ADNList extends ListActivity {
             if (result == SUCCESS) {
                 showAlertDialog(getString(R.string.contactUpdateSuccess));
             } else {
+                invalidateCache(cookie);
                 showAlertDialog(getString(R.string.contactUpdateFailed));
             }
             reQuery();
@@ -232,10 +250,17 @@ public class ADNList extends ListActivity {
             if (result == SUCCESS) {
                 showAlertDialog(getString(R.string.contactdeleteSuccess));
             } else {
+                invalidateCache(cookie);
                 showAlertDialog(getString(R.string.contactdeleteFailed));
             }
             reQuery();
         }
+
+        private void invalidateCache(Object cookie) {
+            if (cookie instanceof Uri) {
+                mPhoneBookCache.invalidate((Uri) cookie);
+            }
+        }
     }
 
     protected void showAlertDialog(String value) {
@@ -23,12 +23,19 @@ import android.hardware.SensorEventListener;
 import android.hardware.SensorManager;
 import android.os.Handler;
 import android.os.Message;
+import android.os.SystemClock;
 import android.util.Log;
 
 /**
  * This class is used to listen to the accelerometer to monitor the
  * orientation of the phone. The client of this class is notified when
  * the orientation changes between horizontal and vertical.
+ *
+ * The client picks how often the sensor is sampled (see {@link #setRate}),
+ * so that it can be sampled quickly while the phone is likely to be moving
+ * (e.g. towards the ear while dialing), slowly during a long call, and not at
+ * all while the orientation can't make a difference.  The sensor events and
+ * registrations are counted until {@link #logStats()}.
  */
 public final class AccelerometerListener {
     private static final String TAG = "AccelerometerListener";
@@ -58,6 +65,29 @@ public final class AccelerometerListener {
     private static final int VERTICAL_DEBOUNCE = 100;
     private static final int HORIZONTAL_DEBOUNCE = 500;
     private static final double VERTICAL_ANGLE = 50.0;
+    // The orientation is vertical when the angle between the acceleration
+    // vector and the Z axis exceeds VERTICAL_ANGLE, i.e. when
+    // (x^2 + y^2) > tan^2(VERTICAL_ANGLE) * z^2 (or z <= 0).
+    private static final double VERTICAL_TAN_SQUARED =
+            Math.pow(Math.tan(Math.toRadians(VERTICAL_ANGLE)), 2);
+
+    // Sampling rates for setRate().
+    public static final int RATE_OFF = 0;
+    /** The rate we always used; for when the phone is likely to be moved. */
+    public static final int RATE_FAST = 1;
+    /** For a call that is going on; the horizontal debounce is longer anyway. */
+    public static final int RATE_SLOW = 2;
+
+    // Sampling period for RATE_SLOW, in microseconds.
+    private static final int SLOW_PERIOD_US = 400 * 1000;
+
+    private int mRate = RATE_OFF;
+
+    // Stats, for logStats().
+    private int mEvents;
+    private int mRegistrations;
+    private int mOrientationChanges;
+    private long mStatsStartTime = SystemClock.elapsedRealtime();
 
     public interface OrientationListener {
         public void orientationChanged(int orientation);
@@ -70,17 +100,62 @@ public final class AccelerometerListener {
     }
 
     public void enable(boolean enable) {
-        if (DEBUG) Log.d(TAG, "enable(" + enable + ")");
+        setRate(enable ? RATE_FAST : RATE_OFF);
+    }
+
+    /**
+     * Samples the sensor at {@code rate} (one of the RATE_* constants).
+     * Turning the sensor on starts over with an unknown orientation; changing
+     * the rate while it's on keeps the current one.
+     */
+    public void setRate(int rate) {
         synchronized (this) {
-            if (enable) {
+            if (rate == mRate) {
+                return;
+            }
+            if (DEBUG) Log.d(TAG, "setRate(" + rate + "), was " + mRate);
+            if (mRate == RATE_OFF) {
                 mOrientation = ORIENTATION_UNKNOWN;
                 mPendingOrientation = ORIENTATION_UNKNOWN;
-                mSensorManager.registerListener(mSensorListener, mSensor,
-                        SensorManager.SENSOR_DELAY_NORMAL);
             } else {
                 mSensorManager.unregisterListener(mSensorListener);
-                mHandler.removeMessages(ORIENTATION_CHANGED);
             }
+            switch (rate) {
+                case RATE_FAST:
+                    mSensorManager.registerListener(mSensorListener, mSensor,
+                            SensorManager.SENSOR_DELAY_NORMAL);
+                    mRegistrations++;
+                    break;
+                case RATE_SLOW:
+                    // registerListener() takes a period in microseconds as
+                    // well as the SENSOR_DELAY_* constants.
+                    mSensorManager.registerListener(mSensorListener, mSensor, SLOW_PERIOD_US);
+                    mRegistrations++;
+                    break;
+                default:
+                    mHandler.removeMessages(ORIENTATION_CHANGED);
+                    break;
+            }
+            mRate = rate;
+        }
+    }
+
+    /**
+     * Logs how busy the sensor has been kept since the last call, and
+     * starts counting again.
+     */
+    public void logStats() {
+        synchronized (this) {
+            if (DEBUG) {
+                long elapsed = SystemClock.elapsedRealtime() - mStatsStartTime;
+                Log.d(TAG, "sensor events: " + mEvents + " in " + elapsed + " ms, "
+                        + mRegistrations + " registrations, "
+                        + mOrientationChanges + " orientation changes");
+            }
+            mEvents = 0;
+            mRegistrations = 0;
+            mOrientationChanges = 0;
+            mStatsStartTime = SystemClock.elapsedRealtime();
         }
     }
 
@@ -112,21 +187,22 @@ public final class AccelerometerListener {
         }
     }
 
-    private void onSensorEvent(double x, double y, double z) {
+    private void onSensorEvent(float x, float y, float z) {
         if (VDEBUG) Log.d(TAG, "onSensorEvent(" + x + ", " + y + ", " + z + ")");
+        synchronized (this) {
+            mEvents++;
+        }
 
         // If some values are exactly zero, then likely the sensor is not powered up yet.
         // ignore these events to avoid false horizontal positives.
-        if (x == 0.0 || y == 0.0 || z == 0.0) return;
-
-        // magnitude of the acceleration vector projected onto XY plane
-        double xy = Math.sqrt(x*x + y*y);
-        // compute the vertical angle
-        double angle = Math.atan2(xy, z);
-        // convert to degrees
-        angle = angle * 180.0 / Math.PI;
-        int orientation = (angle >  VERTICAL_ANGLE ? ORIENTATION_VERTICAL : ORIENTATION_HORIZONTAL);
-        if (VDEBUG) Log.d(TAG, "angle: " + angle + " orientation: " + orientation);
+        if (x == 0.0f || y == 0.0f || z == 0.0f) return;
+
+        // Compare the squared tangent of the vertical angle instead of
+        // computing the angle itself; this runs for every sample.
+        double xy2 = (double) x * x + (double) y * y;
+        int orientation = (z < 0.0f || xy2 > VERTICAL_TAN_SQUARED * z * z)
+                ? ORIENTATION_VERTICAL : ORIENTATION_HORIZONTAL;
+        if (VDEBUG) Log.d(TAG, "orientation: " + orientation);
         setOrientation(orientation);
     }
 
@@ -144,8 +220,9 @@ public final class AccelerometerListener {
         public void handleMessage(Message msg) {
             switch (msg.what) {
             case ORIENTATION_CHANGED:
-                synchronized (this) {
+                synchronized (AccelerometerListener.this) {
                     mOrientation = mPendingOrientation;
+                    mOrientationChanges++;
                     if (DEBUG) {
                         Log.d(TAG, "orientation: " +
                             (mOrientation == ORIENTATION_HORIZONTAL ? "horizontal"
@@ -24,6 +24,7 @@ public class CLIRListPreference extends ListPreference {
 
     private final MyHandler mHandler = new MyHandler();
     private Phone mPhone;
+    private int mSubscription;
     private TimeConsumingPreferenceListener mTcpListener;
 
     int clirArray[];
@@ -49,20 +50,45 @@ public class CLIRListPreference extends ListPreference {
         }
     }
 
-    /*package*/ void init(TimeConsumingPreferenceListener listener, boolean skipReading,
+    /**
+     * Binds this preference to a subscription and, unless skipReading is set,
+     * loads the current setting, showing a value cached in
+     * {@link SuppServiceCache} right away when there is one.
+     *
+     * @return true if a blocking network query was started, in which case the
+     *         listener will get onStarted() / onFinished() for it.
+     */
+    /*package*/ boolean init(TimeConsumingPreferenceListener listener, boolean skipReading,
             int subscription) {
         // Get the selected subscription
         Log.d(LOG_TAG, "CLIRListPreference init, subscription :" + subscription);
         mPhone = PhoneGlobals.getInstance().getPhone(subscription);
+        mSubscription = subscription;
 
         mTcpListener = listener;
-        if (!skipReading) {
-            mPhone.getOutgoingCallerIdDisplay(mHandler.obtainMessage(MyHandler.MESSAGE_GET_CLIR,
-                    MyHandler.MESSAGE_GET_CLIR, MyHandler.MESSAGE_GET_CLIR));
-            if (mTcpListener != null) {
-                mTcpListener.onStarted(this, true);
+        if (skipReading) {
+            return false;
+        }
+
+        SuppServiceCache cache = SuppServiceCache.getInstance();
+        int[] cached = cache.getClir(subscription);
+        if (cached != null) {
+            if (DBG) Log.d(LOG_TAG, "init: using cached CLIR state");
+            handleGetCLIRResult(cached);
+            if (!cache.isFresh(subscription, SuppServiceCache.KEY_CLIR)) {
+                mPhone.getOutgoingCallerIdDisplay(mHandler.obtainMessage(
+                        MyHandler.MESSAGE_GET_CLIR, MyHandler.MESSAGE_GET_CLIR,
+                        MyHandler.MESSAGE_REFRESH_CLIR));
             }
+            return false;
+        }
+
+        mPhone.getOutgoingCallerIdDisplay(mHandler.obtainMessage(MyHandler.MESSAGE_GET_CLIR,
+                MyHandler.MESSAGE_GET_CLIR, MyHandler.MESSAGE_GET_CLIR));
+        if (mTcpListener != null) {
+            mTcpListener.onStarted(this, true);
         }
+        return true;
     }
 
     /* package */ void handleGetCLIRResult(int tmpClirArray[]) {
@@ -117,6 +143,7 @@ public class CLIRListPreference extends ListPreference {
     private class MyHandler extends Handler {
         static final int MESSAGE_GET_CLIR = 0;
         static final int MESSAGE_SET_CLIR = 1;
+        static final int MESSAGE_REFRESH_CLIR = 2;
 
         @Override
         public void handleMessage(Message msg) {
@@ -133,6 +160,17 @@ public class CLIRListPreference extends ListPreference {
         private void handleGetCLIRResponse(Message msg) {
             AsyncResult ar = (AsyncResult) msg.obj;
 
+            if (msg.arg2 == MESSAGE_REFRESH_CLIR) {
+                // Background refresh of a cached value; keep showing the cached
+                // value quietly if it fails.
+                int refreshed[] = (int[]) ar.result;
+                if (ar.exception == null && refreshed != null && refreshed.length == 2) {
+                    SuppServiceCache.getInstance().putClir(mSubscription, refreshed);
+                    handleGetCLIRResult(refreshed);
+                }
+                return;
+            }
+
             if (msg.arg2 == MESSAGE_SET_CLIR) {
                 mTcpListener.onFinished(CLIRListPreference.this, false);
             } else {
@@ -154,6 +192,7 @@ public class CLIRListPreference extends ListPreference {
                                 + " clirArray[0]=" + clirArray[0]
                                 + ", clirArray[1]=" + clirArray[1]);
                     }
+                    SuppServiceCache.getInstance().putClir(mSubscription, clirArray);
                     handleGetCLIRResult(clirArray);
                 }
             }
@@ -166,6 +205,7 @@ public class CLIRListPreference extends ListPreference {
                 if (DBG) Log.d(LOG_TAG, "handleSetCallWaitingResponse: ar.exception="+ar.exception);
                 //setEnabled(false);
             }
+            SuppServiceCache.getInstance().invalidate(mSubscription, SuppServiceCache.KEY_CLIR);
             if (DBG) Log.d(LOG_TAG, "handleSetCallWaitingResponse: re get");
 
             mPhone.getOutgoingCallerIdDisplay(obtainMessage(MESSAGE_GET_CLIR,
@@ -34,7 +34,6 @@ import android.os.SystemProperties;
 import android.provider.ContactsContract.Contacts;
 import android.telephony.PhoneNumberUtils;
 import android.text.TextUtils;
-import android.text.format.DateUtils;
 import android.util.AttributeSet;
 import android.util.Log;
 import android.view.Gravity;
@@ -128,7 +127,9 @@ public class CallCard extends LinearLayout
     private ImageView mPhoto;
     private View mPhotoDimEffect;
 
+    // Null until the first video call; see updateVideoCallState().
     private VideoCallPanel mVideoCallPanel;
+    private LazyViewStub<VideoCallPanel> mVideoCallPanelStub;
     private TextView mName;
     private TextView mPhoneNumber;
     private TextView mLabel;
@@ -152,6 +153,8 @@ public class CallCard extends LinearLayout
     private int mIncomingCallWidgetHintColorResId;
 
     private CallTime mCallTime;
+    private final CallDurationTicker.ElapsedTimeText mElapsedTimeText =
+            new CallDurationTicker.ElapsedTimeText();
 
     // Track the state for the photo.
     private ContactsAsyncHelper.ImageTracker mPhotoTracker;
@@ -275,7 +278,8 @@ public class CallCard extends LinearLayout
         mSecondaryCallInfo = (ViewStub) findViewById(R.id.secondary_call_info);
 
         // VideoCallPanel for Video Telephony calls
-        mVideoCallPanel = (VideoCallPanel) findViewById(R.id.videoCallPanel);
+        mVideoCallPanelStub = new LazyViewStub<VideoCallPanel>(this,
+                R.id.videoCallPanelStub, R.id.videoCallPanel);
     }
 
     /**
@@ -660,7 +664,12 @@ public class CallCard extends LinearLayout
                         if (!(ci.isEmergencyNumber() || ci.isVoiceMailNumber()) &&
                             (connAddress != null && !connAddress.equals(number))) {
                             log("- displayMainCallStatus: Phone number modified!!");
-                            CallerInfo newCi = CallerInfo.getCallerInfo(getContext(), connAddress);
+                            CallerInfoLookupCache cache = CallerInfoLookupCache.getInstance();
+                            CallerInfo newCi = cache.get(connAddress);
+                            if (newCi == null) {
+                                newCi = CallerInfo.getCallerInfo(getContext(), connAddress);
+                                cache.put(connAddress, newCi);
+                            }
                             if (newCi != null) {
                                 ci = newCi;
                                 conn.setUserData(ci);
@@ -746,10 +755,12 @@ public class CallCard extends LinearLayout
         Call.State state = call.getState();
         if (DBG) log("  - Videocall.state: " + state);
 
-        // Null check
         if (mVideoCallPanel == null) {
-            loge("VideocallPanel is null");
-            return;
+            mVideoCallPanel = mVideoCallPanelStub.get();
+            if (mVideoCallPanel == null) {
+                loge("VideocallPanel is null");
+                return;
+            }
         }
         int callType = getVideoCallType(call);
         switch (state) {
@@ -1175,7 +1186,7 @@ public class CallCard extends LinearLayout
      */
     private void updateElapsedTimeWidget(long timeElapsed) {
         // if (DBG) log("updateElapsedTimeWidget: " + timeElapsed);
-        mElapsedTime.setText(DateUtils.formatElapsedTime(timeElapsed));
+        mElapsedTimeText.setText(mElapsedTime, timeElapsed);
     }
 
     /**
@@ -2022,6 +2033,7 @@ public class CallCard extends LinearLayout
         // Other elements can also be cleared here.  Starting with elapsed time to fix a bug.
         mElapsedTime.setVisibility(View.GONE);
         mElapsedTime.setText(null);
+        mElapsedTimeText.reset();
     }
 
 
@@ -259,6 +259,7 @@ public class CallController extends Handler {
         }
 
         CallStatusCode status = placeCallInternal(intent);
+        Profiler.outgoingCallPlaced();
 
         switch (status) {
             // Call was placed successfully:
@@ -413,9 +414,9 @@ public class CallController extends Handler {
         // (This is just a sanity-check; this policy *should* really be
         // enforced in OutgoingCallBroadcaster.onCreate(), which is the
         // main entry point for the CALL and CALL_* intents.)
-        boolean isEmergencyNumber = PhoneNumberUtils.isLocalEmergencyNumber(number, mApp);
+        boolean isEmergencyNumber = EmergencyNumberMatcher.getInstance().isEmergencyNumber(number);
         boolean isPotentialEmergencyNumber =
-                PhoneNumberUtils.isPotentialLocalEmergencyNumber(number, mApp);
+                EmergencyNumberMatcher.getInstance().isPotentialEmergencyNumber(number);
         boolean isEmergencyIntent = Intent.ACTION_CALL_EMERGENCY.equals(intent.getAction());
 
         if (isPotentialEmergencyNumber && !isEmergencyIntent) {
@@ -0,0 +1,294 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.phone;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.PowerManager;
+import android.os.SystemClock;
+import android.text.format.DateUtils;
+import android.util.Log;
+import android.view.Choreographer;
+import android.widget.TextView;
+
+import java.text.DecimalFormatSymbols;
+import java.util.ArrayList;
+
+/**
+ * Single once-per-second clock shared by every "elapsed time" display of the
+ * in-call UI (the CallCard timer, the "Manage conference" header, ...).
+ *
+ * Ticks are aligned to the second boundaries of the uptime clock and
+ * delivered on a Choreographer frame, so all the displays change in the same
+ * frame and the process wakes up once per second no matter how many of them
+ * are visible.  The clock stops entirely while there are no listeners and
+ * while the screen is off; listeners get an immediate tick when it starts
+ * again so they catch up.  (It keeps running while the proximity sensor
+ * blanks the screen during a call, which sends no SCREEN_OFF broadcast:
+ * watching the sensor ourselves would cost another sensor listener for the
+ * whole call, which is more than the ticks do.)
+ *
+ * Must only be used from the main thread.
+ */
+public class CallDurationTicker implements Choreographer.FrameCallback {
+    private static final String LOG_TAG = "CallDurationTicker";
+    private static final boolean DBG = (PhoneGlobals.DBG_LEVEL >= 2);
+
+    private static final long TICK_INTERVAL = 1000;
+
+    /**
+     * Receives the clock ticks.
+     */
+    interface Listener {
+        void onTick();
+    }
+
+    private static CallDurationTicker sInstance;
+
+    private final Context mContext;
+    private final Choreographer mChoreographer;
+    private final ArrayList<Listener> mListeners = new ArrayList<Listener>();
+
+    private boolean mScheduled;
+    private boolean mScreenOn = true;
+    private boolean mReceiverRegistered;
+
+    private final BroadcastReceiver mScreenReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            setScreenOn(Intent.ACTION_SCREEN_ON.equals(intent.getAction()));
+        }
+    };
+
+    static synchronized CallDurationTicker getInstance() {
+        if (sInstance == null) {
+            sInstance = new CallDurationTicker(PhoneGlobals.getInstance());
+        }
+        return sInstance;
+    }
+
+    private CallDurationTicker(Context context) {
+        mContext = context;
+        mChoreographer = Choreographer.getInstance();
+    }
+
+    /**
+     * Starts delivering ticks to {@code listener}.  Adding a listener that is
+     * already registered has no effect.
+     */
+    void addListener(Listener listener) {
+        if (mListeners.contains(listener)) {
+            return;
+        }
+        mListeners.add(listener);
+        if (mListeners.size() == 1) {
+            if (DBG) log("first listener, starting");
+            PowerManager pm = (PowerManager) mContext.getSystemService(Context.POWER_SERVICE);
+            mScreenOn = pm.isScreenOn();
+            updateRegistrations();
+        }
+        schedule();
+    }
+
+    void removeListener(Listener listener) {
+        if (mListeners.remove(listener) && mListeners.isEmpty()) {
+            if (DBG) log("last listener gone, stopping");
+            unschedule();
+            updateRegistrations();
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        mScheduled = false;
+        dispatchTick();
+        schedule();
+    }
+
+    private void setScreenOn(boolean screenOn) {
+        if (screenOn == mScreenOn) {
+            return;
+        }
+        if (DBG) log("screen on: " + screenOn);
+        boolean wasRunning = isRunning();
+        mScreenOn = screenOn;
+        onRunningChanged(wasRunning);
+    }
+
+    private boolean isRunning() {
+        return !mListeners.isEmpty() && mScreenOn;
+    }
+
+    private void onRunningChanged(boolean wasRunning) {
+        boolean running = isRunning();
+        if (running == wasRunning) {
+            return;
+        }
+        if (running) {
+            // The displays haven't been updated for a while; catch up now.
+            dispatchTick();
+            schedule();
+        } else {
+            unschedule();
+        }
+    }
+
+    private void dispatchTick() {
+        // Listeners may unregister themselves from onTick().
+        for (int i = mListeners.size() - 1; i >= 0; i--) {
+            if (i < mListeners.size()) {
+                mListeners.get(i).onTick();
+            }
+        }
+    }
+
+    private void schedule() {
+        if (mScheduled || !isRunning()) {
+            return;
+        }
+        mScheduled = true;
+        long delay = TICK_INTERVAL - (SystemClock.uptimeMillis() % TICK_INTERVAL);
+        mChoreographer.postFrameCallbackDelayed(this, delay);
+    }
+
+    private void unschedule() {
+        if (mScheduled) {
+            mChoreographer.removeFrameCallback(this);
+            mScheduled = false;
+        }
+    }
+
+    /**
+     * Registers the screen receiver while we have listeners.
+     */
+    private void updateRegistrations() {
+        boolean active = !mListeners.isEmpty();
+        if (active != mReceiverRegistered) {
+            if (active) {
+                IntentFilter filter = new IntentFilter(Intent.ACTION_SCREEN_ON);
+                filter.addAction(Intent.ACTION_SCREEN_OFF);
+                mContext.registerReceiver(mScreenReceiver, filter);
+            } else {
+                mContext.unregisterReceiver(mScreenReceiver);
+            }
+            mReceiverRegistered = active;
+        }
+    }
+
+    /**
+     * Formats elapsed times into a TextView without allocating: the text is
+     * built in a preallocated char buffer that the TextView displays
+     * directly, and nothing is done when the displayed second hasn't changed.
+     * Falls back to DateUtils.formatElapsedTime() for locales that don't use
+     * ASCII digits.
+     */
+    static final class ElapsedTimeText {
+        private final String mPrefix;
+        private final String mSuffix;
+        private final boolean mAsciiDigits;
+        private final char[] mBuffer;
+        private long mLastSeconds = -1;
+
+        /** Formats the elapsed time on its own. */
+        ElapsedTimeText() {
+            this(null);
+        }
+
+        /**
+         * Formats the elapsed time into {@code template}, in place of its
+         * "%s" (as Chronometer.setFormat() does).
+         */
+        ElapsedTimeText(String template) {
+            int index = (template != null) ? template.indexOf("%s") : -1;
+            if (index >= 0) {
+                mPrefix = template.substring(0, index);
+                mSuffix = template.substring(index + 2);
+            } else {
+                mPrefix = "";
+                mSuffix = "";
+            }
+            mAsciiDigits = new DecimalFormatSymbols().getZeroDigit() == '0';
+            // Room for the prefix and suffix, and "HHHHHHH:MM:SS".
+            mBuffer = new char[mPrefix.length() + mSuffix.length() + 16];
+            mPrefix.getChars(0, mPrefix.length(), mBuffer, 0);
+        }
+
+        /**
+         * Shows {@code seconds} in {@code view}, unless it already does.
+         */
+        void setText(TextView view, long seconds) {
+            if (seconds < 0) {
+                seconds = 0;
+            }
+            if (seconds == mLastSeconds) {
+                return;
+            }
+            mLastSeconds = seconds;
+
+            if (!mAsciiDigits) {
+                view.setText(mPrefix + DateUtils.formatElapsedTime(seconds) + mSuffix);
+                return;
+            }
+
+            // Same layout as DateUtils.formatElapsedTime(): "MM:SS", or
+            // "H:MM:SS" from one hour on.
+            int pos = mPrefix.length();
+            long hours = seconds / 3600;
+            long minutes = (seconds / 60) % 60;
+            long secs = seconds % 60;
+            if (hours > 0) {
+                pos = appendNumber(hours, pos);
+                mBuffer[pos++] = ':';
+            }
+            mBuffer[pos++] = (char) ('0' + minutes / 10);
+            mBuffer[pos++] = (char) ('0' + minutes % 10);
+            mBuffer[pos++] = ':';
+            mBuffer[pos++] = (char) ('0' + secs / 10);
+            mBuffer[pos++] = (char) ('0' + secs % 10);
+            mSuffix.getChars(0, mSuffix.length(), mBuffer, pos);
+            pos += mSuffix.length();
+
+            view.setText(mBuffer, 0, pos);
+        }
+
+        /**
+         * Forgets what was shown last, for when somebody else changed the
+         * text of the view.
+         */
+        void reset() {
+            mLastSeconds = -1;
+        }
+
+        private int appendNumber(long value, int pos) {
+            int digits = 1;
+            for (long v = value / 10; v > 0; v /= 10) {
+                digits++;
+            }
+            for (int i = pos + digits - 1; i >= pos; i--) {
+                mBuffer[i] = (char) ('0' + value % 10);
+                value /= 10;
+            }
+            return pos + digits;
+        }
+    }
+
+    private static void log(String msg) {
+        Log.d(LOG_TAG, msg);
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.phone;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.android.internal.telephony.Call;
+import com.android.internal.telephony.CallManager;
+import com.android.internal.telephony.Connection;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * A compact record of the telephony events the phone app reacted to, for
+ * figuring out after the fact what happened during a call that went wrong,
+ * when the logcat is long gone.
+ *
+ * Events are written as fixed-size binary records into a ring in a
+ * memory-mapped file, so recording one is a handful of stores into memory
+ * and the kernel writes them out, even if the phone process crashes.  The
+ * journal carries over from one phone process to the next, with a START
+ * record in between.
+ *
+ * Each record is {@link #RECORD_SIZE} bytes: the elapsedRealtime() of the
+ * event, its type, three small arguments (call states, causes) and an int
+ * value (e.g. the identity of the Connection involved).  The journal is
+ * decoded by {@link #dump}, which TelephonyDebugService calls.  The file
+ * is opened when PhoneGlobals is created.
+ */
+/* package */ final class CallEventJournal {
+    private static final String LOG_TAG = "CallEventJournal";
+    private static final boolean DBG = (PhoneGlobals.DBG_LEVEL >= 2);
+
+    private static final String FILE_NAME = "call_journal";
+
+    private static final int MAGIC = 0x434a4e32;  // "CJN2"
+    private static final int HEADER_SIZE = 16;
+    private static final int RECORD_SIZE = 16;
+    private static final int CAPACITY = 4096;
+
+    // Header fields.
+    private static final int HEADER_MAGIC = 0;
+    private static final int HEADER_NEXT = 4;
+    private static final int HEADER_COUNT = 8;
+
+    // Record types.
+    static final byte TYPE_START = 1;
+    static final byte TYPE_PHONE_STATE = 2;        // fg, bg, ringing call states
+    static final byte TYPE_NEW_RINGING_CONNECTION = 3;  // value: connection
+    static final byte TYPE_DISCONNECT = 4;         // value: cause
+    static final byte TYPE_MMI_COMPLETE = 5;
+    static final byte TYPE_SUPP_SERVICE_FAILED = 6;  // a: service
+    static final byte TYPE_AUDIO_MODE = 7;         // a: mode before, b: mode after
+
+    private static final String[] TYPE_NAMES = {
+        "?", "START", "PHONE_STATE", "NEW_RINGING_CONNECTION", "DISCONNECT",
+        "MMI_COMPLETE", "SUPP_SERVICE_FAILED", "AUDIO_MODE"
+    };
+
+    private static CallEventJournal sInstance;
+
+    private final ByteBuffer mBuffer;
+    private final boolean mPersistent;
+    private int mNext;
+    private int mCount;
+
+    static synchronized CallEventJournal getInstance() {
+        if (sInstance == null) {
+            sInstance = new CallEventJournal(PhoneGlobals.getInstance());
+        }
+        return sInstance;
+    }
+
+    private CallEventJournal(Context context) {
+        ByteBuffer buffer = null;
+        File file = new File(context.getFilesDir(), FILE_NAME);
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(file, "rw");
+            buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0,
+                    HEADER_SIZE + CAPACITY * RECORD_SIZE);
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Can't map " + file + ", keeping the journal in memory: " + e);
+        } finally {
+            // The mapping stays valid after the file is closed.
+            if (raf != null) {
+                try {
+                    raf.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+        }
+        mPersistent = (buffer != null);
+        if (buffer == null) {
+            buffer = ByteBuffer.allocate(HEADER_SIZE + CAPACITY * RECORD_SIZE);
+        }
+        mBuffer = buffer;
+
+        int next = mBuffer.getInt(HEADER_NEXT);
+        int count = mBuffer.getInt(HEADER_COUNT);
+        if (mBuffer.getInt(HEADER_MAGIC) == MAGIC && next >= 0 && next < CAPACITY
+                && count >= 0 && count <= CAPACITY) {
+            mNext = next;
+            mCount = count;
+        } else {
+            mBuffer.putInt(HEADER_MAGIC, MAGIC);
+        }
+        if (DBG) log("journal has " + mCount + " records, persistent=" + mPersistent);
+        record(TYPE_START, 0, 0, 0, 0);
+    }
+
+    /**
+     * Records the state of the foreground, background and ringing calls.
+     */
+    void recordPhoneState(CallManager cm) {
+        record(TYPE_PHONE_STATE, cm.getActiveFgCallState().ordinal(),
+                cm.getFirstActiveBgCall().getState().ordinal(),
+                cm.getFirstActiveRingingCall().getState().ordinal(), 0);
+    }
+
+    void recordNewRingingConnection(Connection c) {
+        record(TYPE_NEW_RINGING_CONNECTION, 0, 0, 0, System.identityHashCode(c));
+    }
+
+    void recordDisconnect(Connection c) {
+        Connection.DisconnectCause cause = (c != null) ? c.getDisconnectCause() : null;
+        // The cause goes in the int field; there are more causes than fit in a byte.
+        record(TYPE_DISCONNECT, 0, 0, 0, (cause != null) ? cause.ordinal() : -1);
+    }
+
+    void recordMmiComplete() {
+        record(TYPE_MMI_COMPLETE, 0, 0, 0, 0);
+    }
+
+    void recordSuppServiceFailed(int service) {
+        record(TYPE_SUPP_SERVICE_FAILED, service, 0, 0, 0);
+    }
+
+    void recordAudioMode(int before, int after) {
+        record(TYPE_AUDIO_MODE, before, after, 0, 0);
+    }
+
+    private synchronized void record(byte type, int a, int b, int c, int value) {
+        int offset = HEADER_SIZE + mNext * RECORD_SIZE;
+        mBuffer.putLong(offset, SystemClock.elapsedRealtime());
+        mBuffer.put(offset + 8, type);
+        mBuffer.put(offset + 9, (byte) a);
+        mBuffer.put(offset + 10, (byte) b);
+        mBuffer.put(offset + 11, (byte) c);
+        mBuffer.putInt(offset + 12, value);
+        mNext = (mNext + 1) % CAPACITY;
+        if (mCount < CAPACITY) {
+            mCount++;
+        }
+        mBuffer.putInt(HEADER_NEXT, mNext);
+        mBuffer.putInt(HEADER_COUNT, mCount);
+    }
+
+    /**
+     * Prints the journal, oldest record first.  Times are elapsedRealtime()
+     * values, which start over at boot, so they're also shown as wall clock
+     * times (which are only right for records from the current boot).
+     */
+    synchronized void dump(PrintWriter pw) {
+        pw.println("CallEventJournal: " + mCount + " records, persistent=" + mPersistent);
+        SimpleDateFormat format = new SimpleDateFormat("MM-dd HH:mm:ss.SSS");
+        long bootTime = System.currentTimeMillis() - SystemClock.elapsedRealtime();
+        int first = (mCount < CAPACITY) ? 0 : mNext;
+        for (int i = 0; i < mCount; i++) {
+            int offset = HEADER_SIZE + ((first + i) % CAPACITY) * RECORD_SIZE;
+            long time = mBuffer.getLong(offset);
+            byte type = mBuffer.get(offset + 8);
+            byte a = mBuffer.get(offset + 9);
+            byte b = mBuffer.get(offset + 10);
+            byte c = mBuffer.get(offset + 11);
+            int value = mBuffer.getInt(offset + 12);
+            pw.println("  " + time + " " + format.format(new Date(bootTime + time)) + " "
+                    + describe(type, a, b, c, value));
+        }
+    }
+
+    private static String describe(byte type, byte a, byte b, byte c, int value) {
+        String name = (type > 0 && type < TYPE_NAMES.length) ? TYPE_NAMES[type] : "?" + type;
+        switch (type) {
+            case TYPE_PHONE_STATE:
+                return name + " fg=" + callState(a) + " bg=" + callState(b)
+                        + " ringing=" + callState(c);
+            case TYPE_NEW_RINGING_CONNECTION:
+                return name + " conn=" + Integer.toHexString(value);
+            case TYPE_DISCONNECT:
+                Connection.DisconnectCause[] causes = Connection.DisconnectCause.values();
+                return name + " cause="
+                        + ((value >= 0 && value < causes.length) ? causes[value] : value);
+            case TYPE_SUPP_SERVICE_FAILED:
+                return name + " service=" + a;
+            case TYPE_AUDIO_MODE:
+                return name + " " + a + " -> " + b;
+            default:
+                return name;
+        }
+    }
+
+    private static Object callState(byte ordinal) {
+        Call.State[] states = Call.State.values();
+        return (ordinal >= 0 && ordinal < states.length) ? states[ordinal] : ordinal;
+    }
+
+    private static void log(String msg) {
+        Log.d(LOG_TAG, msg);
+    }
+}
@@ -34,6 +34,7 @@ public class CallForwardEditPreference extends EditPhoneNumberPreference {
      */
     private int mButtonClicked;
     private int mServiceClass;
+    private int mSubscription;
     private MyHandler mHandler = new MyHandler();
     int reason;
     Phone phone;
@@ -61,23 +62,52 @@ public class CallForwardEditPreference extends EditPhoneNumberPreference {
         this(context, null);
     }
 
-    void init(TimeConsumingPreferenceListener listener, boolean skipReading, int subscription) {
+    /**
+     * Binds this preference to a subscription and, unless skipReading is set,
+     * loads the current setting.  A result cached in {@link SuppServiceCache}
+     * is shown right away and, if no longer fresh, refreshed from the network
+     * in the background; otherwise the network is queried.
+     *
+     * @return true if a blocking network query was started, in which case the
+     *         listener will get onStarted() / onFinished() for it.
+     */
+    boolean init(TimeConsumingPreferenceListener listener, boolean skipReading,
+            int subscription) {
 
         // getting selected subscription
         if (DBG) Log.d(LOG_TAG, "Getting CallForwardEditPreference subscription =" + subscription);
         phone = PhoneGlobals.getInstance().getPhone(subscription);
+        mSubscription = subscription;
 
         tcpListener = listener;
-        if (!skipReading) {
-            phone.getCallForwardingOption(reason,
-                    mHandler.obtainMessage(MyHandler.MESSAGE_GET_CF,
-                            // unused in this case
-                            CommandsInterface.CF_ACTION_DISABLE,
-                            MyHandler.MESSAGE_GET_CF, null));
-            if (tcpListener != null) {
-                tcpListener.onStarted(this, true);
+        if (skipReading) {
+            return false;
+        }
+
+        SuppServiceCache cache = SuppServiceCache.getInstance();
+        CallForwardInfo[] cached = cache.getCallForwarding(subscription, reason);
+        if (cached != null) {
+            if (DBG) Log.d(LOG_TAG, "init: using cached call forwarding info");
+            handleCallForwardResults(cached);
+            updateSummaryText();
+            if (!cache.isFresh(subscription, SuppServiceCache.callForwardingKey(reason))) {
+                phone.getCallForwardingOption(reason,
+                        mHandler.obtainMessage(MyHandler.MESSAGE_GET_CF,
+                                CommandsInterface.CF_ACTION_DISABLE,
+                                MyHandler.MESSAGE_REFRESH_CF, null));
             }
+            return false;
+        }
+
+        phone.getCallForwardingOption(reason,
+                mHandler.obtainMessage(MyHandler.MESSAGE_GET_CF,
+                        // unused in this case
+                        CommandsInterface.CF_ACTION_DISABLE,
+                        MyHandler.MESSAGE_GET_CF, null));
+        if (tcpListener != null) {
+            tcpListener.onStarted(this, true);
         }
+        return true;
     }
 
     @Override
@@ -150,6 +180,24 @@ public class CallForwardEditPreference extends EditPhoneNumberPreference {
         setPhoneNumber(callForwardInfo.number);
     }
 
+    /**
+     * Applies the entry of a get-call-forwarding response that matches our
+     * service class, if any.
+     */
+    private CallForwardInfo handleCallForwardResults(CallForwardInfo[] cfInfoArray) {
+        CallForwardInfo matched = null;
+        for (int i = 0, length = cfInfoArray.length; i < length; i++) {
+            if (DBG) Log.d(LOG_TAG, "handleCallForwardResults, cfInfoArray[" + i + "]="
+                    + cfInfoArray[i]);
+            if ((mServiceClass & cfInfoArray[i].serviceClass) != 0) {
+                // corresponding class
+                matched = cfInfoArray[i];
+                handleCallForwardResult(matched);
+            }
+        }
+        return matched;
+    }
+
     private void updateSummaryText() {
         if (isToggled()) {
             CharSequence summaryOn;
@@ -168,10 +216,11 @@ public class CallForwardEditPreference extends EditPhoneNumberPreference {
     // Message protocol:
     // what: get vs. set
     // arg1: action -- register vs. disable
-    // arg2: get vs. set for the preceding request
+    // arg2: get vs. set for the preceding request, or background refresh
     private class MyHandler extends Handler {
         static final int MESSAGE_GET_CF = 0;
         static final int MESSAGE_SET_CF = 1;
+        static final int MESSAGE_REFRESH_CF = 2;
 
         @Override
         public void handleMessage(Message msg) {
@@ -188,6 +237,11 @@ public class CallForwardEditPreference extends EditPhoneNumberPreference {
         private void handleGetCFResponse(Message msg) {
             if (DBG) Log.d(LOG_TAG, "handleGetCFResponse: done");
 
+            if (msg.arg2 == MESSAGE_REFRESH_CF) {
+                handleRefreshCFResponse((AsyncResult) msg.obj);
+                return;
+            }
+
             if (msg.arg2 == MESSAGE_SET_CF) {
                 tcpListener.onFinished(CallForwardEditPreference.this, false);
             } else {
@@ -211,40 +265,36 @@ public class CallForwardEditPreference extends EditPhoneNumberPreference {
                     setEnabled(false);
                     tcpListener.onError(CallForwardEditPreference.this, RESPONSE_ERROR);
                 } else {
-                    for (int i = 0, length = cfInfoArray.length; i < length; i++) {
-                        if (DBG) Log.d(LOG_TAG, "handleGetCFResponse, cfInfoArray[" + i + "]="
-                                + cfInfoArray[i]);
-                        if ((mServiceClass & cfInfoArray[i].serviceClass) != 0) {
-                            // corresponding class
-                            CallForwardInfo info = cfInfoArray[i];
-                            handleCallForwardResult(info);
-
-                            // Show an alert if we got a success response but
-                            // with unexpected values.
-                            // Currently only handle the fail-to-disable case
-                            // since we haven't observed fail-to-enable.
-                            if (msg.arg2 == MESSAGE_SET_CF &&
-                                    msg.arg1 == CommandsInterface.CF_ACTION_DISABLE &&
-                                    info.status == 1) {
-                                CharSequence s;
-                                switch (reason) {
-                                    case CommandsInterface.CF_REASON_BUSY:
-                                        s = getContext().getText(R.string.disable_cfb_forbidden);
-                                        break;
-                                    case CommandsInterface.CF_REASON_NO_REPLY:
-                                        s = getContext().getText(R.string.disable_cfnry_forbidden);
-                                        break;
-                                    default: // not reachable
-                                        s = getContext().getText(R.string.disable_cfnrc_forbidden);
-                                }
-                                AlertDialog.Builder builder = new AlertDialog.Builder(getContext());
-                                builder.setNeutralButton(R.string.close_dialog, null);
-                                builder.setTitle(getContext().getText(R.string.error_updating_title));
-                                builder.setMessage(s);
-                                builder.setCancelable(true);
-                                builder.create().show();
-                            }
+                    if (!(ar.userObj instanceof Throwable)) {
+                        SuppServiceCache.getInstance().putCallForwarding(mSubscription,
+                                reason, cfInfoArray);
+                    }
+                    CallForwardInfo info = handleCallForwardResults(cfInfoArray);
+
+                    // Show an alert if we got a success response but
+                    // with unexpected values.
+                    // Currently only handle the fail-to-disable case
+                    // since we haven't observed fail-to-enable.
+                    if (info != null && msg.arg2 == MESSAGE_SET_CF &&
+                            msg.arg1 == CommandsInterface.CF_ACTION_DISABLE &&
+                            info.status == 1) {
+                        CharSequence s;
+                        switch (reason) {
+                            case CommandsInterface.CF_REASON_BUSY:
+                                s = getContext().getText(R.string.disable_cfb_forbidden);
+                                break;
+                            case CommandsInterface.CF_REASON_NO_REPLY:
+                                s = getContext().getText(R.string.disable_cfnry_forbidden);
+                                break;
+                            default: // not reachable
+                                s = getContext().getText(R.string.disable_cfnrc_forbidden);
                         }
+                        AlertDialog.Builder builder = new AlertDialog.Builder(getContext());
+                        builder.setNeutralButton(R.string.close_dialog, null);
+                        builder.setTitle(getContext().getText(R.string.error_updating_title));
+                        builder.setMessage(s);
+                        builder.setCancelable(true);
+                        builder.create().show();
                     }
                 }
             }
@@ -255,6 +305,25 @@ public class CallForwardEditPreference extends EditPhoneNumberPreference {
             updateSummaryText();
         }
 
+        /**
+         * A background refresh of a cached value: update the display if the
+         * network returned something, and otherwise keep showing the cached
+         * value without bothering the user.
+         */
+        private void handleRefreshCFResponse(AsyncResult ar) {
+            if (ar.exception != null) {
+                if (DBG) Log.d(LOG_TAG, "handleRefreshCFResponse: ar.exception=" + ar.exception);
+                return;
+            }
+            CallForwardInfo cfInfoArray[] = (CallForwardInfo[]) ar.result;
+            if (cfInfoArray == null || cfInfoArray.length == 0) {
+                return;
+            }
+            SuppServiceCache.getInstance().putCallForwarding(mSubscription, reason, cfInfoArray);
+            handleCallForwardResults(cfInfoArray);
+            updateSummaryText();
+        }
+
         private void handleSetCFResponse(Message msg) {
             AsyncResult ar = (AsyncResult) msg.obj;
 
@@ -262,6 +331,9 @@ public class CallForwardEditPreference extends EditPhoneNumberPreference {
                 if (DBG) Log.d(LOG_TAG, "handleSetCFResponse: ar.exception=" + ar.exception);
                 // setEnabled(false);
             }
+            // Whatever the outcome, the cached value can no longer be trusted;
+            // the re-get below refreshes it.
+            SuppServiceCache.getInstance().invalidateCallForwarding(mSubscription);
             if (DBG) Log.d(LOG_TAG, "handleSetCFResponse: re get");
             phone.getCallForwardingOption(reason,
                     obtainMessage(MESSAGE_GET_CF, msg.arg1, MESSAGE_SET_CF, ar.exception));
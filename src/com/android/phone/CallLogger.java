@@ -54,6 +54,7 @@ class CallLogger {
      * @param callLogType The type of call log entry.
      */
     public void logCall(Connection c, int callLogType) {
+        final long startTime = CallPipelineStats.start();
         final String number = c.getAddress();
         final long date = c.getCreateTime();
         final long duration = c.getDurationMillis();
@@ -81,6 +82,7 @@ class CallLogger {
         if (!isOtaspNumber) {
             logCall(ci, logNumber, presentation, callLogType, date, duration);
         }
+        CallPipelineStats.record(CallPipelineStats.STAGE_CALL_LOG, startTime);
     }
 
     /**
@@ -108,8 +110,8 @@ class CallLogger {
      */
     public void logCall(CallerInfo ci, String number, int presentation, int callType, long start,
                         long duration) {
-        final boolean isEmergencyNumber = PhoneNumberUtils.isLocalEmergencyNumber(number,
-                mApplication);
+        final boolean isEmergencyNumber =
+                EmergencyNumberMatcher.getInstance().isEmergencyNumber(number);
 
         // On some devices, to avoid accidental redialing of
         // emergency numbers, we *never* log emergency calls to
@@ -147,7 +149,12 @@ class CallLogger {
         if ((o == null) || (o instanceof CallerInfo)) {
             ci = (CallerInfo) o;
         } else if (o instanceof Uri) {
-            ci = CallerInfo.getCallerInfo(mApplication, (Uri) o);
+            // The lookup was never started; somebody may have looked the
+            // number up for another call though.
+            ci = CallerInfoLookupCache.getInstance().get(conn.getAddress());
+            if (ci == null) {
+                ci = CallerInfo.getCallerInfo(mApplication, (Uri) o);
+            }
         } else {
             ci = ((PhoneUtils.CallerInfoToken) o).currentInfo;
         }
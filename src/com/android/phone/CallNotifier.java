@@ -62,7 +62,6 @@ import android.os.SystemVibrator;
 import android.os.Vibrator;
 import android.provider.CallLog.Calls;
 import android.provider.Settings;
-import android.telephony.PhoneNumberUtils;
 import android.telephony.PhoneStateListener;
 import android.telephony.TelephonyManager;
 import android.text.TextUtils;
@@ -273,11 +272,16 @@ public class CallNotifier extends Handler
 
     @Override
     public void handleMessage(Message msg) {
+        final long startTime = CallPipelineStats.start();
         switch (msg.what) {
             case PHONE_NEW_RINGING_CONNECTION:
                 log("RINGING... (new)");
+                CallEventJournal.getInstance().recordNewRingingConnection(
+                        (Connection) ((AsyncResult) msg.obj).result);
                 onNewRingingConnection((AsyncResult) msg.obj);
                 mSilentRingerRequested = false;
+                CallPipelineStats.record(CallPipelineStats.STAGE_NEW_RINGING_CONNECTION,
+                        startTime);
                 break;
 
             case PHONE_INCOMING_RING:
@@ -297,12 +301,17 @@ public class CallNotifier extends Handler
                 break;
 
             case PHONE_STATE_CHANGED:
+                CallEventJournal.getInstance().recordPhoneState(mCM);
                 onPhoneStateChanged((AsyncResult) msg.obj);
+                CallPipelineStats.record(CallPipelineStats.STAGE_PHONE_STATE_CHANGED, startTime);
                 break;
 
             case PHONE_DISCONNECT:
                 if (DBG) log("DISCONNECT");
+                CallEventJournal.getInstance().recordDisconnect(
+                        (Connection) ((AsyncResult) msg.obj).result);
                 onDisconnect((AsyncResult) msg.obj);
+                CallPipelineStats.record(CallPipelineStats.STAGE_DISCONNECT, startTime);
                 break;
 
             case PHONE_UNKNOWN_CONNECTION_APPEARED:
@@ -401,6 +410,7 @@ public class CallNotifier extends Handler
 
                 if (msg.obj != null && ((AsyncResult) msg.obj).result != null) {
                     suppSvcNotification = (SuppServiceNotification)((AsyncResult) msg.obj).result;
+                    invalidateSuppServiceCache(suppSvcNotification);
                     String callForwardText = getSuppSvcNotificationText(suppSvcNotification);
                     Toast.makeText(mApplication, callForwardText, Toast.LENGTH_LONG).show();
                 }
@@ -411,6 +421,19 @@ public class CallNotifier extends Handler
         }
     }
 
+    /**
+     * Drops cached call forwarding settings when the network reports that
+     * forwarding is active, since they may have been changed from elsewhere.
+     */
+    private void invalidateSuppServiceCache(SuppServiceNotification notification) {
+        if (notification.notificationType == 0
+                && (notification.code == SuppServiceNotification.MO_CODE_UNCONDITIONAL_CF_ACTIVE
+                || notification.code == SuppServiceNotification.MO_CODE_SOME_CF_ACTIVE)) {
+            // The notification doesn't say which subscription it is for.
+            SuppServiceCache.getInstance().invalidateCallForwarding();
+        }
+    }
+
     private String getSuppSvcNotificationText(SuppServiceNotification suppSvcNotification) {
 
         String callForwardTxt = "";
@@ -634,7 +657,9 @@ public class CallNotifier extends Handler
         if (DBG) log("Incoming number is: " + number);
         // See if the number is in the blacklist
         // Result is one of: MATCH_NONE, MATCH_LIST or MATCH_REGEX
+        final long blacklistStartTime = CallPipelineStats.start();
         int listType = mApplication.blackList.isListed(number);
+        CallPipelineStats.record(CallPipelineStats.STAGE_BLACKLIST_CHECK, blacklistStartTime);
         if (listType != Blacklist.MATCH_NONE) {
             // We have a match, set the user and hang up the call and notify
             if (DBG) log("Incoming call from " + number + " blocked.");
@@ -1079,8 +1104,8 @@ public class CallNotifier extends Handler
 
         if (fgPhone.getPhoneType() == PhoneConstants.PHONE_TYPE_CDMA) {
             Connection c = fgPhone.getForegroundCall().getLatestConnection();
-            if ((c != null) && (PhoneNumberUtils.isLocalEmergencyNumber(c.getAddress(),
-                                                                        mApplication))) {
+            if ((c != null) && (EmergencyNumberMatcher.getInstance().isEmergencyNumber(
+                                        c.getAddress()))) {
                 if (VDBG) log("onPhoneStateChanged: it is an emergency call.");
                 Call.State callState = fgPhone.getForegroundCall().getState();
                 if (mEmergencyTonePlayerVibrator == null) {
@@ -1444,7 +1469,7 @@ public class CallNotifier extends Handler
             final String number = c.getAddress();
             final Phone phone = c.getCall().getPhone();
             final boolean isEmergencyNumber =
-                    PhoneNumberUtils.isLocalEmergencyNumber(number, mApplication);
+                    EmergencyNumberMatcher.getInstance().isEmergencyNumber(number);
 
             if (phone.getPhoneType() == PhoneConstants.PHONE_TYPE_CDMA) {
                 if ((isEmergencyNumber)
@@ -1560,6 +1585,8 @@ public class CallNotifier extends Handler
 
     private void onCfiChanged(boolean visible) {
         if (VDBG) log("onCfiChanged(): " + visible);
+        SuppServiceCache.getInstance().invalidateCallForwarding(
+                mApplication.getDefaultSubscription());
         mApplication.notificationMgr.updateCfi(visible);
     }
 
@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.phone;
+
+import android.os.SystemClock;
+
+import java.io.PrintWriter;
+
+/**
+ * How long the stages of the call pipeline take on the main thread: the
+ * CallNotifier's handling of the telephony events, the blacklist check of
+ * an incoming call, call logging, swapping and merging calls.
+ *
+ * Each stage keeps a count, the total and maximum time, and a histogram
+ * with power-of-two buckets (in microseconds), from which
+ * TelephonyDebugService's dump() prints the rate and latency percentiles.
+ * Recording is a System.nanoTime() call and a few additions, so it's always
+ * on; run the same call flows before and after a change and compare the
+ * dumps.
+ */
+/* package */ final class CallPipelineStats {
+    static final int STAGE_NEW_RINGING_CONNECTION = 0;
+    static final int STAGE_PHONE_STATE_CHANGED = 1;
+    static final int STAGE_DISCONNECT = 2;
+    static final int STAGE_BLACKLIST_CHECK = 3;
+    static final int STAGE_CALL_LOG = 4;
+    static final int STAGE_SWITCH_HOLDING_AND_ACTIVE = 5;
+    static final int STAGE_MERGE_CALLS = 6;
+
+    private static final String[] STAGE_NAMES = {
+        "new ringing connection", "phone state changed", "disconnect", "blacklist check",
+        "call log", "switch holding and active", "merge calls"
+    };
+
+    // Bucket i holds the samples of [2^(i-1), 2^i) us; the last one
+    // everything from about 4 s up.
+    private static final int BUCKETS = 24;
+
+    private static final int[] sCount = new int[STAGE_NAMES.length];
+    private static final long[] sTotalNanos = new long[STAGE_NAMES.length];
+    private static final long[] sMaxNanos = new long[STAGE_NAMES.length];
+    private static final int[][] sHistogram = new int[STAGE_NAMES.length][BUCKETS];
+    private static long sStartTime = SystemClock.elapsedRealtime();
+
+    /** This class is never instantiated. */
+    private CallPipelineStats() {
+    }
+
+    /**
+     * Returns the start time to pass to {@link #record} at the end of a
+     * stage.
+     */
+    static long start() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Records one run of {@code stage} that began at {@code startTime}
+     * (from {@link #start()}).
+     */
+    static synchronized void record(int stage, long startTime) {
+        long nanos = System.nanoTime() - startTime;
+        sCount[stage]++;
+        sTotalNanos[stage] += nanos;
+        if (nanos > sMaxNanos[stage]) {
+            sMaxNanos[stage] = nanos;
+        }
+        long micros = nanos / 1000;
+        int bucket = (micros <= 0) ? 0 : 64 - Long.numberOfLeadingZeros(micros);
+        sHistogram[stage][Math.min(bucket, BUCKETS - 1)]++;
+    }
+
+    static synchronized void dump(PrintWriter pw) {
+        long elapsed = SystemClock.elapsedRealtime() - sStartTime;
+        pw.println("CallPipelineStats: over " + (elapsed / 1000) + " s (times in us)");
+        for (int stage = 0; stage < STAGE_NAMES.length; stage++) {
+            int count = sCount[stage];
+            if (count == 0) {
+                continue;
+            }
+            pw.println("  " + STAGE_NAMES[stage] + ": count=" + count
+                    + ", per hour=" + (elapsed > 0 ? count * 3600000L / elapsed : 0)
+                    + ", avg=" + (sTotalNanos[stage] / count / 1000)
+                    + ", p50<" + percentile(stage, 50)
+                    + ", p90<" + percentile(stage, 90)
+                    + ", p99<" + percentile(stage, 99)
+                    + ", max=" + (sMaxNanos[stage] / 1000));
+        }
+    }
+
+    /** Returns the upper bound of the bucket the percentile falls into. */
+    private static long percentile(int stage, int percent) {
+        int target = (sCount[stage] * percent + 99) / 100;
+        int seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += sHistogram[stage][bucket];
+            if (seen >= target) {
+                return 1L << bucket;
+            }
+        }
+        return 1L << BUCKETS;
+    }
+}
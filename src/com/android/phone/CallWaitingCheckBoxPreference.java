@@ -21,6 +21,7 @@ public class CallWaitingCheckBoxPreference extends CheckBoxPreference {
 
     private final MyHandler mHandler = new MyHandler();
     private Phone mPhone;
+    private int mSubscription;
     private TimeConsumingPreferenceListener mTcpListener;
 
     public CallWaitingCheckBoxPreference(Context context, AttributeSet attrs, int defStyle) {
@@ -37,21 +38,58 @@ public class CallWaitingCheckBoxPreference extends CheckBoxPreference {
         this(context, null);
     }
 
-    /*package*/ void init(TimeConsumingPreferenceListener listener,
+    /**
+     * Binds this preference to a subscription and, unless skipReading is set,
+     * loads the current setting, showing a value cached in
+     * {@link SuppServiceCache} right away when there is one.
+     *
+     * @return true if a blocking network query was started, in which case the
+     *         listener will get onStarted() / onFinished() for it.
+     */
+    /*package*/ boolean init(TimeConsumingPreferenceListener listener,
             boolean skipReading, int subscription) {
         // Get the selected subscription
         if (DBG)
             Log.d(LOG_TAG, "CallWaitingCheckBoxPreference init, subscription :" + subscription);
         mPhone = PhoneGlobals.getInstance().getPhone(subscription);
+        mSubscription = subscription;
 
         mTcpListener = listener;
 
-        if (!skipReading) {
-            mPhone.getCallWaiting(mHandler.obtainMessage(MyHandler.MESSAGE_GET_CALL_WAITING,
-                    MyHandler.MESSAGE_GET_CALL_WAITING, MyHandler.MESSAGE_GET_CALL_WAITING));
-            if (mTcpListener != null) {
-                mTcpListener.onStarted(this, true);
+        if (skipReading) {
+            return false;
+        }
+
+        SuppServiceCache cache = SuppServiceCache.getInstance();
+        int[] cached = cache.getCallWaiting(subscription);
+        if (cached != null) {
+            if (DBG) Log.d(LOG_TAG, "init: using cached call waiting state");
+            handleCallWaitingResult(cached);
+            if (!cache.isFresh(subscription, SuppServiceCache.KEY_CALL_WAITING)) {
+                mPhone.getCallWaiting(mHandler.obtainMessage(MyHandler.MESSAGE_GET_CALL_WAITING,
+                        MyHandler.MESSAGE_GET_CALL_WAITING,
+                        MyHandler.MESSAGE_REFRESH_CALL_WAITING));
             }
+            return false;
+        }
+
+        mPhone.getCallWaiting(mHandler.obtainMessage(MyHandler.MESSAGE_GET_CALL_WAITING,
+                MyHandler.MESSAGE_GET_CALL_WAITING, MyHandler.MESSAGE_GET_CALL_WAITING));
+        if (mTcpListener != null) {
+            mTcpListener.onStarted(this, true);
+        }
+        return true;
+    }
+
+    private void handleCallWaitingResult(int[] cwArray) {
+        // If cwArray[0] is = 1, then cwArray[1] must follow,
+        // with the TS 27.007 service class bit vector of services
+        // for which call waiting is enabled.
+        try {
+            setChecked(((cwArray[0] == 1) && ((cwArray[1] & 0x01) == 0x01)));
+        } catch (ArrayIndexOutOfBoundsException e) {
+            Log.e(LOG_TAG, "handleCallWaitingResult: improper result: err ="
+                    + e.getMessage());
         }
     }
 
@@ -69,6 +107,7 @@ public class CallWaitingCheckBoxPreference extends CheckBoxPreference {
     private class MyHandler extends Handler {
         static final int MESSAGE_GET_CALL_WAITING = 0;
         static final int MESSAGE_SET_CALL_WAITING = 1;
+        static final int MESSAGE_REFRESH_CALL_WAITING = 2;
 
         @Override
         public void handleMessage(Message msg) {
@@ -85,6 +124,17 @@ public class CallWaitingCheckBoxPreference extends CheckBoxPreference {
         private void handleGetCallWaitingResponse(Message msg) {
             AsyncResult ar = (AsyncResult) msg.obj;
 
+            if (msg.arg2 == MESSAGE_REFRESH_CALL_WAITING) {
+                // Background refresh of a cached value; keep showing the cached
+                // value quietly if it fails.
+                if (ar.exception == null && ar.result != null) {
+                    SuppServiceCache.getInstance().putCallWaiting(mSubscription,
+                            (int[]) ar.result);
+                    handleCallWaitingResult((int[]) ar.result);
+                }
+                return;
+            }
+
             if (mTcpListener != null) {
                 if (msg.arg2 == MESSAGE_SET_CALL_WAITING) {
                     mTcpListener.onFinished(CallWaitingCheckBoxPreference.this, false);
@@ -110,15 +160,8 @@ public class CallWaitingCheckBoxPreference extends CheckBoxPreference {
                     Log.d(LOG_TAG, "handleGetCallWaitingResponse: CW state successfully queried.");
                 }
                 int[] cwArray = (int[])ar.result;
-                // If cwArray[0] is = 1, then cwArray[1] must follow,
-                // with the TS 27.007 service class bit vector of services
-                // for which call waiting is enabled.
-                try {
-                    setChecked(((cwArray[0] == 1) && ((cwArray[1] & 0x01) == 0x01)));
-                } catch (ArrayIndexOutOfBoundsException e) {
-                    Log.e(LOG_TAG, "handleGetCallWaitingResponse: improper result: err ="
-                            + e.getMessage());
-                }
+                SuppServiceCache.getInstance().putCallWaiting(mSubscription, cwArray);
+                handleCallWaitingResult(cwArray);
             }
         }
 
@@ -131,6 +174,8 @@ public class CallWaitingCheckBoxPreference extends CheckBoxPreference {
                 }
                 //setEnabled(false);
             }
+            SuppServiceCache.getInstance().invalidate(mSubscription,
+                    SuppServiceCache.KEY_CALL_WAITING);
             if (DBG) Log.d(LOG_TAG, "handleSetCallWaitingResponse: re get");
 
             mPhone.getCallWaiting(obtainMessage(MESSAGE_GET_CALL_WAITING,
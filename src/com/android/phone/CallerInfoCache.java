@@ -22,7 +22,6 @@ import android.content.Context;
 import android.content.Intent;
 import android.database.Cursor;
 import android.os.AsyncTask;
-import android.os.PowerManager;
 import android.os.SystemClock;
 import android.os.SystemProperties;
 import android.provider.ContactsContract.CommonDataKinds.Callable;
@@ -99,18 +98,17 @@ public class CallerInfoCache {
 
     private class CacheAsyncTask extends AsyncTask<Void, Void, Void> {
 
-        private PowerManager.WakeLock mWakeLock;
+        private boolean mWakeLockHeld;
 
         /**
-         * Call {@link PowerManager.WakeLock#acquire} and call {@link AsyncTask#execute(Object...)},
+         * Acquire the phone process wake lock and call {@link AsyncTask#execute(Object...)},
          * guaranteeing the lock is held during the asynchronous task.
          */
         public void acquireWakeLockAndExecute() {
-            // Prepare a separate partial WakeLock than what PhoneApp has so to avoid
-            // unnecessary conflict.
-            PowerManager pm = (PowerManager) mContext.getSystemService(Context.POWER_SERVICE);
-            mWakeLock = pm.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, LOG_TAG);
-            mWakeLock.acquire();
+            // The lock is held under our own reason, so it doesn't conflict
+            // with what PhoneApp does with it.
+            PhoneWakeLock.getInstance().acquire(LOG_TAG);
+            mWakeLockHeld = true;
             execute();
         }
 
@@ -136,8 +134,9 @@ public class CallerInfoCache {
         }
 
         private void releaseWakeLock() {
-            if (mWakeLock != null && mWakeLock.isHeld()) {
-                mWakeLock.release();
+            if (mWakeLockHeld) {
+                PhoneWakeLock.getInstance().release(LOG_TAG);
+                mWakeLockHeld = false;
             }
         }
     }
@@ -249,10 +248,7 @@ public class CallerInfoCache {
                         // with the device's place). So to avoid confusion we just rely on the last
                         // 7 digits here. It may cause some kind of wrong behavior, which is
                         // unavoidable anyway in very rare cases..
-                        final int length = normalizedNumber.length();
-                        final String key = length > 7
-                                ? normalizedNumber.substring(length - 7, length)
-                                        : normalizedNumber;
+                        final String key = getKeyForNormalizedNumber(normalizedNumber);
                         putNewEntryWhenAppropriate(
                                 newNumberToEntry, key, customRingtone, sendToVoicemail, customVibration);
                     }
@@ -325,11 +321,8 @@ public class CallerInfoCache {
 
             entry = mNumberToEntry.get(number);
         } else {
-            final String normalizedNumber = PhoneNumberUtils.normalizeNumber(number);
-            final int length = normalizedNumber.length();
             final String key =
-                    (length > 7 ? normalizedNumber.substring(length - 7, length)
-                            : normalizedNumber);
+                    getKeyForNormalizedNumber(PhoneNumberUtils.normalizeNumber(number));
             if (VDBG) log("Trying to lookup " + key);
 
             entry = mNumberToEntry.get(key);
@@ -338,6 +331,14 @@ public class CallerInfoCache {
         return entry;
     }
 
+    /**
+     * Returns the cache key for a normalized PSTN number: its last 7 digits.
+     */
+    /* package */ static String getKeyForNormalizedNumber(String normalizedNumber) {
+        final int length = normalizedNumber.length();
+        return length > 7 ? normalizedNumber.substring(length - 7, length) : normalizedNumber;
+    }
+
     private static void log(String msg) {
         Log.d(LOG_TAG, msg);
     }
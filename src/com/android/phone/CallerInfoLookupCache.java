@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.phone;
+
+import android.content.Context;
+import android.database.ContentObserver;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.provider.ContactsContract;
+import android.telephony.PhoneNumberUtils;
+import android.text.TextUtils;
+import android.util.Log;
+
+import com.android.internal.telephony.CallerInfo;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Process-wide cache of caller-id lookup results, keyed by normalized phone
+ * number (or SIP address).
+ *
+ * PhoneUtils.startGetCallerInfo() shares a lookup between everybody showing
+ * the same Connection (CallCard, NotificationMgr, CallNotifier, the "Manage
+ * conference" UI), but each new Connection used to start its own contacts
+ * query even if the same number was looked up a moment earlier: a call
+ * waiting, a redial, the participants of a conference.  The contacts query
+ * results are kept here for {@link #MAX_AGE} so that at most one query is
+ * made per number and call.  The whole cache is dropped as soon as anything
+ * changes in the contacts provider, and the observer is only registered
+ * while there is something to drop.
+ *
+ * Results are stored and handed out as copies, since the users of a
+ * CallerInfo merge the Connection's CNAP and presentation information into
+ * it.  Emergency and voicemail results aren't cached; they don't come from
+ * the contacts provider in the first place.
+ */
+public class CallerInfoLookupCache {
+    private static final String LOG_TAG = "CallerInfoLookupCache";
+    private static final boolean DBG = (PhoneGlobals.DBG_LEVEL >= 2);
+
+    /** How long a lookup result is used for. */
+    private static final long MAX_AGE = 5 * 60 * 1000;
+
+    private static final int MAX_ENTRIES = 32;
+
+    private static CallerInfoLookupCache sInstance;
+
+    /** A lookup result along with the time it was received. */
+    private static class Entry {
+        final CallerInfo info;
+        final long timestamp;
+
+        Entry(CallerInfo info) {
+            this.info = info;
+            this.timestamp = SystemClock.elapsedRealtime();
+        }
+    }
+
+    private final Context mContext;
+
+    // Least recently used first, so the eldest entry is the one to drop.
+    private final LinkedHashMap<String, Entry> mEntries =
+            new LinkedHashMap<String, Entry>(MAX_ENTRIES, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    private boolean mObserving;
+    private int mHits;
+    private int mMisses;
+
+    private final ContentObserver mContactsObserver =
+            new ContentObserver(new Handler(Looper.getMainLooper())) {
+        @Override
+        public void onChange(boolean selfChange) {
+            if (DBG) log("contacts changed, clearing");
+            clear();
+        }
+    };
+
+    static synchronized CallerInfoLookupCache getInstance() {
+        if (sInstance == null) {
+            sInstance = new CallerInfoLookupCache(PhoneGlobals.getInstance());
+        }
+        return sInstance;
+    }
+
+    private CallerInfoLookupCache(Context context) {
+        mContext = context;
+    }
+
+    /**
+     * Returns a copy of the lookup result for {@code number}, or null if
+     * there is no recent one.
+     */
+    synchronized CallerInfo get(String number) {
+        String key = getKey(number);
+        if (key == null) {
+            return null;
+        }
+        Entry entry = mEntries.get(key);
+        if (entry == null || SystemClock.elapsedRealtime() - entry.timestamp >= MAX_AGE) {
+            if (entry != null) {
+                mEntries.remove(key);
+            }
+            mMisses++;
+            return null;
+        }
+        mHits++;
+        if (DBG) log("get: hit, " + mHits + " hits / " + mMisses + " misses");
+        return copy(entry.info);
+    }
+
+    /**
+     * Remembers the result of a contacts lookup for {@code number}, as
+     * returned by CallerInfoAsyncQuery or CallerInfo.getCallerInfo() and
+     * before any Connection information was merged into it.
+     */
+    synchronized void put(String number, CallerInfo info) {
+        String key = getKey(number);
+        if (key == null || info == null || info.isEmergencyNumber() || info.isVoiceMailNumber()) {
+            return;
+        }
+        mEntries.put(key, new Entry(copy(info)));
+        if (!mObserving) {
+            mContext.getContentResolver().registerContentObserver(
+                    ContactsContract.AUTHORITY_URI, true, mContactsObserver);
+            mObserving = true;
+        }
+    }
+
+    synchronized void clear() {
+        mEntries.clear();
+        if (mObserving) {
+            mContext.getContentResolver().unregisterContentObserver(mContactsObserver);
+            mObserving = false;
+        }
+    }
+
+    private static String getKey(String number) {
+        if (TextUtils.isEmpty(number)) {
+            return null;
+        }
+        if (PhoneNumberUtils.isUriNumber(number)) {
+            return number.toLowerCase();
+        }
+        String normalized = PhoneNumberUtils.normalizeNumber(number);
+        return TextUtils.isEmpty(normalized) ? null : normalized;
+    }
+
+    /**
+     * Copies the parts of a CallerInfo that come from the contacts provider
+     * or the network; the photo state belongs to whoever displays it.
+     */
+    private static CallerInfo copy(CallerInfo info) {
+        CallerInfo copy = new CallerInfo();
+        copy.name = info.name;
+        copy.phoneNumber = info.phoneNumber;
+        copy.normalizedNumber = info.normalizedNumber;
+        copy.geoDescription = info.geoDescription;
+        copy.cnapName = info.cnapName;
+        copy.numberPresentation = info.numberPresentation;
+        copy.namePresentation = info.namePresentation;
+        copy.contactExists = info.contactExists;
+        copy.phoneLabel = info.phoneLabel;
+        copy.numberType = info.numberType;
+        copy.numberLabel = info.numberLabel;
+        copy.photoResource = info.photoResource;
+        copy.person_id = info.person_id;
+        copy.needUpdate = info.needUpdate;
+        copy.contactRefUri = info.contactRefUri;
+        copy.contactRingtoneUri = info.contactRingtoneUri;
+        copy.contactVibrationUri = info.contactVibrationUri;
+        copy.shouldSendToVoicemail = info.shouldSendToVoicemail;
+        return copy;
+    }
+
+    private static void log(String msg) {
+        Log.d(LOG_TAG, msg);
+    }
+}
@@ -92,6 +92,7 @@ package com.android.phone;
         public void setCurrentCallState(PhoneCallState newState) {
             mPreviousCallState = mCurrentCallState;
             mCurrentCallState = newState;
+            InCallControlState.invalidateCallState();
 
             //Reset the 3Way display boolean
             mThreeWayCallOrigStateDialing = false;
@@ -120,6 +121,7 @@ package com.android.phone;
          */
         public void setThreeWayCallOrigState(boolean newState) {
             mThreeWayCallOrigStateDialing = newState;
+            InCallControlState.invalidateCallState();
         }
 
         /**
@@ -134,6 +136,7 @@ package com.android.phone;
          */
         public void setAddCallMenuStateAfterCallWaiting(boolean newState) {
             mAddCallMenuStateAfterCW = newState;
+            InCallControlState.invalidateCallState();
         }
 
         /**
@@ -17,7 +17,6 @@
 package com.android.phone;
 
 import android.content.Context;
-import android.media.AudioManager;
 import android.media.ToneGenerator;
 import android.os.Handler;
 import android.os.Message;
@@ -38,13 +37,12 @@ import android.view.ViewStub;
 import android.widget.EditText;
 
 import com.android.internal.telephony.CallManager;
+import com.android.internal.telephony.Connection;
 import com.android.internal.telephony.Phone;
 import com.android.internal.telephony.PhoneConstants;
 import com.android.internal.telephony.TelephonyCapabilities;
 
 import java.util.HashMap;
-import java.util.LinkedList;
-import java.util.Queue;
 
 
 /**
@@ -60,13 +58,16 @@ public class DTMFTwelveKeyDialer implements View.OnTouchListener, View.OnKeyList
     protected static final int PHONE_DISCONNECT = 100;
     protected static final int DTMF_SEND_CNF = 101;
     protected static final int DTMF_STOP = 102;
+    private static final int PHONE_STATE_CHANGED = 103;
 
     /** Accessibility manager instance used to check touch exploration state. */
     private final AccessibilityManager mAccessibilityManager;
 
     protected CallManager mCM;
-    private ToneGenerator mToneGenerator;
-    private final Object mToneGeneratorLock = new Object();
+    // Plays the local tones; kept from the first dialer session of a call
+    // until the phone goes idle.
+    private DtmfTonePlayer mTonePlayer;
+    private boolean mDialerSessionActive;
 
     // indicate if we want to enable the local tone playback.
     private boolean mLocalToneEnabled;
@@ -74,11 +75,8 @@ public class DTMFTwelveKeyDialer implements View.OnTouchListener, View.OnKeyList
     // indicates that we are using automatically shortened DTMF tones
     boolean mShortTone;
 
-    // indicate if the confirmation from TelephonyFW is pending.
-    private boolean mDTMFBurstCnfPending = false;
-
-    // Queue to queue the short dtmf characters.
-    private Queue<Character> mDTMFQueue = new LinkedList<Character>();
+    // Sends the digits to the network (and times it).
+    private final DtmfSequencer mSequencer;
 
     //  Short Dtmf tone duration
     private static final int DTMF_DURATION_MS = 120;
@@ -367,6 +365,15 @@ public class DTMFTwelveKeyDialer implements View.OnTouchListener, View.OnKeyList
                     if (DBG) log("dtmf stop received");
                     stopTone();
                     break;
+                case PHONE_STATE_CHANGED:
+                    // While the session is active stopDialerSession() will
+                    // take care of it.
+                    if (!mDialerSessionActive
+                            && mCM.getState() == PhoneConstants.State.IDLE) {
+                        if (DBG) log("phone idle, releasing the tone player.");
+                        releaseTonePlayer();
+                    }
+                    break;
             }
         }
     };
@@ -428,6 +435,7 @@ public class DTMFTwelveKeyDialer implements View.OnTouchListener, View.OnKeyList
 
         mInCallScreen = parent;
         mCM = PhoneGlobals.getInstance().mCM;
+        mSequencer = new DtmfSequencer(mCM, mHandler, DTMF_SEND_CNF);
         mAccessibilityManager = (AccessibilityManager) parent.getSystemService(
                 Context.ACCESSIBILITY_SERVICE);
     }
@@ -469,11 +477,9 @@ public class DTMFTwelveKeyDialer implements View.OnTouchListener, View.OnKeyList
         if (DBG) log("clearInCallScreenReference()...");
         mInCallScreen = null;
         mDialerKeyListener = null;
-        mHandler.removeMessages(DTMF_SEND_CNF);
-        synchronized (mDTMFQueue) {
-            mDTMFBurstCnfPending = false;
-            mDTMFQueue.clear();
-        }
+        mSequencer.clear();
+        mDialerSessionActive = false;
+        releaseTonePlayer();
         closeDialer(false);
     }
 
@@ -504,16 +510,18 @@ public class DTMFTwelveKeyDialer implements View.OnTouchListener, View.OnKeyList
      * Allocates some resources we keep around during a "dialer session".
      *
      * (Currently, a "dialer session" just means any situation where we
-     * might need to play local DTMF tones, which means that we need to
-     * keep a ToneGenerator instance around.  A ToneGenerator instance
-     * keeps an AudioTrack resource busy in AudioFlinger, so we don't want
-     * to keep it around forever.)
+     * might need to play local DTMF tones, which means that we need a
+     * DtmfTonePlayer.  Its ToneGenerator keeps an AudioTrack resource busy
+     * in AudioFlinger, so we don't want to keep it around forever; but
+     * creating it takes long enough to delay the first tone, so once
+     * created it is kept until the call ends.)
      *
      * Call {@link stopDialerSession} to release the dialer session
      * resources.
      */
     public void startDialerSession() {
         if (DBG) log("startDialerSession()... this = " + this);
+        mDialerSessionActive = true;
 
         // see if we need to play local tones.
         if (PhoneGlobals.getInstance().getResources().getBoolean(R.bool.allow_local_dtmf_tones)) {
@@ -524,20 +532,12 @@ public class DTMFTwelveKeyDialer implements View.OnTouchListener, View.OnKeyList
         }
         if (DBG) log("- startDialerSession: mLocalToneEnabled = " + mLocalToneEnabled);
 
-        // create the tone generator
-        // if the mToneGenerator creation fails, just continue without it.  It is
-        // a local audio signal, and is not as important as the dtmf tone itself.
-        if (mLocalToneEnabled) {
-            synchronized (mToneGeneratorLock) {
-                if (mToneGenerator == null) {
-                    try {
-                        mToneGenerator = new ToneGenerator(AudioManager.STREAM_DTMF, 80);
-                    } catch (RuntimeException e) {
-                        if (DBG) log("Exception caught while creating local tone generator: " + e);
-                        mToneGenerator = null;
-                    }
-                }
-            }
+        if (!mLocalToneEnabled) {
+            releaseTonePlayer();
+        } else if (mTonePlayer == null) {
+            // The ToneGenerator itself is created on the player's thread.
+            mTonePlayer = new DtmfTonePlayer(DTMF_DURATION_MS);
+            mCM.registerForPreciseCallStateChanged(mHandler, PHONE_STATE_CHANGED, null);
         }
     }
 
@@ -564,21 +564,31 @@ public class DTMFTwelveKeyDialer implements View.OnTouchListener, View.OnKeyList
 
     /**
      * Releases resources we keep around during a "dialer session"
-     * (see {@link startDialerSession}).
+     * (see {@link startDialerSession}), unless there still is a call
+     * that we may need them for.
      *
      * It's safe to call this even without a corresponding
      * startDialerSession call.
      */
     public void stopDialerSession() {
-        // release the tone generator.
-        synchronized (mToneGeneratorLock) {
-            if (mToneGenerator != null) {
-                mToneGenerator.release();
-                mToneGenerator = null;
-            }
+        mDialerSessionActive = false;
+        if (mCM.getState() == PhoneConstants.State.IDLE) {
+            releaseTonePlayer();
+        }
+    }
+
+    private void releaseTonePlayer() {
+        if (mTonePlayer != null) {
+            mCM.unregisterForPreciseCallStateChanged(mHandler);
+            mTonePlayer.release();
+            mTonePlayer = null;
         }
     }
 
+    /* package */ DtmfTonePlayer getTonePlayer() {
+        return mTonePlayer;
+    }
+
     /**
      * Called externally (from InCallScreen) to play a DTMF Tone.
      */
@@ -970,7 +980,7 @@ public class DTMFTwelveKeyDialer implements View.OnTouchListener, View.OnKeyList
         } else {
             // Pass as a char to be sent to network
             if (DBG) log("send long dtmf for " + c);
-            mCM.startDtmf(c);
+            mSequencer.startTone(c);
 
             // If it is a timed tone, queue up the stop command in DTMF_DURATION_MS.
             if (timedShortTone) {
@@ -992,17 +1002,15 @@ public class DTMFTwelveKeyDialer implements View.OnTouchListener, View.OnKeyList
             return;
         }
         if (mLocalToneEnabled) {
-            synchronized (mToneGeneratorLock) {
-                if (mToneGenerator == null) {
-                    if (DBG) log("startDtmfTone: mToneGenerator == null, tone: " + c);
-                } else {
-                    if (DBG) log("starting local tone " + c);
-                    int toneDuration = -1;
-                    if (mShortTone) {
-                        toneDuration = DTMF_DURATION_MS;
-                    }
-                    mToneGenerator.startTone(mToneMap.get(c), toneDuration);
+            if (mTonePlayer == null) {
+                if (DBG) log("startDtmfTone: mTonePlayer == null, tone: " + c);
+            } else {
+                if (DBG) log("starting local tone " + c);
+                int toneDuration = -1;
+                if (mShortTone) {
+                    toneDuration = DTMF_DURATION_MS;
                 }
+                mTonePlayer.startTone(mToneMap.get(c), toneDuration);
             }
         }
     }
@@ -1030,7 +1038,7 @@ public class DTMFTwelveKeyDialer implements View.OnTouchListener, View.OnKeyList
 
         if (!mShortTone) {
             if (DBG) log("stopping remote tone.");
-            mCM.stopDtmf();
+            mSequencer.stopTone();
             stopLocalToneIfNeeded();
         }
     }
@@ -1043,13 +1051,11 @@ public class DTMFTwelveKeyDialer implements View.OnTouchListener, View.OnKeyList
             // if local tone playback is enabled, stop it.
             if (DBG) log("trying to stop local tone...");
             if (mLocalToneEnabled) {
-                synchronized (mToneGeneratorLock) {
-                    if (mToneGenerator == null) {
-                        if (DBG) log("stopLocalTone: mToneGenerator == null");
-                    } else {
-                        if (DBG) log("stopping local tone.");
-                        mToneGenerator.stopTone();
-                    }
+                if (mTonePlayer == null) {
+                    if (DBG) log("stopLocalTone: mTonePlayer == null");
+                } else {
+                    if (DBG) log("stopping local tone.");
+                    mTonePlayer.stopTone();
                 }
             }
         }
@@ -1057,38 +1063,30 @@ public class DTMFTwelveKeyDialer implements View.OnTouchListener, View.OnKeyList
 
     /**
      * Sends the dtmf character over the network for short DTMF settings
-     * When the characters are entered in quick succession,
-     * the characters are queued before sending over the network.
+     * When the characters are entered in quick succession, they are
+     * collected and sent together in the next burst.
      */
     private void sendShortDtmfToNetwork(char dtmfDigit) {
-        synchronized (mDTMFQueue) {
-            if (mDTMFBurstCnfPending == true) {
-                // Insert the dtmf char to the queue
-                mDTMFQueue.add(new Character(dtmfDigit));
-            } else {
-                String dtmfStr = Character.toString(dtmfDigit);
-                mCM.sendBurstDtmf(dtmfStr, 0, 0, mHandler.obtainMessage(DTMF_SEND_CNF));
-                // Set flag to indicate wait for Telephony confirmation.
-                mDTMFBurstCnfPending = true;
-            }
-        }
+        mSequencer.sendBurstDigit(dtmfDigit);
     }
 
     /**
      * Handles Burst Dtmf Confirmation from the Framework.
      */
     void handleBurstDtmfConfirmation() {
-        Character dtmfChar = null;
-        synchronized (mDTMFQueue) {
-            mDTMFBurstCnfPending = false;
-            if (!mDTMFQueue.isEmpty()) {
-                dtmfChar = mDTMFQueue.remove();
-                Log.i(LOG_TAG, "The dtmf character removed from queue" + dtmfChar);
-            }
-        }
-        if (dtmfChar != null) {
-            sendShortDtmfToNetwork(dtmfChar);
-        }
+        mSequencer.onBurstConfirmed();
+    }
+
+    /**
+     * Called (from InCallScreen) for each character of a post-dial string
+     * sent by the framework.
+     */
+    /* package */ void onPostDialCharacter(Connection.PostDialState state, char c) {
+        mSequencer.onPostDialCharacter(state, c);
+    }
+
+    /* package */ DtmfSequencer getSequencer() {
+        return mSequencer;
     }
 
     /**
@@ -117,8 +117,9 @@ public class DeleteFdnContactScreen extends Activity {
 
         Uri uri = Uri.parse("content://icc/fdn");
 
+        SimPhoneBookCache.getInstance(this).applyDelete(uri, mName, mNumber);
         mQueryHandler = new QueryHandler(getContentResolver());
-        mQueryHandler.startDelete(0, null, uri, buf.toString(), null);
+        mQueryHandler.startDelete(0, uri, uri, buf.toString(), null);
         displayProgress(true);
     }
 
@@ -182,6 +183,11 @@ public class DeleteFdnContactScreen extends Activity {
         protected void onDeleteComplete(int token, Object cookie, int result) {
             if (DBG) log("onDeleteComplete");
             displayProgress(false);
+            if (result <= 0) {
+                // Roll back the optimistic change made to the FDN list.
+                SimPhoneBookCache.getInstance(DeleteFdnContactScreen.this)
+                        .invalidate((Uri) cookie);
+            }
             handleResult(result > 0);
         }
 
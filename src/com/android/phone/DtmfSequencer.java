@@ -0,0 +1,271 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.phone;
+
+import android.os.Handler;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.android.internal.telephony.CallManager;
+import com.android.internal.telephony.Connection;
+
+/**
+ * Sends the DTMF digits typed on the in-call dialpad to the network, and
+ * keeps track of how long that takes.
+ *
+ * Continuous tones (GSM, SIP, IMS, and CDMA with "long" tones) are started
+ * and stopped as the keys go down and up.  The RIL queues those requests, so
+ * we never wait for one to complete before sending the next.
+ *
+ * With CDMA "short" tones every digit goes out as burst DTMF, and the
+ * network has to confirm a burst before the next one can be sent.  Digits
+ * typed while a burst is in flight used to be sent one per confirmation; they
+ * are now collected and sent together in the next burst, so a PIN typed
+ * quickly takes a couple of round trips instead of one per digit.
+ *
+ * Post-dial strings ("1234,5678#") are sent by the telephony framework
+ * itself; we only get told about each character, which is enough to see
+ * how long the whole string took.
+ *
+ * Timings are logged under DBG as they happen and summarized by
+ * {@link #dump()}.  Must only be used from the main thread.
+ */
+/* package */ final class DtmfSequencer {
+    private static final String LOG_TAG = "DtmfSequencer";
+    private static final boolean DBG = (PhoneGlobals.DBG_LEVEL >= 2);
+
+    // Digits per burst DTMF request.  The air interface allows more, but
+    // there's no point in holding up the first digits for the last ones.
+    private static final int MAX_BURST_LENGTH = 32;
+
+    private final CallManager mCM;
+    private final Handler mHandler;
+    private final int mBurstConfirmationWhat;
+
+    // Burst DTMF: the digits waiting for the burst in flight to be
+    // confirmed, and when each of them was typed.
+    private final StringBuilder mPendingDigits = new StringBuilder();
+    private long[] mPendingTimes = new long[MAX_BURST_LENGTH];
+    private boolean mBurstInFlight;
+    private int mInFlightDigits;
+    private long mInFlightFirstTime;
+    private long mSequenceStartTime;
+    private int mSequenceDigits;
+
+    // Continuous tones.
+    private long mToneStartTime;
+    private long mLastToneStopTime;
+
+    // Post-dial strings.
+    private long mPostDialStartTime;
+    private long mPostDialLastTime;
+    private long mPostDialUserTime;
+    private long mPostDialPromptTime;
+    private int mPostDialChars;
+
+    // Stats, for dump().
+    private int mBursts;
+    private int mBurstDigits;
+    private long mMaxBurstLatency;
+    private int mTones;
+    private long mTotalToneOnTime;
+    private long mMaxToneGap;
+    private int mPostDialStrings;
+    private long mMaxPostDialInterval;
+
+    /**
+     * @param handler the Handler that receives the burst DTMF confirmations,
+     *        and has to call {@link #onBurstConfirmed()} for them
+     * @param burstConfirmationWhat the message code for the confirmations
+     */
+    DtmfSequencer(CallManager cm, Handler handler, int burstConfirmationWhat) {
+        mCM = cm;
+        mHandler = handler;
+        mBurstConfirmationWhat = burstConfirmationWhat;
+    }
+
+    /**
+     * Sends {@code c} as burst DTMF, right away if no burst is in flight and
+     * along with everything else typed in the meantime otherwise.
+     */
+    void sendBurstDigit(char c) {
+        long now = SystemClock.uptimeMillis();
+        int count = mPendingDigits.length();
+        if (count == mPendingTimes.length) {
+            long[] times = new long[count * 2];
+            System.arraycopy(mPendingTimes, 0, times, 0, count);
+            mPendingTimes = times;
+        }
+        mPendingDigits.append(c);
+        mPendingTimes[count] = now;
+        if (!mBurstInFlight && mSequenceDigits == 0) {
+            mSequenceStartTime = now;
+        }
+        mSequenceDigits++;
+        sendPendingBurst();
+    }
+
+    /**
+     * Called when the network has confirmed the burst in flight; sends the
+     * digits that were typed in the meantime.
+     */
+    void onBurstConfirmed() {
+        if (!mBurstInFlight) {
+            return;
+        }
+        long now = SystemClock.uptimeMillis();
+        long latency = now - mInFlightFirstTime;
+        mBursts++;
+        mBurstDigits += mInFlightDigits;
+        mMaxBurstLatency = Math.max(mMaxBurstLatency, latency);
+        if (DBG) log("burst of " + mInFlightDigits + " confirmed, " + latency
+                + " ms after its first key");
+        mBurstInFlight = false;
+
+        if (mPendingDigits.length() > 0) {
+            sendPendingBurst();
+        } else {
+            if (DBG) log("burst sequence of " + mSequenceDigits + " digits took "
+                    + (now - mSequenceStartTime) + " ms");
+            mSequenceDigits = 0;
+        }
+    }
+
+    private void sendPendingBurst() {
+        int count = mPendingDigits.length();
+        if (mBurstInFlight || count == 0) {
+            return;
+        }
+        int n = Math.min(count, MAX_BURST_LENGTH);
+        String digits = mPendingDigits.substring(0, n);
+        mInFlightDigits = n;
+        mInFlightFirstTime = mPendingTimes[0];
+        mPendingDigits.delete(0, n);
+        System.arraycopy(mPendingTimes, n, mPendingTimes, 0, count - n);
+
+        if (DBG) log("sending burst '" + digits + "'");
+        mCM.sendBurstDtmf(digits, 0, 0, mHandler.obtainMessage(mBurstConfirmationWhat));
+        mBurstInFlight = true;
+    }
+
+    /**
+     * Starts a continuous tone for {@code c}.
+     */
+    void startTone(char c) {
+        long now = SystemClock.uptimeMillis();
+        if (mLastToneStopTime != 0) {
+            long gap = now - mLastToneStopTime;
+            // Anything longer is the user thinking, not us being slow.
+            if (gap < 1000) {
+                mMaxToneGap = Math.max(mMaxToneGap, gap);
+            }
+        }
+        mToneStartTime = now;
+        if (DBG) log("start tone '" + c + "'");
+        mCM.startDtmf(c);
+    }
+
+    /**
+     * Stops the continuous tone, if any.
+     */
+    void stopTone() {
+        mCM.stopDtmf();
+        if (mToneStartTime == 0) {
+            return;
+        }
+        long now = SystemClock.uptimeMillis();
+        long onTime = now - mToneStartTime;
+        mTones++;
+        mTotalToneOnTime += onTime;
+        mToneStartTime = 0;
+        mLastToneStopTime = now;
+        if (DBG) log("stop tone, on for " + onTime + " ms");
+    }
+
+    /**
+     * Called for each POST_ON_DIAL_CHARS event, to time the post-dial
+     * string the framework is sending.  The time spent in WAIT and WILD
+     * prompts is left out since it's up to the user.
+     */
+    void onPostDialCharacter(Connection.PostDialState state, char c) {
+        long now = SystemClock.uptimeMillis();
+        switch (state) {
+            case STARTED:
+                if (mPostDialPromptTime != 0) {
+                    mPostDialUserTime += now - mPostDialPromptTime;
+                    mPostDialPromptTime = 0;
+                } else if (mPostDialChars > 0) {
+                    mMaxPostDialInterval = Math.max(mMaxPostDialInterval,
+                            now - mPostDialLastTime);
+                }
+                if (mPostDialChars == 0) {
+                    mPostDialStartTime = now;
+                }
+                mPostDialChars++;
+                mPostDialLastTime = now;
+                break;
+
+            case WAIT:
+            case WILD:
+                mPostDialPromptTime = now;
+                break;
+
+            case COMPLETE:
+            case CANCELLED:
+                if (mPostDialChars > 0) {
+                    mPostDialStrings++;
+                    if (DBG) log("post-dial string of " + mPostDialChars + " chars "
+                            + state + " after " + (now - mPostDialStartTime) + " ms ("
+                            + mPostDialUserTime + " ms in prompts)");
+                }
+                mPostDialChars = 0;
+                mPostDialUserTime = 0;
+                mPostDialPromptTime = 0;
+                break;
+
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Forgets about digits that haven't been sent yet, for when the dialer
+     * goes away.
+     */
+    void clear() {
+        mHandler.removeMessages(mBurstConfirmationWhat);
+        mPendingDigits.setLength(0);
+        mBurstInFlight = false;
+        mSequenceDigits = 0;
+        mToneStartTime = 0;
+        mLastToneStopTime = 0;
+    }
+
+    void dump() {
+        Log.d(LOG_TAG, "  bursts: " + mBursts + " (" + mBurstDigits + " digits), max latency "
+                + mMaxBurstLatency + " ms");
+        Log.d(LOG_TAG, "  tones: " + mTones + ", average on time "
+                + (mTones > 0 ? mTotalToneOnTime / mTones : 0) + " ms, max gap "
+                + mMaxToneGap + " ms");
+        Log.d(LOG_TAG, "  post-dial strings: " + mPostDialStrings + ", max interval "
+                + mMaxPostDialInterval + " ms");
+    }
+
+    private static void log(String msg) {
+        Log.d(LOG_TAG, msg);
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.phone;
+
+import android.media.AudioManager;
+import android.media.ToneGenerator;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Message;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Plays the local DTMF feedback tones of the in-call dialpad on a thread of
+ * its own.
+ *
+ * ToneGenerator.startTone() blocks until the tone is actually playing, which
+ * takes a while when its AudioTrack has to be started up, and creating the
+ * ToneGenerator takes a while too.  Neither should happen on the main thread
+ * while the user is typing, so the ToneGenerator is created and driven on a
+ * dedicated audio-priority thread, and the dialer just posts key-down and
+ * key-up events to it.  The player is meant to be kept for the whole call.
+ *
+ * Continuous tones play for at least the minimum duration passed to the
+ * constructor, however quickly the key is released.  The time from a key
+ * event being posted to its tone playing is logged under DBG and summarized
+ * by {@link #dump()}.
+ */
+/* package */ final class DtmfTonePlayer implements Handler.Callback {
+    private static final String LOG_TAG = "DtmfTonePlayer";
+    private static final boolean DBG = (PhoneGlobals.DBG_LEVEL >= 2);
+
+    private static final int MSG_CREATE = 1;
+    private static final int MSG_START = 2;
+    private static final int MSG_STOP = 3;
+    private static final int MSG_RELEASE = 4;
+
+    // Same volume the dialer has always used.
+    private static final int TONE_RELATIVE_VOLUME = 80;
+
+    private final HandlerThread mThread;
+    private final Handler mHandler;
+    private final int mMinDuration;
+
+    // Only used on mThread.
+    private ToneGenerator mToneGenerator;
+    private long mToneStartTime;
+
+    // Written on mThread, read by dump().
+    private volatile int mTones;
+    private volatile long mTotalLatency;
+    private volatile long mMaxLatency;
+
+    /**
+     * Starts the thread and creates the ToneGenerator on it.
+     *
+     * @param minDuration how long (in ms) a continuous tone plays at least
+     */
+    DtmfTonePlayer(int minDuration) {
+        mMinDuration = minDuration;
+        mThread = new HandlerThread(LOG_TAG, Process.THREAD_PRIORITY_AUDIO);
+        mThread.start();
+        mHandler = new Handler(mThread.getLooper(), this);
+        mHandler.sendEmptyMessage(MSG_CREATE);
+    }
+
+    /**
+     * Starts playing {@code toneType} (one of the ToneGenerator.TONE_DTMF_*
+     * constants), replacing the current tone if any.
+     *
+     * @param duration how long to play it in ms, or -1 to play it until
+     *        {@link #stopTone()}
+     */
+    void startTone(int toneType, int duration) {
+        mHandler.obtainMessage(MSG_START, toneType, duration).sendToTarget();
+    }
+
+    /**
+     * Stops the current continuous tone, once it has played for the minimum
+     * duration.
+     */
+    void stopTone() {
+        mHandler.sendEmptyMessage(MSG_STOP);
+    }
+
+    /**
+     * Releases the ToneGenerator and stops the thread.  The player can't be
+     * used afterwards.
+     */
+    void release() {
+        mHandler.sendEmptyMessage(MSG_RELEASE);
+    }
+
+    @Override
+    public boolean handleMessage(Message msg) {
+        switch (msg.what) {
+            case MSG_CREATE:
+                // If the ToneGenerator creation fails, just continue without
+                // it.  It is a local audio signal, and is not as important as
+                // the dtmf tone itself.
+                try {
+                    mToneGenerator = new ToneGenerator(AudioManager.STREAM_DTMF,
+                            TONE_RELATIVE_VOLUME);
+                } catch (RuntimeException e) {
+                    Log.w(LOG_TAG, "Exception caught while creating local tone generator: " + e);
+                    mToneGenerator = null;
+                }
+                break;
+
+            case MSG_START:
+                // A stop that is waiting for the minimum duration would cut
+                // this tone short.
+                mHandler.removeMessages(MSG_STOP);
+                if (mToneGenerator == null) {
+                    if (DBG) log("start: no tone generator, tone " + msg.arg1);
+                    break;
+                }
+                mToneGenerator.startTone(msg.arg1, msg.arg2);
+                mToneStartTime = (msg.arg2 < 0) ? SystemClock.uptimeMillis() : 0;
+                recordLatency(SystemClock.uptimeMillis() - msg.getWhen());
+                break;
+
+            case MSG_STOP:
+                if (mToneGenerator == null || mToneStartTime == 0) {
+                    break;
+                }
+                long remaining = mToneStartTime + mMinDuration - SystemClock.uptimeMillis();
+                if (remaining > 0) {
+                    mHandler.sendEmptyMessageDelayed(MSG_STOP, remaining);
+                    break;
+                }
+                mToneGenerator.stopTone();
+                mToneStartTime = 0;
+                break;
+
+            case MSG_RELEASE:
+                mHandler.removeCallbacksAndMessages(null);
+                if (mToneGenerator != null) {
+                    mToneGenerator.release();
+                    mToneGenerator = null;
+                }
+                mThread.quit();
+                break;
+
+            default:
+                return false;
+        }
+        return true;
+    }
+
+    private void recordLatency(long latency) {
+        mTones++;
+        mTotalLatency += latency;
+        if (latency > mMaxLatency) {
+            mMaxLatency = latency;
+        }
+        if (DBG) log("tone playing " + latency + " ms after the key");
+    }
+
+    void dump() {
+        int tones = mTones;
+        Log.d(LOG_TAG, "  local tones: " + tones + ", average latency "
+                + (tones > 0 ? mTotalLatency / tones : 0) + " ms, max latency "
+                + mMaxLatency + " ms");
+    }
+
+    private static void log(String msg) {
+        Log.d(LOG_TAG, msg);
+    }
+}
@@ -298,8 +298,9 @@ public class EditFdnContactScreen extends Activity {
         bundle.put("number", number);
         bundle.put("pin2", mPin2);
 
+        SimPhoneBookCache.getInstance(this).applyInsert(uri, getNameFromTextField(), number);
         mQueryHandler = new QueryHandler(getContentResolver());
-        mQueryHandler.startInsert(0, null, uri, bundle);
+        mQueryHandler.startInsert(0, uri, uri, bundle);
         displayProgress(true);
         showStatus(getResources().getText(R.string.adding_fdn_contact));
     }
@@ -323,8 +324,9 @@ public class EditFdnContactScreen extends Activity {
         bundle.put("newNumber", number);
         bundle.put("pin2", mPin2);
 
+        SimPhoneBookCache.getInstance(this).applyUpdate(uri, mName, mNumber, name, number);
         mQueryHandler = new QueryHandler(getContentResolver());
-        mQueryHandler.startUpdate(0, null, uri, bundle, null, null);
+        mQueryHandler.startUpdate(0, uri, uri, bundle, null, null);
         displayProgress(true);
         showStatus(getResources().getText(R.string.updating_fdn_contact));
     }
@@ -448,6 +450,10 @@ public class EditFdnContactScreen extends Activity {
         protected void onInsertComplete(int token, Object cookie, Uri uri) {
             if (DBG) log("onInsertComplete");
             displayProgress(false);
+            if (uri == null) {
+                // Roll back the optimistic change made to the FDN list.
+                SimPhoneBookCache.getInstance(EditFdnContactScreen.this).invalidate((Uri) cookie);
+            }
             handleResult(uri != null, false);
         }
 
@@ -455,6 +461,9 @@ public class EditFdnContactScreen extends Activity {
         protected void onUpdateComplete(int token, Object cookie, int result) {
             if (DBG) log("onUpdateComplete");
             displayProgress(false);
+            if (result <= 0) {
+                SimPhoneBookCache.getInstance(EditFdnContactScreen.this).invalidate((Uri) cookie);
+            }
             handleResult(result > 0, false);
         }
 
@@ -23,12 +23,12 @@ import com.android.internal.telephony.PhoneConstants;
 import com.android.phone.Constants.CallStatusCode;
 import com.android.phone.InCallUiState.ProgressIndicationType;
 
-import android.content.Context;
 import android.content.Intent;
 import android.os.AsyncResult;
 import android.os.Handler;
+import android.os.Looper;
 import android.os.Message;
-import android.os.PowerManager;
+import android.os.SystemClock;
 import android.os.UserHandle;
 import android.provider.Settings;
 import android.telephony.ServiceState;
@@ -55,6 +55,15 @@ public class EmergencyCallHelper extends Handler {
     public static final int MAX_NUM_RETRIES = 6;
     public static final long TIME_BETWEEN_RETRIES = 5000;  // msec
 
+    // Once the radio is on, how long to wait for it to register before
+    // placing the call anyway.  (Emergency calls may go through while
+    // OUT_OF_SERVICE; see CallController.placeCallInternal().)
+    private static final long REGISTRATION_TIMEOUT = 3000;  // msec
+
+    // Delay before retrying a call that failed while the radio was on;
+    // doubled for each retry, up to TIME_BETWEEN_RETRIES.
+    private static final long MIN_TIME_BETWEEN_RETRIES = 1000;  // msec
+
     // Timeout used with our wake lock (just as a safety valve to make
     // sure we don't hold it forever).
     public static final long WAKE_LOCK_TIMEOUT = 5 * 60 * 1000;  // 5 minutes in msec
@@ -72,8 +81,10 @@ public class EmergencyCallHelper extends Handler {
     private String mNumber;  // The emergency number we're trying to dial
     private int mNumRetriesSoFar;
 
-    // Wake lock we hold while running the whole sequence
-    private PowerManager.WakeLock mPartialWakeLock;
+    // When the sequence started, and when the radio first came up; for
+    // logging how long each phase took.
+    private long mStartTime;
+    private long mRadioOnTime;
 
     public EmergencyCallHelper(CallController callController) {
         if (DBG) log("EmergencyCallHelper constructor...");
@@ -86,7 +97,7 @@ public class EmergencyCallHelper extends Handler {
     public void handleMessage(Message msg) {
         switch (msg.what) {
             case START_SEQUENCE:
-                startSequenceInternal(msg);
+                startSequenceInternal((String) msg.obj);
                 break;
             case SERVICE_STATE_CHANGED:
                 onServiceStateChanged(msg);
@@ -119,10 +130,12 @@ public class EmergencyCallHelper extends Handler {
      * - Retry if we've gone 5 seconds without any response from the radio
      * - Finally, clean up any leftover state (progress UI, wake locks, etc.)
      *
-     * This method is safe to call from any thread, since it simply posts
-     * a message to the EmergencyCallHelper's handler (thus ensuring that
-     * the rest of the sequence is entirely serialized, and runs only on
-     * the handler thread.)
+     * This method is safe to call from any thread.  When called from the
+     * handler thread (as CallController does) the radio is powered on
+     * right away, so that it comes up while the in-call UI is launched;
+     * otherwise this simply posts a message to the EmergencyCallHelper's
+     * handler (thus ensuring that the rest of the sequence is entirely
+     * serialized, and runs only on the handler thread.)
      *
      * This method does *not* force the in-call UI to come up; our caller
      * is responsible for doing that (presumably by calling
@@ -130,8 +143,12 @@ public class EmergencyCallHelper extends Handler {
      */
     public void startEmergencyCallFromAirplaneModeSequence(String number) {
         if (DBG) log("startEmergencyCallFromAirplaneModeSequence('" + number + "')...");
-        Message msg = obtainMessage(START_SEQUENCE, number);
-        sendMessage(msg);
+        if (Looper.myLooper() == getLooper()) {
+            startSequenceInternal(number);
+        } else {
+            Message msg = obtainMessage(START_SEQUENCE, number);
+            sendMessage(msg);
+        }
     }
 
     /**
@@ -139,33 +156,33 @@ public class EmergencyCallHelper extends Handler {
      * guaranteed to run on the handler thread.
      * @see startEmergencyCallFromAirplaneModeSequence()
      */
-    private void startSequenceInternal(Message msg) {
-        if (DBG) log("startSequenceInternal(): msg = " + msg);
+    private void startSequenceInternal(String number) {
+        if (DBG) log("startSequenceInternal()...");
 
-        // First of all, clean up any state (including mPartialWakeLock!)
+        // First of all, clean up any state (including the wake lock!)
         // left over from a prior emergency call sequence.
         // This ensures that we'll behave sanely if another
         // startEmergencyCallFromAirplaneModeSequence() comes in while
         // we're already in the middle of the sequence.
         cleanup();
 
-        mNumber = (String) msg.obj;
+        mNumber = number;
         if (DBG) log("- startSequenceInternal: Got mNumber: '" + mNumber + "'");
 
         mNumRetriesSoFar = 0;
+        mStartTime = SystemClock.elapsedRealtime();
+        mRadioOnTime = 0;
 
         // Reset mPhone to whatever the current default phone is right now.
         mPhone = mApp.getPhone();
 
         // Wake lock to make sure the processor doesn't go to sleep midway
         // through the emergency call sequence.
-        PowerManager pm = (PowerManager) mApp.getSystemService(Context.POWER_SERVICE);
-        mPartialWakeLock = pm.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, TAG);
         // Acquire with a timeout, just to be sure we won't hold the wake
         // lock forever even if a logic bug (in this class) causes us to
         // somehow never call cleanup().
         if (DBG) log("- startSequenceInternal: acquiring wake lock");
-        mPartialWakeLock.acquire(WAKE_LOCK_TIMEOUT);
+        PhoneWakeLock.getInstance().acquire(TAG, WAKE_LOCK_TIMEOUT);
 
         // No need to check the current service state here, since the only
         // reason the CallController would call this method in the first
@@ -213,9 +230,14 @@ public class EmergencyCallHelper extends Handler {
         boolean okToCall = (state.getState() == ServiceState.STATE_IN_SERVICE)
                 || (state.getState() == ServiceState.STATE_EMERGENCY_ONLY);
 
+        if (state.getState() != ServiceState.STATE_POWER_OFF) {
+            onRadioOn();
+        }
+
         if (okToCall) {
             // Woo hoo!  It's OK to actually place the call.
             if (DBG) log("onServiceStateChanged: ok to call!");
+            logPhase("service state " + state.getState());
 
             // Deregister for the service state change events.
             unregisterForServiceStateChanged();
@@ -225,6 +247,11 @@ public class EmergencyCallHelper extends Handler {
 
             placeEmergencyCall();
 
+            // Check back in a while, to clean up once the call is up.
+            // (This replaces any shorter timer set while we were waiting
+            // for the radio to register.)
+            startRetryTimer();
+
             // The in-call UI is probably still up at this point,
             // but make sure of that:
             mApp.displayCallScreen();
@@ -236,12 +263,29 @@ public class EmergencyCallHelper extends Handler {
             //
             // So just keep waiting; we'll probably get to either
             // STATE_IN_SERVICE or STATE_EMERGENCY_ONLY very shortly.
-            // (Or even if that doesn't happen, we'll at least do another retry
-            // when the RETRY_TIMEOUT event fires.)
+            // (Or even if that doesn't happen, we'll place the call anyway
+            // when the RETRY_TIMEOUT event fires; see onRadioOn().)
             if (DBG) log("onServiceStateChanged: not ready to call yet, keep waiting...");
         }
     }
 
+    /**
+     * Called when we first see the radio powered on.  There's no point in
+     * waiting the full TIME_BETWEEN_RETRIES for it to register from now
+     * on, so shorten the retry timer to REGISTRATION_TIMEOUT.
+     */
+    private void onRadioOn() {
+        if (mRadioOnTime != 0) {
+            return;
+        }
+        mRadioOnTime = SystemClock.elapsedRealtime();
+        logPhase("radio on");
+        if (hasMessages(RETRY_TIMEOUT)) {
+            removeMessages(RETRY_TIMEOUT);
+            sendEmptyMessageDelayed(RETRY_TIMEOUT, REGISTRATION_TIMEOUT);
+        }
+    }
+
     /**
      * Handles a DISCONNECT event from the telephony layer.
      *
@@ -257,8 +301,11 @@ public class EmergencyCallHelper extends Handler {
 
         if (cause == Connection.DisconnectCause.OUT_OF_SERVICE) {
             // Wait a bit more and try again (or just bail out totally if
-            // we've had too many failures.)
+            // we've had too many failures.)  If the radio registers in
+            // the meantime, onServiceStateChanged() retries right away.
             if (DBG) log("- onDisconnect: OUT_OF_SERVICE, need to retry...");
+            logPhase("call failed, out of service");
+            registerForServiceStateChanged();
             scheduleRetryOrBailOut();
         } else {
             // Any other disconnect cause means we're done.
@@ -296,12 +343,17 @@ public class EmergencyCallHelper extends Handler {
 
         if (phoneState == PhoneConstants.State.OFFHOOK) {
             if (DBG) log("- onRetryTimeout: Call is active!  Cleaning up...");
+            logPhase("call active");
             cleanup();
             return;
         }
 
         if (serviceState != ServiceState.STATE_POWER_OFF) {
             // Woo hoo -- we successfully got out of airplane mode.
+            // (Either we somehow missed the service state change event,
+            // or the radio didn't register within REGISTRATION_TIMEOUT,
+            // or we're retrying a failed call.)
+            onRadioOn();
 
             // Deregister for the service state change events; we don't need
             // these any more now that the radio is powered-on.
@@ -397,6 +449,7 @@ public class EmergencyCallHelper extends Handler {
                                               true,  // isEmergencyCall
                                               null);  // gatewayUri
         if (DBG) log("- PhoneUtils.placeCall() returned status = " + callStatus);
+        logPhase("dialed, status " + callStatus);
 
         boolean success;
         // Note PhoneUtils.placeCall() returns one of the CALL_STATUS_*
@@ -449,11 +502,25 @@ public class EmergencyCallHelper extends Handler {
             mApp.inCallUiState.setPendingCallStatusCode(CallStatusCode.CALL_FAILED);
         } else {
             if (DBG) log("- Scheduling another retry...");
-            startRetryTimer();
+            removeMessages(RETRY_TIMEOUT);
+            sendEmptyMessageDelayed(RETRY_TIMEOUT, getRetryDelay());
             mApp.inCallUiState.setProgressIndication(ProgressIndicationType.RETRYING);
         }
     }
 
+    /**
+     * Returns how long to wait before the next retry: TIME_BETWEEN_RETRIES
+     * while the radio hasn't come up, and a short but growing delay for
+     * retrying a call once it has.
+     */
+    private long getRetryDelay() {
+        if (mRadioOnTime == 0) {
+            return TIME_BETWEEN_RETRIES;
+        }
+        long delay = MIN_TIME_BETWEEN_RETRIES << Math.min(mNumRetriesSoFar - 1, 4);
+        return Math.min(delay, TIME_BETWEEN_RETRIES);
+    }
+
     /**
      * Clean up when done with the whole sequence: either after
      * successfully placing *and* ending the emergency call, or after
@@ -477,6 +544,10 @@ public class EmergencyCallHelper extends Handler {
      */
     private void cleanup() {
         if (DBG) log("cleanup()...");
+        if (mStartTime != 0) {
+            logPhase("done after " + mNumRetriesSoFar + " retries");
+            mStartTime = 0;
+        }
 
         // Take down the "Turning on radio..." indication.
         mApp.inCallUiState.clearProgressIndication();
@@ -486,13 +557,8 @@ public class EmergencyCallHelper extends Handler {
         cancelRetryTimer();
 
         // Release / clean up the wake lock
-        if (mPartialWakeLock != null) {
-            if (mPartialWakeLock.isHeld()) {
-                if (DBG) log("- releasing wake lock");
-                mPartialWakeLock.release();
-            }
-            mPartialWakeLock = null;
-        }
+        if (DBG) log("- releasing wake lock");
+        PhoneWakeLock.getInstance().releaseAll(TAG);
 
         // And finally, ask the in-call UI to refresh itself (to clean up the
         // progress indication if necessary), if it's currently visible.
@@ -541,6 +607,18 @@ public class EmergencyCallHelper extends Handler {
     // Debugging
     //
 
+    /**
+     * Logs how long into the sequence we've reached {@code phase}.  Always
+     * on, so the time it takes to get an emergency call out of airplane
+     * mode can be checked in bug reports.
+     */
+    private void logPhase(String phase) {
+        if (mStartTime != 0) {
+            Log.i(TAG, "emergency call sequence: " + phase + " at +"
+                    + (SystemClock.elapsedRealtime() - mStartTime) + " ms");
+        }
+    }
+
     private static void log(String msg) {
         Log.d(TAG, msg);
     }
@@ -0,0 +1,281 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.phone;
+
+import android.content.Context;
+import android.location.Country;
+import android.location.CountryDetector;
+import android.location.CountryListener;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.os.SystemProperties;
+import android.telephony.MSimTelephonyManager;
+import android.telephony.PhoneNumberUtils;
+import android.text.TextUtils;
+import android.util.Log;
+
+/**
+ * Answers "is this an emergency number?" for the dialing, in-call and call
+ * log paths, in place of PhoneNumberUtils.isLocalEmergencyNumber() and
+ * isPotentialLocalEmergencyNumber().
+ *
+ * Those ask the CountryDetector service for the current country (a binder
+ * call) and then re-read and split the ECC list system property, every time
+ * they are called, and a single outgoing call asks half a dozen times.
+ * Here the ECC lists of all subscriptions ("ril.ecclist", "ril.ecclist1", ...,
+ * falling back to "ro.ril.ecclist", the same properties the framework uses)
+ * are compiled into one small automaton, so that a number that is an
+ * emergency number on any SIM is recognized as one, like the framework does.
+ * It's only rebuilt when the RIL changes a property, e.g. once the SIM
+ * records are loaded.  The
+ * properties are checked at most every {@link #PROPERTY_CHECK_INTERVAL}, and
+ * the country is tracked with a CountryListener instead of being asked for.
+ *
+ * Matching a number against the automaton doesn't allocate, so it's cheap
+ * enough to do on every keystroke.  When there is no ECC list at all the
+ * framework's country-specific rules apply, so we hand the number to
+ * PhoneNumberUtils along with the cached country.  As in the framework,
+ * there are no potential emergency numbers in Brazil, where ordinary
+ * numbers may start with 190, 192 or 193.
+ */
+/* package */ final class EmergencyNumberMatcher {
+    private static final String LOG_TAG = "EmergencyNumberMatcher";
+    private static final boolean DBG = (PhoneGlobals.DBG_LEVEL >= 2);
+
+    private static final String ECC_LIST_PROPERTY = "ril.ecclist";
+    private static final String ECC_LIST_DEFAULT_PROPERTY = "ro.ril.ecclist";
+
+    /** How often (in ms) the ECC list properties are looked at again. */
+    private static final long PROPERTY_CHECK_INTERVAL = 1000;
+
+    private static EmergencyNumberMatcher sInstance;
+
+    private final int mPhoneCount;
+    private Automaton mAutomaton;
+
+    private volatile String mCountryIso;
+
+    private int mRebuilds;
+
+    static synchronized EmergencyNumberMatcher getInstance() {
+        if (sInstance == null) {
+            sInstance = new EmergencyNumberMatcher(PhoneGlobals.getInstance());
+        }
+        return sInstance;
+    }
+
+    private EmergencyNumberMatcher(Context context) {
+        mPhoneCount = Math.max(1, MSimTelephonyManager.getDefault().getPhoneCount());
+
+        CountryDetector detector =
+                (CountryDetector) context.getSystemService(Context.COUNTRY_DETECTOR);
+        if (detector != null) {
+            detector.addCountryListener(new CountryListener() {
+                @Override
+                public void onCountryDetected(Country country) {
+                    if (DBG) log("country changed: " + country);
+                    mCountryIso = (country != null) ? country.getCountryIso() : null;
+                }
+            }, Looper.getMainLooper());
+            Country country = detector.detectCountry();
+            if (country != null) {
+                mCountryIso = country.getCountryIso();
+            }
+        }
+        if (mCountryIso == null) {
+            mCountryIso = context.getResources().getConfiguration().locale.getCountry();
+        }
+    }
+
+    /**
+     * Same as PhoneNumberUtils.isLocalEmergencyNumber(): whether
+     * {@code number} is exactly an emergency number.
+     */
+    boolean isEmergencyNumber(String number) {
+        return match(number, true);
+    }
+
+    /**
+     * Same as PhoneNumberUtils.isPotentialLocalEmergencyNumber(): whether
+     * {@code number} starts with an emergency number, so that it might be
+     * dialed as one by the network.
+     */
+    boolean isPotentialEmergencyNumber(String number) {
+        return match(number, false);
+    }
+
+    private boolean match(String number, boolean exact) {
+        if (number == null || PhoneNumberUtils.isUriNumber(number)) {
+            return false;
+        }
+        String countryIso = mCountryIso;
+        if ("BR".equalsIgnoreCase(countryIso)) {
+            exact = true;
+        }
+        Automaton automaton = getAutomaton();
+        if (automaton != null) {
+            return automaton.match(number, exact);
+        }
+        // No ECC list; it's up to the country.
+        return exact ? PhoneNumberUtils.isEmergencyNumber(number, countryIso)
+                : PhoneNumberUtils.isPotentialEmergencyNumber(number, countryIso);
+    }
+
+    /**
+     * Returns the automaton for the ECC lists of all subscriptions,
+     * rebuilding it if a list has changed, or null if there is no list.
+     */
+    private synchronized Automaton getAutomaton() {
+        Automaton automaton = mAutomaton;
+        long now = SystemClock.uptimeMillis();
+        if (automaton != null && now - automaton.checkTime < PROPERTY_CHECK_INTERVAL) {
+            return automaton.isEmpty() ? null : automaton;
+        }
+
+        String defaultList = null;
+        StringBuilder lists = new StringBuilder();
+        for (int subscription = 0; subscription < mPhoneCount; subscription++) {
+            String list = SystemProperties.get((subscription == 0)
+                    ? ECC_LIST_PROPERTY : ECC_LIST_PROPERTY + subscription);
+            if (TextUtils.isEmpty(list)) {
+                if (defaultList == null) {
+                    defaultList = SystemProperties.get(ECC_LIST_DEFAULT_PROPERTY);
+                }
+                list = defaultList;
+            }
+            if (!TextUtils.isEmpty(list)) {
+                if (lists.length() > 0) {
+                    lists.append(',');
+                }
+                lists.append(list);
+            }
+        }
+        String source = lists.toString();
+        if (automaton == null || !source.equals(automaton.source)) {
+            mRebuilds++;
+            if (DBG) log("ECC lists: " + source + " (rebuild #" + mRebuilds + ")");
+            automaton = new Automaton(source);
+            mAutomaton = automaton;
+        }
+        automaton.checkTime = now;
+        return automaton.isEmpty() ? null : automaton;
+    }
+
+    /**
+     * A trie of the numbers of one ECC list, over the characters that can
+     * appear in the network portion of a dial string.
+     */
+    private static final class Automaton {
+        private static final int ALPHABET = 13;  // 0-9 * # +
+
+        final String source;
+        long checkTime;
+
+        // mNext[state * ALPHABET + symbol] is the next state, or 0 for none
+        // (state 0 is the start state, which is never a target).
+        private final int[] mNext;
+        private final boolean[] mAccept;
+
+        Automaton(String list) {
+            source = list;
+            if (TextUtils.isEmpty(list)) {
+                mNext = null;
+                mAccept = null;
+                return;
+            }
+            int maxStates = list.length() + 1;
+            int[] next = new int[maxStates * ALPHABET];
+            boolean[] accept = new boolean[maxStates];
+            int states = 1;
+            int state = 0;
+            for (int i = 0, len = list.length(); i <= len; i++) {
+                char c = (i < len) ? list.charAt(i) : ',';
+                if (c == ',') {
+                    // An empty entry would make everything a potential
+                    // emergency number; ignore it.
+                    accept[state] = (state != 0);
+                    state = 0;
+                    continue;
+                }
+                int symbol = symbolOf(c);
+                if (symbol < 0) {
+                    // Can't be dialed, so it can't match anything either.
+                    // Skip to the next number.
+                    while (i + 1 < len && list.charAt(i + 1) != ',') i++;
+                    i++;
+                    state = 0;
+                    continue;
+                }
+                int index = state * ALPHABET + symbol;
+                if (next[index] == 0) {
+                    next[index] = states++;
+                }
+                state = next[index];
+            }
+            mNext = next;
+            mAccept = accept;
+        }
+
+        boolean isEmpty() {
+            return mNext == null;
+        }
+
+        /**
+         * Matches the network portion of {@code number} (as extracted by
+         * PhoneNumberUtils.extractNetworkPortionAlt()) against the list:
+         * exactly, or whether it starts with one of the numbers.
+         */
+        boolean match(String number, boolean exact) {
+            int state = 0;
+            boolean seenPlus = false;
+            for (int i = 0, len = number.length(); i < len; i++) {
+                char c = number.charAt(i);
+                if (c == '+') {
+                    if (seenPlus) continue;
+                    seenPlus = true;
+                }
+                if (!PhoneNumberUtils.isDialable(c)) {
+                    if (PhoneNumberUtils.isStartsPostDial(c)) break;
+                    continue;
+                }
+                int symbol = symbolOf(c);
+                state = (symbol < 0) ? 0 : mNext[state * ALPHABET + symbol];
+                if (state == 0) {
+                    return false;
+                }
+                if (!exact && mAccept[state]) {
+                    return true;
+                }
+            }
+            return exact && mAccept[state];
+        }
+
+        private static int symbolOf(char c) {
+            if (c >= '0' && c <= '9') return c - '0';
+            switch (c) {
+                case '*': return 10;
+                case '#': return 11;
+                case '+': return 12;
+                default: return -1;
+            }
+        }
+    }
+
+    private static void log(String msg) {
+        Log.d(LOG_TAG, msg);
+    }
+}
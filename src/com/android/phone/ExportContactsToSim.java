@@ -31,8 +31,6 @@ package com.android.phone;
 
 import android.app.Activity;
 import android.app.AlertDialog;
-import android.content.ContentValues;
-import android.content.Intent;
 import android.database.Cursor;
 import android.net.Uri;
 import android.os.Bundle;
@@ -49,15 +47,15 @@ import android.content.DialogInterface;
 import android.content.DialogInterface.OnClickListener;
 import android.provider.ContactsContract.CommonDataKinds.Phone;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import static android.view.Window.PROGRESS_VISIBILITY_OFF;
 import static android.view.Window.PROGRESS_VISIBILITY_ON;
 
 public class ExportContactsToSim extends Activity {
     private static final String TAG = "ExportContactsToSim";
-    private static final int FAILURE = 0;
-    private static final int SUCCESS = 1;
     private TextView mEmptyText;
-    private int mResult = SUCCESS;
     protected boolean mIsForeground = false;
     private static final String SIM_INDEX = "sim_index";
 
@@ -95,19 +93,16 @@ public class ExportContactsToSim extends Activity {
 
         new Thread(new Runnable() {
             public void run() {
-                Cursor contactsCursor = getContactsContentCursor();
-                if ((contactsCursor.getCount()) < 1) {
-                    // If there are no contacts in Phone book display as failed.
-                    // Displaying only fail or success, there are no customized strings.
-                    mResult = FAILURE;
-                }
-
-                for (int i = 0; contactsCursor.moveToNext(); i++) {
-                    populateContactDataFromCursor(contactsCursor );
+                SimContactsExporter.Summary summary = null;
+                Uri uri = getUri();
+                if (uri == null) {
+                    Log.d(TAG, "doExportToSim: uri is null, return");
+                } else {
+                    List<SimContactsExporter.Entry> entries = readPhoneBookEntries();
+                    summary = new SimContactsExporter(getContentResolver(), uri,
+                            getSubscription()).export(entries);
                 }
-
-                contactsCursor.close();
-                Message message = Message.obtain(mHandler, CONTACTS_EXPORTED, (Integer)mResult);
+                Message message = Message.obtain(mHandler, CONTACTS_EXPORTED, summary);
                 mHandler.sendMessage(message);
             }
         }).start();
@@ -124,34 +119,29 @@ public class ExportContactsToSim extends Activity {
         return contactsCursor;
     }
 
-    private void populateContactDataFromCursor(final Cursor dataCursor) {
-        Uri uri = getUri();
-        if (uri == null) {
-            Log.d(TAG," populateContactDataFromCursor: uri is null, return ");
-            return;
+    private List<SimContactsExporter.Entry> readPhoneBookEntries() {
+        List<SimContactsExporter.Entry> entries = new ArrayList<SimContactsExporter.Entry>();
+        Cursor dataCursor = getContactsContentCursor();
+        if (dataCursor == null) {
+            return entries;
         }
-        Uri contactUri;
-        int nameIdx = dataCursor
-                .getColumnIndex(ContactsContract.Data.DISPLAY_NAME);
-        int phoneIdx = dataCursor
-                .getColumnIndex(ContactsContract.CommonDataKinds.Phone.NUMBER);
-
-        // Extract the name.
-        String name = dataCursor.getString(nameIdx);
-        // Extract the phone number.
-        String rawNumber = dataCursor.getString(phoneIdx);
-        String number = PhoneNumberUtils.normalizeNumber(rawNumber);
-
-        ContentValues values = new ContentValues();
-        values.put("tag", name);
-        values.put("number", number);
-        Log.d("ExportContactsToSim", "name : " + name + " number : " + number);
-        contactUri = getContentResolver().insert(uri, values);
-        if (contactUri == null) {
-            Log.e("ExportContactsToSim", "Failed to export contact to SIM for " +
-                    "name : " + name + " number : " + number);
-            mResult = FAILURE;
+        try {
+            int nameIdx = dataCursor
+                    .getColumnIndex(ContactsContract.Data.DISPLAY_NAME);
+            int phoneIdx = dataCursor
+                    .getColumnIndex(ContactsContract.CommonDataKinds.Phone.NUMBER);
+            while (dataCursor.moveToNext()) {
+                // Extract the name.
+                String name = dataCursor.getString(nameIdx);
+                // Extract the phone number.
+                String rawNumber = dataCursor.getString(phoneIdx);
+                String number = PhoneNumberUtils.normalizeNumber(rawNumber);
+                entries.add(new SimContactsExporter.Entry(name, number));
+            }
+        } finally {
+            dataCursor.close();
         }
+        return entries;
     }
 
     private void showAlertDialog(String value) {
@@ -183,22 +173,37 @@ public class ExportContactsToSim extends Activity {
         public void handleMessage(Message msg) {
             switch(msg.what) {
                 case CONTACTS_EXPORTED:
-                    int result = (Integer)msg.obj;
-                    if (result == 1) {
+                    SimContactsExporter.Summary summary = (SimContactsExporter.Summary) msg.obj;
+                    displayProgress(false);
+                    Uri uri = getUri();
+                    if (uri != null) {
+                        // The SIM lists cached for SimContacts / MSimContacts
+                        // (including "adn_all") don't have the new records.
+                        SimPhoneBookCache.getInstance(ExportContactsToSim.this).invalidate(uri);
+                    }
+                    if (summary == null || summary.entries.isEmpty()) {
+                        // If there are no contacts in Phone book display as failed.
+                        showAlertDialog(getString(R.string.exportAllcontatsFailed));
+                    } else if (summary.isSuccess()) {
                         showAlertDialog(getString(R.string.exportAllcontatsSuccess));
                     } else {
-                        showAlertDialog(getString(R.string.exportAllcontatsFailed));
+                        showAlertDialog(getString(R.string.exportContactsResult,
+                                summary.exported, summary.alreadyOnSim, summary.duplicates,
+                                summary.simFull, summary.failed, summary.notExported));
                     }
                     break;
             }
         }
     };
 
+    private int getSubscription() {
+        Bundle extras = getIntent().getExtras();
+        return extras != null ? extras.getInt(SIM_INDEX) : 0;
+    }
+
     private Uri getUri() {
-        Intent intent = getIntent();
-        Bundle extras = intent.getExtras();
         if (MSimTelephonyManager.getDefault().isMultiSimEnabled()) {
-            int subscription  = extras.getInt(SIM_INDEX);
+            int subscription = getSubscription();
             String[] adnString = {"adn", "adn_sub2", "adn_sub3"};
             Log.d("ExportContactsToSim"," subscription : " + subscription);
 
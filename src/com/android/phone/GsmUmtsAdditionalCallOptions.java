@@ -24,6 +24,7 @@ public class GsmUmtsAdditionalCallOptions extends
     private CallWaitingCheckBoxPreference mCWButton;
 
     private final ArrayList<Preference> mPreferences = new ArrayList<Preference>();
+    /** Index of the next preference to load. */
     private int mInitIndex= 0;
     private int mSubscription = 0;
 
@@ -45,7 +46,7 @@ public class GsmUmtsAdditionalCallOptions extends
 
         if (icicle == null) {
             if (DBG) Log.d(LOG_TAG, "start to init ");
-            mCLIRButton.init(this, false, mSubscription);
+            initNext();
         } else {
             if (DBG) Log.d(LOG_TAG, "restore stored states");
             mInitIndex = mPreferences.size();
@@ -77,14 +78,29 @@ public class GsmUmtsAdditionalCallOptions extends
         }
     }
 
+    /**
+     * Loads the remaining preferences one network query at a time.  Values
+     * served from SuppServiceCache don't wait for the previous query.
+     */
+    private void initNext() {
+        while (mInitIndex < mPreferences.size() && !isFinishing()) {
+            Preference pref = mPreferences.get(mInitIndex++);
+            boolean started = false;
+            if (pref instanceof CLIRListPreference) {
+                started = ((CLIRListPreference) pref).init(this, false, mSubscription);
+            } else if (pref instanceof CallWaitingCheckBoxPreference) {
+                started = ((CallWaitingCheckBoxPreference) pref).init(this, false, mSubscription);
+            }
+            if (started) {
+                break;
+            }
+        }
+    }
+
     @Override
     public void onFinished(Preference preference, boolean reading) {
-        if (mInitIndex < mPreferences.size()-1 && !isFinishing()) {
-            mInitIndex++;
-            Preference pref = mPreferences.get(mInitIndex);
-            if (pref instanceof CallWaitingCheckBoxPreference) {
-                ((CallWaitingCheckBoxPreference) pref).init(this, false, mSubscription);
-            }
+        if (reading) {
+            initNext();
         }
         super.onFinished(preference, reading);
     }
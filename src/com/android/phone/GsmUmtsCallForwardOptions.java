@@ -39,7 +39,12 @@ public class GsmUmtsCallForwardOptions extends TimeConsumingPreferenceActivity {
 
     private final ArrayList<CallForwardEditPreference> mPreferences =
             new ArrayList<CallForwardEditPreference> ();
+    /** Index of the next preference to load. */
     private int mInitIndex= 0;
+    /** Number of call forwarding queries currently outstanding. */
+    private int mQueriesInFlight = 0;
+    /** Maximum number of call forwarding queries sent to the network at once. */
+    private int mQueryWindow;
 
     private boolean mFirstResume;
     private Bundle mIcicle;
@@ -72,6 +77,8 @@ public class GsmUmtsCallForwardOptions extends TimeConsumingPreferenceActivity {
         mPreferences.add(mButtonCFNRy);
         mPreferences.add(mButtonCFNRc);
 
+        mQueryWindow = Math.max(1, getResources().getInteger(R.integer.config_cf_query_window));
+
         // we wait to do the initialization until onResume so that the
         // TimeConsumingPreferenceActivity dialog can display as it
         // relies on onResume / onPause to maintain its foreground state.
@@ -93,7 +100,7 @@ public class GsmUmtsCallForwardOptions extends TimeConsumingPreferenceActivity {
         if (mFirstResume) {
             if (mIcicle == null) {
                 if (DBG) Log.d(LOG_TAG, "start to init ");
-                mPreferences.get(mInitIndex).init(this, false, mSubscription);
+                startQueries();
             } else {
                 mInitIndex = mPreferences.size();
 
@@ -127,11 +134,25 @@ public class GsmUmtsCallForwardOptions extends TimeConsumingPreferenceActivity {
         }
     }
 
+    /**
+     * Loads the remaining preferences, keeping at most mQueryWindow network
+     * queries in flight.  Preferences served from SuppServiceCache don't
+     * count against the window.
+     */
+    private void startQueries() {
+        while (mInitIndex < mPreferences.size() && mQueriesInFlight < mQueryWindow
+                && !isFinishing()) {
+            if (mPreferences.get(mInitIndex++).init(this, false, mSubscription)) {
+                mQueriesInFlight++;
+            }
+        }
+    }
+
     @Override
     public void onFinished(Preference preference, boolean reading) {
-        if (mInitIndex < mPreferences.size()-1 && !isFinishing()) {
-            mInitIndex++;
-            mPreferences.get(mInitIndex).init(this, false, mSubscription);
+        if (reading && mQueriesInFlight > 0) {
+            mQueriesInFlight--;
+            startQueries();
         }
 
         super.onFinished(preference, reading);
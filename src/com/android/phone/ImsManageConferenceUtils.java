@@ -21,24 +21,15 @@ package com.android.phone;
 
 import android.os.RemoteException;
 import android.os.SystemProperties;
-import android.text.TextUtils;
 import android.util.Log;
-import android.view.View;
-import android.view.ViewGroup;
-import android.view.ViewStub;
-import android.widget.Button;
-import android.widget.Chronometer;
-import android.widget.ImageButton;
-import android.widget.TextView;
 
 import com.android.internal.telephony.Call;
-import com.android.internal.telephony.CallerInfo;
-import com.android.internal.telephony.CallerInfoAsyncQuery;
 import com.android.internal.telephony.CallManager;
 import com.android.internal.telephony.Connection;
 import com.android.internal.telephony.PhoneConstants;
 import com.android.internal.telephony.CallStateException;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -53,9 +44,6 @@ public class ImsManageConferenceUtils extends ManageConferenceUtils {
 
     private PhoneGlobals mApp;
 
-    // TODO Limitation - only 5 users can be supported
-    private static final int MAX_CALLERS_IN_CONFERENCE = 5;
-
     public ImsManageConferenceUtils(InCallScreen inCallScreen, CallManager cm) {
         super(inCallScreen, cm);
         mApp = PhoneGlobals.getInstance();
@@ -90,17 +78,15 @@ public class ImsManageConferenceUtils extends ManageConferenceUtils {
                     Log.d(LOG_TAG, "Ims Service getUriListinConf exception", ex);
                 }
                 if (mUriListInConf != null) {
-                    mNumCallersInConference = mUriListInConf.length;
-                    Log.d(LOG_TAG, "mNumCallersInConference " + mNumCallersInConference);
-                    for (int i = 0; i < MAX_CALLERS_IN_CONFERENCE; i++) {
-                        if (i < mNumCallersInConference) {
-                            // Fill in the row in the UI for this caller.
-                            updateManageConferenceRow(i, connection, false, mUriListInConf[i]);
-                        } else {
-                            // Blank out this row in the UI
-                            updateManageConferenceRow(i, null, false);
-                        }
+                    Log.d(LOG_TAG, "mNumCallersInConference " + mUriListInConf.length);
+                    // Every participant is reached through the conference
+                    // connection; separate is not supported for IMS.
+                    ArrayList<Participant> participants =
+                            new ArrayList<Participant>(mUriListInConf.length);
+                    for (String uri : mUriListInConf) {
+                        participants.add(new Participant(connection, uri, false));
                     }
+                    updateParticipants(participants);
                     return;
                 }
             }
@@ -108,63 +94,19 @@ public class ImsManageConferenceUtils extends ManageConferenceUtils {
         super.updateManageConferencePanel(connections);
     }
 
-    /**
-     * Updates a single row of the "Manage conference" UI. (One
-     * row in this UI represents a single caller in the conference.)
-     *
-     * @param i the row to update
-     * @param connection the Connection corresponding to this caller. If null,
-     *            that means this is an "empty slot" in the conference, so hide
-     *            this row in the UI.
-     * @param canSeparate if true, show a "Separate" (i.e. "Private") button on
-     *            this row in the UI.
-     */
-    private void updateManageConferenceRow(final int i,
-            final Connection connection,
-            boolean canSeparate,
-            final String uri) {
-
-        if (connection != null) {
-            // Activate this row of the Manage conference panel:
-            mConferenceCallList[i].setVisibility(View.VISIBLE);
-
-            // get the relevant children views
-            View endButton = mConferenceCallList[i].findViewById(R.id.conferenceCallerDisconnect);
-            View separateButton = mConferenceCallList[i].findViewById(
-                    R.id.conferenceCallerSeparate);
-            TextView nameTextView = (TextView) mConferenceCallList[i].findViewById(
-                    R.id.conferenceCallerName);
-            TextView numberTextView = (TextView) mConferenceCallList[i].findViewById(
-                    R.id.conferenceCallerNumber);
-            TextView numberTypeTextView = (TextView) mConferenceCallList[i].findViewById(
-                    R.id.conferenceCallerNumberType);
-
-            // Hook up this row's buttons.
-            View.OnClickListener endThisConnection = new View.OnClickListener() {
-                @Override
-                public void onClick(View v) {
-                    endConferenceConnection(i, connection, uri);
-                    PhoneGlobals.getInstance().pokeUserActivity();
-                }
-            };
-            endButton.setOnClickListener(endThisConnection);
-
-            // Separate not supported for IMS
-            separateButton.setVisibility(View.INVISIBLE);
-
-            // display the CallerInfo.
-            displayCallerInfoForConferenceRow(uri, nameTextView, numberTypeTextView, numberTextView);
-
+    @Override
+    protected void endConferenceParticipant(int i, Participant participant) {
+        if (participant.uri != null) {
+            endConferenceConnection(i, participant.connection, participant.uri);
         } else {
-            // Disable this row of the Manage conference panel:
-            mConferenceCallList[i].setVisibility(View.GONE);
+            super.endConferenceParticipant(i, participant);
         }
     }
 
     /**
      * Ends the specified connection on a conference call. This method is run
-     * (via a closure containing a row index and Connection) when the user
-     * clicks the "End" button on a specific row in the Manage conference UI.
+     * (via endConferenceParticipant()) when the user clicks the "End" button
+     * on a specific row in the Manage conference UI.
      * This is used only for IMS calls to hangup the user through the uri
      */
     private void endConferenceConnection(int i, Connection connection, String uri) {
@@ -190,34 +132,4 @@ public class ImsManageConferenceUtils extends ManageConferenceUtils {
             }
         }
     }
-
-    /**
-     * Helper function to fill out the Conference Call(er) information for each
-     * item in the "Manage Conference Call" list.
-     *
-     * @param presentation presentation specified by {@link Connection}.
-     */
-    private final void displayCallerInfoForConferenceRow(String uri,
-            TextView nameTextView, TextView numberTypeTextView, TextView numberTextView) {
-        // gather the correct name and number information.
-        String callerName = "";
-        String callerNumber = "";
-        String callerNumberType = "";
-
-        callerNumber = uri;
-        // set the caller name
-        nameTextView.setText(callerName);
-
-        // TODO lookup conference event xml/phonebook for other display
-        // information. Currently name lookup is not supported
-        if (TextUtils.isEmpty(callerNumber)) {
-            numberTextView.setVisibility(View.GONE);
-            numberTypeTextView.setVisibility(View.GONE);
-        } else {
-            numberTextView.setVisibility(View.VISIBLE);
-            numberTextView.setText(callerNumber);
-            numberTypeTextView.setVisibility(View.VISIBLE);
-            numberTypeTextView.setText(callerNumberType);
-        }
-    }
-}
\ No newline at end of file
+}
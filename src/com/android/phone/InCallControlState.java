@@ -20,8 +20,11 @@
 
 package com.android.phone;
 
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Message;
 import android.os.RemoteException;
-import android.telephony.PhoneNumberUtils;
+import android.telephony.MSimTelephonyManager;
 import android.text.TextUtils;
 import android.util.Log;
 
@@ -45,65 +48,97 @@ import com.android.internal.telephony.TelephonyCapabilities;
  *
  * (In other words, this is the "model" that corresponds to the "view"
  * implemented by InCallTouchUi.)
+ *
+ * The flags are kept in a bitset that is only recomputed when its inputs
+ * change.  The flags that depend only on the telephony state (the FLAG_*
+ * constants below FLAG_LAST_CALL_FLAG) are computed once per change for the
+ * whole process, see getCallFlags(), and are invalidated by precise call
+ * state changes, disconnects, new ringing connections, CDMA call state
+ * changes and the IMS service connecting.  Like their inputs, they're only
+ * safe to use on the main thread; BluetoothPhoneService, which runs its
+ * commands on a binder thread, asks CallManager itself.  The audio routing
+ * flags are invalidated by mute, speaker, wired headset and bluetooth
+ * changes (see invalidateAudioState()).
+ * The few flags that depend on the InCallScreen itself (dialpad, "Manage
+ * conference" mode) are cheap and are read every time, and so is whether
+ * the ImsService allows a VT upgrade or downgrade or adding a participant,
+ * which can change without any event we could listen to.
  */
 public class InCallControlState {
     private static final String LOG_TAG = "InCallControlState";
     private static final boolean DBG = (PhoneGlobals.DBG_LEVEL >= 2);
 
-    private InCallScreen mInCallScreen;
-    private CallManager mCM;
-    private PhoneGlobals mApp;
     //
-    // Our "public API": Boolean flags to indicate the state and/or
-    // enabledness of all possible in-call user operations:
-    //
-
-    public boolean manageConferenceVisible;
-    public boolean manageConferenceEnabled;
-
-    /**
-     * Visible IMS VoLTE/VT calls and if upgrade/downgrade is supported
-     * Enabled only for IMS calls, disabled for CS calls
-     */
-    public boolean modifyCallVisible;
-    public boolean modifyCallEnabled;
-
-    //
-    public boolean canAddCall;
-    //
-    public boolean canEndCall;
-    //
-    public boolean canBlacklistCall;
-    //
-    public boolean canSwap;
-    public boolean canMerge;
-    //
-    public boolean bluetoothEnabled;
-    public boolean bluetoothIndicatorOn;
-    //
-    public boolean speakerEnabled;
-    public boolean speakerOn;
-    //
-    public boolean canMute;
-    public boolean muteIndicatorOn;
-    //
-    public boolean dialpadEnabled;
-    public boolean dialpadVisible;
+    // Flags that only depend on the telephony state, shared by the whole
+    // process (except for the VT modify and add participant flags, which
+    // depend on the ImsService; see update()):
     //
+    public static final int FLAG_MANAGE_CONFERENCE_VISIBLE = 1 << 0;
+    public static final int FLAG_MODIFY_CALL_VISIBLE = 1 << 1;
+    public static final int FLAG_MODIFY_CALL_ENABLED = 1 << 2;
+    public static final int FLAG_CAN_ADD_CALL = 1 << 3;
+    public static final int FLAG_CAN_END_CALL = 1 << 4;
+    public static final int FLAG_CAN_BLACKLIST_CALL = 1 << 5;
+    public static final int FLAG_CAN_SWAP = 1 << 6;
+    public static final int FLAG_CAN_MERGE = 1 << 7;
+    public static final int FLAG_SPEAKER_ENABLED = 1 << 8;
+    public static final int FLAG_CAN_MUTE = 1 << 9;
     /** True if the "Hold" function is *ever* available on this device */
-    public boolean supportsHold;
+    public static final int FLAG_SUPPORTS_HOLD = 1 << 10;
     /** True if the call is currently on hold */
-    public boolean onHold;
+    public static final int FLAG_ON_HOLD = 1 << 11;
     /** True if the "Hold" or "Unhold" function should be available right now */
     // TODO: this name is misleading.  Let's break this apart into
     // separate canHold and canUnhold flags, and have the caller look at
     // "canHold || canUnhold" to decide whether the hold/unhold UI element
     // should be visible.
-    public boolean canHold;
-
+    public static final int FLAG_CAN_HOLD = 1 << 12;
     // IMS add participant
-    public boolean addParticipantEnabled;
-    public boolean addParticipantVisible;
+    public static final int FLAG_ADD_PARTICIPANT_VISIBLE = 1 << 13;
+    public static final int FLAG_ADD_PARTICIPANT_ENABLED = 1 << 14;
+    /** True if calls are up on more than one subscription */
+    public static final int FLAG_CAN_SWITCH_SUBSCRIPTION = 1 << 15;
+    private static final int FLAG_LAST_CALL_FLAG = FLAG_CAN_SWITCH_SUBSCRIPTION;
+
+    //
+    // Audio routing flags:
+    //
+    public static final int FLAG_BLUETOOTH_ENABLED = 1 << 16;
+    public static final int FLAG_BLUETOOTH_INDICATOR_ON = 1 << 17;
+    public static final int FLAG_SPEAKER_ON = 1 << 18;
+    public static final int FLAG_MUTE_INDICATOR_ON = 1 << 19;
+
+    //
+    // Flags that depend on the InCallScreen:
+    //
+    public static final int FLAG_MANAGE_CONFERENCE_ENABLED = 1 << 20;
+    public static final int FLAG_DIALPAD_ENABLED = 1 << 21;
+    public static final int FLAG_DIALPAD_VISIBLE = 1 << 22;
+
+    private static final int EVENT_PRECISE_CALL_STATE_CHANGED = 1;
+    private static final int EVENT_DISCONNECT = 2;
+    private static final int EVENT_NEW_RINGING_CONNECTION = 3;
+
+    // Generations of the inputs of the call and audio flags; bumped every
+    // time one of them changes.
+    private static volatile int sCallStateGeneration;
+    private static volatile int sAudioStateGeneration;
+
+    // Shared call flags, and the sCallStateGeneration they were computed at.
+    // Guarded by InCallControlState.class.
+    private static int sCallFlags;
+    private static int sCallFlagsGeneration = -1;
+
+    private static Handler sHandler;
+
+    private InCallScreen mInCallScreen;
+    private CallManager mCM;
+    private PhoneGlobals mApp;
+
+    // The bitset read by the UI, and the generations it was computed at.
+    private int mFlags;
+    private int mCallFlagsGeneration = -1;
+    private int mAudioFlagsGeneration = -1;
 
     public InCallControlState(InCallScreen inCallScreen, CallManager cm) {
         if (DBG) log("InCallControlState constructor...");
@@ -113,32 +148,244 @@ public class InCallControlState {
     }
 
     /**
-     * Updates all our public boolean flags based on the current state of
-     * the Phone.
+     * Starts listening for the telephony events that invalidate the call
+     * flags.  Called once at startup by PhoneGlobals, before anybody else
+     * registers for those events, so that the flags are already invalidated
+     * by the time other handlers get to see a change.
+     */
+    static synchronized void init(CallManager cm) {
+        if (sHandler != null) {
+            return;
+        }
+        sHandler = new Handler(Looper.getMainLooper()) {
+            @Override
+            public void handleMessage(Message msg) {
+                if (DBG) log("call state event " + msg.what + ", invalidating");
+                invalidateCallState();
+            }
+        };
+        cm.registerForPreciseCallStateChanged(sHandler, EVENT_PRECISE_CALL_STATE_CHANGED, null);
+        cm.registerForDisconnect(sHandler, EVENT_DISCONNECT, null);
+        cm.registerForNewRingingConnection(sHandler, EVENT_NEW_RINGING_CONNECTION, null);
+    }
+
+    /**
+     * Marks the call flags as stale.  Call this whenever an input of the call
+     * flags changes outside of the events registered for in init().
+     */
+    static void invalidateCallState() {
+        sCallStateGeneration++;
+    }
+
+    /**
+     * Marks the audio routing flags as stale: mute, speaker, wired headset
+     * or bluetooth state changed.
+     */
+    static void invalidateAudioState() {
+        sAudioStateGeneration++;
+    }
+
+    /**
+     * Returns the flags that only depend on the telephony state, recomputing
+     * them if anything changed since the last call.  Must be called from the
+     * main thread, where the flags are invalidated and their inputs change.
+     */
+    private static synchronized int getCallFlags() {
+        int generation = sCallStateGeneration;
+        if (sCallFlagsGeneration != generation) {
+            sCallFlags = computeCallFlags(PhoneGlobals.getInstance().mCM);
+            sCallFlagsGeneration = generation;
+        }
+        return sCallFlags;
+    }
+
+    /**
+     * Brings our flags up to date with the current state of the Phone.
+     * Only the parts whose inputs changed since the last call are
+     * recomputed.
      */
     public void update() {
-        final PhoneConstants.State state = mCM.getState();  // coarse-grained voice call state
-        final Call fgCall = mCM.getActiveFgCall();
+        int callGeneration = sCallStateGeneration;
+        int audioGeneration = sAudioStateGeneration;
+        int flags = mFlags;
+
+        if (mCallFlagsGeneration != callGeneration) {
+            flags = (flags & ~callFlagsMask()) | getCallFlags();
+            mCallFlagsGeneration = callGeneration;
+        }
+
+        if (mAudioFlagsGeneration != audioGeneration) {
+            flags = (flags & ~(FLAG_BLUETOOTH_ENABLED | FLAG_BLUETOOTH_INDICATOR_ON
+                    | FLAG_SPEAKER_ON | FLAG_MUTE_INDICATOR_ON)) | computeAudioFlags();
+            // A pending bluetooth connection times out without any event, so
+            // keep re-reading the audio state until it's resolved.
+            mAudioFlagsGeneration = mInCallScreen.isBluetoothConnectionPending()
+                    ? -1 : audioGeneration;
+        }
+
+        // VT upgrade downgrade: off by default unless ImsService says
+        // supported.  The ImsService doesn't tell us when that changes, so
+        // it's asked every time.
+        flags = setFlag(flags, FLAG_MODIFY_CALL_VISIBLE | FLAG_MODIFY_CALL_ENABLED,
+                isCallModifyAllowed());
+
+        // IMS add participant: likewise up to the ImsService.
+        flags = setFlag(flags, FLAG_ADD_PARTICIPANT_VISIBLE | FLAG_ADD_PARTICIPANT_ENABLED,
+                (flags & FLAG_CAN_ADD_CALL) != 0 && PhoneUtils.shouldShowAddParticipant());
+
+        // Manage conference: enabled unless the "Manage conference" UI is
+        // already up.
+        flags = setFlag(flags, FLAG_MANAGE_CONFERENCE_ENABLED,
+                (flags & FLAG_MANAGE_CONFERENCE_VISIBLE) != 0
+                && !mInCallScreen.isManageConferenceMode());
+
+        // "Dialpad": Enabled only when it's OK to use the dialpad in the
+        // first place.
+        flags = setFlag(flags, FLAG_DIALPAD_ENABLED, mInCallScreen.okToShowDialpad());
+
+        // Also keep track of whether the dialpad is currently "opened"
+        // (i.e. visible).
+        flags = setFlag(flags, FLAG_DIALPAD_VISIBLE, mInCallScreen.isDialerOpened());
+
+        mFlags = flags;
+        if (DBG) dumpState();
+    }
+
+    /**
+     * Returns the whole bitset as of the last update().
+     */
+    public int getFlags() {
+        return mFlags;
+    }
+
+    public boolean manageConferenceVisible() {
+        return (mFlags & FLAG_MANAGE_CONFERENCE_VISIBLE) != 0;
+    }
+
+    public boolean manageConferenceEnabled() {
+        return (mFlags & FLAG_MANAGE_CONFERENCE_ENABLED) != 0;
+    }
+
+    /**
+     * Visible IMS VoLTE/VT calls and if upgrade/downgrade is supported
+     * Enabled only for IMS calls, disabled for CS calls
+     */
+    public boolean modifyCallVisible() {
+        return (mFlags & FLAG_MODIFY_CALL_VISIBLE) != 0;
+    }
+
+    public boolean modifyCallEnabled() {
+        return (mFlags & FLAG_MODIFY_CALL_ENABLED) != 0;
+    }
+
+    public boolean canAddCall() {
+        return (mFlags & FLAG_CAN_ADD_CALL) != 0;
+    }
+
+    public boolean canEndCall() {
+        return (mFlags & FLAG_CAN_END_CALL) != 0;
+    }
+
+    public boolean canBlacklistCall() {
+        return (mFlags & FLAG_CAN_BLACKLIST_CALL) != 0;
+    }
+
+    public boolean canSwap() {
+        return (mFlags & FLAG_CAN_SWAP) != 0;
+    }
+
+    public boolean canMerge() {
+        return (mFlags & FLAG_CAN_MERGE) != 0;
+    }
+
+    public boolean bluetoothEnabled() {
+        return (mFlags & FLAG_BLUETOOTH_ENABLED) != 0;
+    }
+
+    public boolean bluetoothIndicatorOn() {
+        return (mFlags & FLAG_BLUETOOTH_INDICATOR_ON) != 0;
+    }
+
+    public boolean speakerEnabled() {
+        return (mFlags & FLAG_SPEAKER_ENABLED) != 0;
+    }
+
+    public boolean speakerOn() {
+        return (mFlags & FLAG_SPEAKER_ON) != 0;
+    }
+
+    public boolean canMute() {
+        return (mFlags & FLAG_CAN_MUTE) != 0;
+    }
+
+    public boolean muteIndicatorOn() {
+        // The mute indicator is never shown when muting isn't allowed.
+        return (mFlags & (FLAG_CAN_MUTE | FLAG_MUTE_INDICATOR_ON))
+                == (FLAG_CAN_MUTE | FLAG_MUTE_INDICATOR_ON);
+    }
+
+    public boolean dialpadEnabled() {
+        return (mFlags & FLAG_DIALPAD_ENABLED) != 0;
+    }
+
+    public boolean dialpadVisible() {
+        return (mFlags & FLAG_DIALPAD_VISIBLE) != 0;
+    }
+
+    public boolean supportsHold() {
+        return (mFlags & FLAG_SUPPORTS_HOLD) != 0;
+    }
+
+    public boolean onHold() {
+        return (mFlags & FLAG_ON_HOLD) != 0;
+    }
+
+    public boolean canHold() {
+        return (mFlags & FLAG_CAN_HOLD) != 0;
+    }
+
+    public boolean addParticipantVisible() {
+        return (mFlags & FLAG_ADD_PARTICIPANT_VISIBLE) != 0;
+    }
+
+    public boolean addParticipantEnabled() {
+        return (mFlags & FLAG_ADD_PARTICIPANT_ENABLED) != 0;
+    }
+
+    public boolean canSwitchSubscription() {
+        return (mFlags & FLAG_CAN_SWITCH_SUBSCRIPTION) != 0;
+    }
+
+    private static int callFlagsMask() {
+        return (FLAG_LAST_CALL_FLAG << 1) - 1;
+    }
+
+    private static int setFlag(int flags, int flag, boolean value) {
+        return value ? (flags | flag) : (flags & ~flag);
+    }
+
+    /**
+     * Computes the flags that only depend on the telephony state.
+     */
+    private static int computeCallFlags(CallManager cm) {
+        final PhoneConstants.State state = cm.getState();  // coarse-grained voice call state
+        final Call fgCall = cm.getActiveFgCall();
         final Call.State fgCallState = fgCall.getState();
         final boolean hasActiveForegroundCall = (fgCallState == Call.State.ACTIVE);
-        final boolean hasHoldingCall = mCM.hasActiveBgCall();
+        final boolean hasHoldingCall = cm.hasActiveBgCall();
+        int flags = 0;
 
         // Manage conference:
+        // This item is visible only if the foreground call is a
+        // conference call.  (This device may have no concept of managing
+        // a conference call at all.)
         if (TelephonyCapabilities.supportsConferenceCallManagement(fgCall.getPhone())) {
-            // This item is visible only if the foreground call is a
-            // conference call, and it's enabled unless the "Manage
-            // conference" UI is already up.
-            manageConferenceVisible = PhoneUtils.isConferenceCall(fgCall);
-            manageConferenceEnabled =
-                    manageConferenceVisible && !mInCallScreen.isManageConferenceMode();
-        } else {
-            // This device has no concept of managing a conference call.
-            manageConferenceVisible = false;
-            manageConferenceEnabled = false;
+            flags = setFlag(flags, FLAG_MANAGE_CONFERENCE_VISIBLE,
+                    PhoneUtils.isConferenceCall(fgCall));
         }
 
         // "Add call":
-        canAddCall = PhoneUtils.okToAddCall(mCM);
+        flags = setFlag(flags, FLAG_CAN_ADD_CALL, PhoneUtils.okToAddCall(cm));
 
         // "End call": always enabled unless the phone is totally idle.
         // Note that while the phone is ringing, the InCallTouchUi widget isn't
@@ -146,25 +393,15 @@ public class InCallControlState {
         // we *do* still set canEndCall to true in this case, purely to prevent a
         // UI glitch when the InCallTouchUi widget first appears, immediately after
         // answering an incoming call.
-        canEndCall = (mCM.hasActiveFgCall() || mCM.hasActiveRingingCall() || mCM.hasActiveBgCall());
+        flags = setFlag(flags, FLAG_CAN_END_CALL,
+                cm.hasActiveFgCall() || cm.hasActiveRingingCall() || cm.hasActiveBgCall());
 
         // Swap / merge calls
-        canSwap = PhoneUtils.okToSwapCalls(mCM);
-        canMerge = PhoneUtils.okToMergeCalls(mCM);
-
-        // "Bluetooth":
-        if (mInCallScreen.isBluetoothAvailable()) {
-            bluetoothEnabled = true;
-            bluetoothIndicatorOn = mInCallScreen.isBluetoothAudioConnectedOrPending();
-        } else {
-            bluetoothEnabled = false;
-            bluetoothIndicatorOn = false;
-        }
+        flags = setFlag(flags, FLAG_CAN_SWAP, PhoneUtils.okToSwapCalls(cm));
+        flags = setFlag(flags, FLAG_CAN_MERGE, PhoneUtils.okToMergeCalls(cm));
 
         // "Speaker": always enabled unless the phone is totally idle.
-        // The current speaker state comes from the AudioManager.
-        speakerEnabled = (state != PhoneConstants.State.IDLE);
-        speakerOn = PhoneUtils.isSpeakerOn(mInCallScreen);
+        flags = setFlag(flags, FLAG_SPEAKER_ENABLED, state != PhoneConstants.State.IDLE);
 
         // "Mute": only enabled when the foreground call is ACTIVE.
         // (It's meaningless while on hold, or while DIALING/ALERTING.)
@@ -173,117 +410,116 @@ public class InCallControlState {
         Connection c = fgCall.getLatestConnection();
         boolean isEmergencyCall = false;
         if (c != null) isEmergencyCall =
-                PhoneNumberUtils.isLocalEmergencyNumber(c.getAddress(),
-                                                        fgCall.getPhone().getContext());
+                EmergencyNumberMatcher.getInstance().isEmergencyNumber(c.getAddress());
         boolean isECM = PhoneUtils.isPhoneInEcm(fgCall.getPhone());
-        if (isEmergencyCall || isECM) {  // disable "Mute" item
-            canMute = false;
-            muteIndicatorOn = false;
-        } else {
-            canMute = hasActiveForegroundCall;
-            muteIndicatorOn = PhoneUtils.getMute();
-        }
+        flags = setFlag(flags, FLAG_CAN_MUTE,
+                !isEmergencyCall && !isECM && hasActiveForegroundCall);
 
         // Blacklisting: Enabled only for incoming calls with a number
-        if (hasActiveForegroundCall && c != null) {
-            canBlacklistCall = c.isIncoming() && !TextUtils.isEmpty(c.getAddress());
-        } else {
-            canBlacklistCall = false;
-        }
-
-        // "Dialpad": Enabled only when it's OK to use the dialpad in the
-        // first place.
-        dialpadEnabled = mInCallScreen.okToShowDialpad();
-
-        // Also keep track of whether the dialpad is currently "opened"
-        // (i.e. visible).
-        dialpadVisible = mInCallScreen.isDialerOpened();
+        flags = setFlag(flags, FLAG_CAN_BLACKLIST_CALL, hasActiveForegroundCall && c != null
+                && c.isIncoming() && !TextUtils.isEmpty(c.getAddress()));
 
         // "Hold:
-        if (TelephonyCapabilities.supportsHoldAndUnhold(mCM.getPhoneInCall())) {
+        if (TelephonyCapabilities.supportsHoldAndUnhold(cm.getPhoneInCall())) {
             // This phone has the concept of explicit "Hold" and "Unhold" actions.
-            supportsHold = true;
+            flags |= FLAG_SUPPORTS_HOLD;
             // "On hold" means that there's a holding call and
             // *no* foreground call.  (If there *is* a foreground call,
             // that's "two lines in use".)
-            onHold = hasHoldingCall && (fgCallState == Call.State.IDLE);
+            boolean onHold = hasHoldingCall && (fgCallState == Call.State.IDLE);
+            flags = setFlag(flags, FLAG_ON_HOLD, onHold);
             // The "Hold" control is disabled entirely if there's
             // no way to either hold or unhold in the current state.
             boolean okToHold = hasActiveForegroundCall && !hasHoldingCall;
             boolean okToUnhold = onHold;
-            canHold = okToHold || okToUnhold;
+            flags = setFlag(flags, FLAG_CAN_HOLD, okToHold || okToUnhold);
         } else if (hasHoldingCall && (fgCallState == Call.State.IDLE)) {
             // Even when foreground phone device doesn't support hold/unhold, phone devices
             // for background holding calls may do.
             //
             // If the foreground call is ACTIVE,  we should turn on "swap" button instead.
-            final Call bgCall = mCM.getFirstActiveBgCall();
+            final Call bgCall = cm.getFirstActiveBgCall();
             if (bgCall != null &&
                     TelephonyCapabilities.supportsHoldAndUnhold(bgCall.getPhone())) {
-                supportsHold = true;
-                onHold = true;
-                canHold = true;
+                flags |= FLAG_SUPPORTS_HOLD | FLAG_ON_HOLD | FLAG_CAN_HOLD;
             }
-        } else {
-            // This device has no concept of "putting a call on hold."
-            supportsHold = false;
-            onHold = false;
-            canHold = false;
         }
+        // (Otherwise this device has no concept of "putting a call on hold.")
 
-        // Turn off call modify by default unless ImsService says supported
-        modifyCallVisible = false;
-        modifyCallEnabled = false;
-
-        // VT upgrade downgrade
-        if (TelephonyCapabilities.supportsCallModify(fgCall.getPhone())) {
-            try {
-                if ((mApp.mImsService != null) && (mApp.mImsService.isVTModifyAllowed())) {
-                    modifyCallVisible = true;
-                    modifyCallEnabled = true;
+        // Switching subscriptions only makes sense with calls on more than one.
+        int phoneCount = MSimTelephonyManager.getDefault().getPhoneCount();
+        if (phoneCount > 1) {
+            int activePhoneCount = 0;
+            for (int i = 0; i < phoneCount; i++) {
+                if (cm.getState(i) != PhoneConstants.State.IDLE) {
+                    activePhoneCount++;
                 }
-            } catch (RemoteException ex) {
-                Log.d(LOG_TAG, "Ims Service isVTModifyAllowed exception", ex);
             }
+            flags = setFlag(flags, FLAG_CAN_SWITCH_SUBSCRIPTION, activePhoneCount > 1);
         }
 
-        // IMS add participant
-        if (PhoneUtils.shouldShowAddParticipant() && canAddCall) {
-            addParticipantVisible = true;
-            addParticipantEnabled = true;
-        } else {
-            addParticipantVisible = false;
-            addParticipantEnabled = false;
+        return flags;
+    }
+
+    private boolean isCallModifyAllowed() {
+        if (!TelephonyCapabilities.supportsCallModify(mCM.getActiveFgCall().getPhone())) {
+            return false;
         }
+        try {
+            return (mApp.mImsService != null) && mApp.mImsService.isVTModifyAllowed();
+        } catch (RemoteException ex) {
+            Log.d(LOG_TAG, "Ims Service isVTModifyAllowed exception", ex);
+            return false;
+        }
+    }
 
-        if (DBG) dumpState();
+    /**
+     * Computes the audio routing flags.
+     */
+    private int computeAudioFlags() {
+        int flags = 0;
+
+        // "Bluetooth":
+        if (mInCallScreen.isBluetoothAvailable()) {
+            flags |= FLAG_BLUETOOTH_ENABLED;
+            flags = setFlag(flags, FLAG_BLUETOOTH_INDICATOR_ON,
+                    mInCallScreen.isBluetoothAudioConnectedOrPending());
+        }
+
+        // The current speaker state comes from the AudioManager.
+        flags = setFlag(flags, FLAG_SPEAKER_ON, PhoneUtils.isSpeakerOn(mInCallScreen));
+
+        flags = setFlag(flags, FLAG_MUTE_INDICATOR_ON, PhoneUtils.getMute());
+
+        return flags;
     }
 
     public void dumpState() {
         log("InCallControlState:");
-        log("  manageConferenceVisible: " + manageConferenceVisible);
-        log("  manageConferenceEnabled: " + manageConferenceEnabled);
-        log("  modifyCallVisible: " + modifyCallVisible);
-        log("  modifyCallEnabled: " + modifyCallEnabled);
-        log("  canAddCall: " + canAddCall);
-        log("  canEndCall: " + canEndCall);
-        log("  canSwap: " + canSwap);
-        log("  canMerge: " + canMerge);
-        log("  bluetoothEnabled: " + bluetoothEnabled);
-        log("  bluetoothIndicatorOn: " + bluetoothIndicatorOn);
-        log("  speakerEnabled: " + speakerEnabled);
-        log("  speakerOn: " + speakerOn);
-        log("  canMute: " + canMute);
-        log("  muteIndicatorOn: " + muteIndicatorOn);
-        log("  dialpadEnabled: " + dialpadEnabled);
-        log("  dialpadVisible: " + dialpadVisible);
-        log("  onHold: " + onHold);
-        log("  canHold: " + canHold);
-        log("  addParticipantVisible: " + addParticipantVisible);
-        log("  addParticipantEnabled: " + addParticipantEnabled);
-    }
-
-    private void log(String msg) {
+        log("  manageConferenceVisible: " + manageConferenceVisible());
+        log("  manageConferenceEnabled: " + manageConferenceEnabled());
+        log("  modifyCallVisible: " + modifyCallVisible());
+        log("  modifyCallEnabled: " + modifyCallEnabled());
+        log("  canAddCall: " + canAddCall());
+        log("  canEndCall: " + canEndCall());
+        log("  canSwap: " + canSwap());
+        log("  canMerge: " + canMerge());
+        log("  bluetoothEnabled: " + bluetoothEnabled());
+        log("  bluetoothIndicatorOn: " + bluetoothIndicatorOn());
+        log("  speakerEnabled: " + speakerEnabled());
+        log("  speakerOn: " + speakerOn());
+        log("  canMute: " + canMute());
+        log("  muteIndicatorOn: " + muteIndicatorOn());
+        log("  dialpadEnabled: " + dialpadEnabled());
+        log("  dialpadVisible: " + dialpadVisible());
+        log("  onHold: " + onHold());
+        log("  canHold: " + canHold());
+        log("  addParticipantVisible: " + addParticipantVisible());
+        log("  addParticipantEnabled: " + addParticipantEnabled());
+        log("  canSwitchSubscription: " + canSwitchSubscription());
+    }
+
+    private static void log(String msg) {
         Log.d(LOG_TAG, msg);
     }
 }
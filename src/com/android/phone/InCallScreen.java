@@ -50,12 +50,12 @@ import android.os.PowerManager;
 import android.os.RemoteException;
 import android.os.SystemClock;
 import android.os.SystemProperties;
-import android.telephony.MSimTelephonyManager;
 import android.telephony.ServiceState;
 import android.text.TextUtils;
 import android.text.method.DialerKeyListener;
 import android.util.EventLog;
 import android.util.Log;
+import android.view.Choreographer;
 import android.view.KeyEvent;
 import android.view.View;
 import android.view.ViewGroup;
@@ -294,6 +294,23 @@ public class InCallScreen extends Activity
     private boolean Enable_Landscape_In_Call = false;
     protected PowerManager mPowerManager;
 
+    // Snapshot of the state the onscreen widgets were last bound from, used by
+    // updateScreen() to skip the sections whose inputs haven't changed.  Null
+    // means everything has to be rebound.
+    private InCallViewModel mBoundViewModel;
+    private final InCallViewModel.Stats mUpdateStats = new InCallViewModel.Stats();
+
+    // True while an updateScreen() is scheduled for the next frame.
+    private boolean mUpdateScreenPending;
+    private final Choreographer.FrameCallback mUpdateScreenCallback =
+            new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            mUpdateScreenPending = false;
+            updateScreen();
+        }
+    };
+
     // For use with Pause/Wait dialogs
     private String mPostDialStrAfterPause;
     private boolean mPauseInProgress = false;
@@ -336,6 +353,8 @@ public class InCallScreen extends Activity
 
             switch (msg.what) {
                 case SUPP_SERVICE_FAILED:
+                    CallEventJournal.getInstance().recordSuppServiceFailed(
+                            ((Phone.SuppService) ((AsyncResult) msg.obj).result).ordinal());
                     onSuppServiceFailed((AsyncResult) msg.obj);
                     break;
 
@@ -348,15 +367,16 @@ public class InCallScreen extends Activity
                     break;
 
                 case EVENT_HEADSET_PLUG_STATE_CHANGED:
+                    InCallControlState.invalidateAudioState();
                     // Update the in-call UI, since some UI elements (such
                     // as the "Speaker" button) may change state depending on
                     // whether a headset is plugged in.
                     // TODO: A full updateScreen() is overkill here, since
                     // the value of PhoneApp.isHeadsetPlugged() only affects a
                     // single onscreen UI element.  (But even a full updateScreen()
-                    // is still pretty cheap, so let's keep this simple
-                    // for now.)
-                    updateScreen();
+                    // is still pretty cheap, and only the InCallTouchUi
+                    // gets rebound, so let's keep this simple for now.)
+                    requestUpdateScreen();
 
                     // Also, force the "audio mode" popup to refresh itself if
                     // it's visible, since one of its items is either "Wired
@@ -402,12 +422,13 @@ public class InCallScreen extends Activity
 
                 case REQUEST_UPDATE_BLUETOOTH_INDICATION:
                     if (VDBG) log("REQUEST_UPDATE_BLUETOOTH_INDICATION...");
+                    InCallControlState.invalidateAudioState();
                     // The bluetooth headset state changed, so some UI
                     // elements may need to update.  (There's no need to
                     // look up the current state here, since any UI
                     // elements that care about the bluetooth state get it
                     // directly from PhoneApp.showBluetoothIndication().)
-                    updateScreen();
+                    requestUpdateScreen();
                     break;
 
                 case PHONE_CDMA_CALL_WAITING:
@@ -450,7 +471,12 @@ public class InCallScreen extends Activity
                     }
                     break;
                 case REQUEST_UPDATE_SCREEN:
-                    updateScreen();
+                    // Coalesce all the requests made until the next frame
+                    // into a single updateScreen().
+                    if (!mUpdateScreenPending) {
+                        mUpdateScreenPending = true;
+                        Choreographer.getInstance().postFrameCallback(mUpdateScreenCallback);
+                    }
                     break;
 
                 case PHONE_INCOMING_RING:
@@ -590,18 +616,22 @@ public class InCallScreen extends Activity
 
         requestWindowFeature(Window.FEATURE_NO_TITLE);
 
-        // Inflate everything in incall_screen.xml and add it to the screen.
-        if (MSimTelephonyManager.getDefault().isMultiSimEnabled()) {
-            setContentView(R.layout.incall_screen_multisim);
+        // Inflate everything in incall_screen.xml and add it to the screen, unless
+        // the InCallViewCache has already done so while the phone was idle.
+        final int layoutId = InCallViewCache.getLayoutId();
+        final int touchUiStubId = InCallViewCache.getTouchUiStubId(mPhone.getPhoneType());
+        final View preparedView = (mApp.inCallViewCache != null)
+                ? mApp.inCallViewCache.take(this, layoutId, touchUiStubId) : null;
+        final boolean warmStart = (preparedView != null);
+        if (warmStart) {
+            setContentView(preparedView);
         } else {
-            setContentView(R.layout.incall_screen);
+            setContentView(layoutId);
         }
 
         // If in landscape, then one of the ViewStubs (instead of <include>) is used for the
         // incall_touch_ui, because CDMA and GSM button layouts are noticeably different.
-        final ViewStub touchUiStub = (ViewStub) findViewById(
-                mPhone.getPhoneType() == PhoneConstants.PHONE_TYPE_CDMA
-                ? R.id.inCallTouchUiCdmaStub : R.id.inCallTouchUiStub);
+        final ViewStub touchUiStub = (ViewStub) findViewById(touchUiStubId);
         if (touchUiStub != null) touchUiStub.inflate();
 
         initInCallScreen();
@@ -621,7 +651,7 @@ public class InCallScreen extends Activity
             internalResolveIntent(getIntent());
         }
 
-        Profiler.callScreenCreated();
+        Profiler.callScreenCreated(warmStart);
 
         processDisplayMode();
 
@@ -683,6 +713,10 @@ public class InCallScreen extends Activity
         mIsForegroundActivity = true;
         mIsForegroundActivityForProximity = true;
 
+        // We may have missed any number of changes while in the background,
+        // so rebind everything on the next updateScreen().
+        mBoundViewModel = null;
+
         // The flag shouldn't be turned on when there are actual phone calls.
         if (mCM.hasActiveFgCall() || mCM.hasActiveBgCall() || mCM.hasActiveRingingCall()) {
             mApp.inCallUiState.showAlreadyDisconnectedState = false;
@@ -913,6 +947,16 @@ public class InCallScreen extends Activity
             mIsForegroundActivityForProximity = false;
         }
         mIsForegroundActivity = false;
+        mBoundViewModel = null;
+        if (DBG) {
+            log("updateScreen() section updates:");
+            mUpdateStats.dump();
+            log("DTMF timings:");
+            mDialer.getSequencer().dump();
+            if (mDialer.getTonePlayer() != null) {
+                mDialer.getTonePlayer().dump();
+            }
+        }
 
         // Force a clear of the provider info frame. Since the
         // frame is removed using a timed message, it is
@@ -1058,6 +1102,11 @@ public class InCallScreen extends Activity
         // messages that come in asynchronously after we get destroyed.
         mIsDestroyed = true;
 
+        if (mUpdateScreenPending) {
+            Choreographer.getInstance().removeFrameCallback(mUpdateScreenCallback);
+            mUpdateScreenPending = false;
+        }
+
         mApp.setInCallScreenInstance(null);
 
         // Clear out the InCallScreen references in various helper objects
@@ -2306,6 +2355,7 @@ public class InCallScreen extends Activity
 
             if (VDBG) log("handlePostOnDialChar: state = " +
                     state + ", ch = " + ch);
+            mDialer.onPostDialCharacter(state, ch);
 
             switch (state) {
                 case STARTED:
@@ -2518,6 +2568,10 @@ public class InCallScreen extends Activity
      *
      * Right now this method will update UI visibility immediately, with no animation.
      * TODO: have animate flag here and use it anywhere possible.
+     *
+     * The CallCard and "Manage conference" sections are only rebound if
+     * their inputs (see InCallViewModel) changed since they were last bound;
+     * the InCallTouchUi and the rest of the UI are always updated.
      */
     protected void updateScreen() {
         if (DBG) log("updateScreen()...");
@@ -2571,7 +2625,17 @@ public class InCallScreen extends Activity
         } else if (inCallScreenMode == InCallScreenMode.MANAGE_CONFERENCE) {
             if (DBG) log("- updateScreen: manage conference mode (NOT updating in-call UI)...");
             mCallCard.setVisibility(View.GONE);
-            updateManageConferencePanelIfNecessary();
+            final InCallViewModel viewModel = InCallViewModel.create(mCM);
+            final InCallViewModel previous = mBoundViewModel;
+            // Rebind the in-call UI once we're back from the panel.
+            mBoundViewModel = null;
+            if (isSectionChanged(InCallViewModel.SECTION_MANAGE_CONFERENCE, previous, viewModel)) {
+                updateManageConferencePanelIfNecessary();
+            }
+            // Only remember the panel's inputs if we're still showing it.
+            if (isManageConferenceMode()) {
+                mBoundViewModel = viewModel;
+            }
             return;  // Return without updating in-call UI.
         } else if (inCallScreenMode == InCallScreenMode.CALL_ENDED) {
             if (DBG) log("- updateScreen: call ended state...");
@@ -2581,11 +2645,19 @@ public class InCallScreen extends Activity
         }
 
         if (DBG) log("- updateScreen: updating the in-call UI...");
+        final InCallViewModel viewModel = InCallViewModel.create(mCM);
+        final InCallViewModel previous = mBoundViewModel;
+        mBoundViewModel = viewModel;
+
         // Note we update the InCallTouchUi widget before the CallCard,
         // since the CallCard adjusts its size based on how much vertical
         // space the InCallTouchUi widget needs.
-        updateInCallTouchUi();
-        mCallCard.updateState(mCM);
+        if (isSectionChanged(InCallViewModel.SECTION_TOUCH_UI, previous, viewModel)) {
+            updateInCallTouchUi();
+        }
+        if (isSectionChanged(InCallViewModel.SECTION_CALL_CARD, previous, viewModel)) {
+            mCallCard.updateState(mCM);
+        }
 
         // If an incoming call is ringing, make sure the dialpad is
         // closed.  (We do this to make sure we're not covering up the
@@ -2662,6 +2734,18 @@ public class InCallScreen extends Activity
         }
     }
 
+    private boolean isSectionChanged(int section, InCallViewModel previous,
+            InCallViewModel current) {
+        boolean changed = InCallViewModel.isChanged(section, previous, current);
+        mUpdateStats.record(section, changed);
+        if (VDBG && !changed) log("- updateScreen: section " + section + " unchanged, skipping");
+        return changed;
+    }
+
+    /* package */ InCallViewModel.Stats getUpdateScreenStats() {
+        return mUpdateStats;
+    }
+
     /**
      * (Re)synchronizes the onscreen UI with the current state of the
      * telephony framework.
@@ -2959,7 +3043,7 @@ public class InCallScreen extends Activity
                 break;
 
             case R.id.dim_effect_for_secondary_photo:
-                if (mInCallControlState.canSwap) {
+                if (mInCallControlState.canSwap()) {
                     internalSwapCalls();
                 }
                 break;
@@ -4125,12 +4209,10 @@ public class InCallScreen extends Activity
             return;
         }
 
-        // TODO: the test to see if numConnections has changed can go in
-        // updateManageConferencePanel(), rather than here.
-        if (numConnections != mManageConferenceUtils.getNumCallersInConference()) {
-            if (VDBG) log("==> Conference size has changed; need to rebuild UI!");
-            mManageConferenceUtils.updateManageConferencePanel(connections);
-        }
+        // updateManageConferencePanel() only touches the rows of the
+        // participants that joined or left (or changed places), so there's
+        // no need to check for changes here.
+        mManageConferenceUtils.updateManageConferencePanel(connections);
     }
 
     /**
@@ -4266,7 +4348,7 @@ public class InCallScreen extends Activity
      * @return true if the in-call DTMF dialpad should be available to the
      *      user, given the current state of the phone and the in-call UI.
      *      (This is used to control the enabledness of the "Show
-     *      dialpad" onscreen button; see InCallControlState.dialpadEnabled.)
+     *      dialpad" onscreen button; see InCallControlState.dialpadEnabled().)
      */
     /* package */ boolean okToShowDialpad() {
         // Very similar to okToDialDTMFTones(), but allow DIALING here.
@@ -4318,6 +4400,9 @@ public class InCallScreen extends Activity
      * updateScreen() is a no-op if the InCallScreen is not the foreground
      * activity, so it's safe to call this whether or not the InCallScreen
      * is currently visible.
+     *
+     * Requests made before the next frame is drawn all end up in a single
+     * updateScreen() call.
      */
     /* package */ void requestUpdateScreen() {
         if (DBG) log("requestUpdateScreen()...");
@@ -4528,7 +4613,7 @@ public class InCallScreen extends Activity
 
     /**
      * Helper method used to control the onscreen "Bluetooth" indication;
-     * see InCallControlState.bluetoothIndicatorOn.
+     * see InCallControlState.bluetoothIndicatorOn().
      *
      * @return true if a BT device is available and its audio is currently connected,
      *              <b>or</b> if we issued a BluetoothHeadset.connectAudio()
@@ -4619,6 +4704,7 @@ public class InCallScreen extends Activity
         // instantly. (See isBluetoothAudioConnectedOrPending() above.)
         mBluetoothConnectionPending = true;
         mBluetoothConnectionRequestTime = SystemClock.elapsedRealtime();
+        InCallControlState.invalidateAudioState();
     }
 
     /* package */ void disconnectBluetoothAudio() {
@@ -4627,6 +4713,14 @@ public class InCallScreen extends Activity
             mBluetoothHeadset.disconnectAudio();
         }
         mBluetoothConnectionPending = false;
+        InCallControlState.invalidateAudioState();
+    }
+
+    /**
+     * @return true if we asked for bluetooth audio and it isn't connected yet.
+     */
+    /* package */ boolean isBluetoothConnectionPending() {
+        return mBluetoothConnectionPending;
     }
 
     /**
@@ -4864,7 +4958,7 @@ public class InCallScreen extends Activity
      */
     /* package */ void updateButtonStateOutsideInCallTouchUi() {
         if (mCallCard != null) {
-            mCallCard.setSecondaryCallClickable(mInCallControlState.canSwap);
+            mCallCard.setSecondaryCallClickable(mInCallControlState.canSwap());
         }
     }
 
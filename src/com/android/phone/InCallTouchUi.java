@@ -538,11 +538,11 @@ public class InCallTouchUi extends FrameLayout
         // These two buttons occupy the same space onscreen, so at any
         // given point exactly one of them must be VISIBLE and the other
         // must be GONE.
-        if (inCallControlState.canAddCall) {
+        if (inCallControlState.canAddCall()) {
             mAddButton.setVisibility(View.VISIBLE);
             mAddButton.setEnabled(true);
             mMergeButton.setVisibility(View.GONE);
-        } else if (inCallControlState.canMerge) {
+        } else if (inCallControlState.canMerge()) {
             if (phoneType == PhoneConstants.PHONE_TYPE_CDMA) {
                 // In CDMA "Add" option is always given to the user and the
                 // "Merge" option is provided as a button on the top left corner of the screen,
@@ -569,7 +569,7 @@ public class InCallTouchUi extends FrameLayout
             mAddButton.setEnabled(false);
             mMergeButton.setVisibility(View.GONE);
         }
-        if (inCallControlState.canAddCall && inCallControlState.canMerge) {
+        if (inCallControlState.canAddCall() && inCallControlState.canMerge()) {
             if ((phoneType == PhoneConstants.PHONE_TYPE_GSM)
                     || (phoneType == PhoneConstants.PHONE_TYPE_SIP)
                     || (phoneType == PhoneConstants.PHONE_TYPE_IMS)) {
@@ -590,29 +590,29 @@ public class InCallTouchUi extends FrameLayout
         }
 
         // "End call"
-        mEndButton.setEnabled(inCallControlState.canEndCall);
+        mEndButton.setEnabled(inCallControlState.canEndCall());
 
-        if (inCallControlState.modifyCallVisible) {
+        if (inCallControlState.modifyCallVisible()) {
             mModifyCallButton.setVisibility(View.VISIBLE);
-            mModifyCallButton.setEnabled(inCallControlState.modifyCallEnabled);
+            mModifyCallButton.setEnabled(inCallControlState.modifyCallEnabled());
         } else {
             mModifyCallButton.setVisibility(View.GONE);
         }
 
         // "Add Participant"
-        if (inCallControlState.addParticipantVisible) {
+        if (inCallControlState.addParticipantVisible()) {
             mAddParticipant.setVisibility(View.VISIBLE);
-            mAddParticipant.setEnabled(inCallControlState.addParticipantEnabled);
+            mAddParticipant.setEnabled(inCallControlState.addParticipantEnabled());
         }
 
         // "Dialpad": Enabled only when it's OK to use the dialpad in the
         // first place.
-        mDialpadButton.setEnabled(inCallControlState.dialpadEnabled);
-        mDialpadButton.setChecked(inCallControlState.dialpadVisible);
+        mDialpadButton.setEnabled(inCallControlState.dialpadEnabled());
+        mDialpadButton.setChecked(inCallControlState.dialpadVisible());
 
         // "Mute"
-        mMuteButton.setEnabled(inCallControlState.canMute);
-        mMuteButton.setChecked(inCallControlState.muteIndicatorOn);
+        mMuteButton.setEnabled(inCallControlState.canMute());
+        mMuteButton.setChecked(inCallControlState.muteIndicatorOn());
 
         // "Audio"
         updateAudioButton(inCallControlState);
@@ -620,7 +620,7 @@ public class InCallTouchUi extends FrameLayout
         // "Add to black list"
         if (mAddBlacklistButton != null) {
             boolean visible = PhoneUtils.PhoneSettings.isBlacklistEnabled(getContext()) &&
-                    inCallControlState.canBlacklistCall;
+                    inCallControlState.canBlacklistCall();
             mAddBlacklistButton.setVisibility(visible ? View.VISIBLE : View.GONE);
             mBlacklistSpacer.setVisibility(visible ? View.VISIBLE : View.GONE);
         }
@@ -629,13 +629,13 @@ public class InCallTouchUi extends FrameLayout
         // These two buttons occupy the same space onscreen, so at any
         // given point exactly one of them must be VISIBLE and the other
         // must be GONE.
-        if (inCallControlState.canHold) {
+        if (inCallControlState.canHold()) {
             mHoldButton.setVisibility(View.VISIBLE);
             mHoldButton.setEnabled(true);
-            mHoldButton.setChecked(inCallControlState.onHold);
+            mHoldButton.setChecked(inCallControlState.onHold());
             mSwapButton.setVisibility(View.GONE);
             mHoldSwapSpacer.setVisibility(View.VISIBLE);
-        } else if (inCallControlState.canSwap) {
+        } else if (inCallControlState.canSwap()) {
             mSwapButton.setVisibility(View.VISIBLE);
             mSwapButton.setEnabled(true);
             mHoldButton.setVisibility(View.GONE);
@@ -651,7 +651,7 @@ public class InCallTouchUi extends FrameLayout
             // (2), remove the button entirely.  (This means that the button row
             // will only have 4 buttons on some devices.)
 
-            if (inCallControlState.supportsHold) {
+            if (inCallControlState.supportsHold()) {
                 mHoldButton.setVisibility(View.VISIBLE);
                 mHoldButton.setEnabled(false);
                 mHoldButton.setChecked(false);
@@ -664,7 +664,7 @@ public class InCallTouchUi extends FrameLayout
             }
         }
         mInCallScreen.updateButtonStateOutsideInCallTouchUi();
-        if (inCallControlState.canSwap && inCallControlState.canHold) {
+        if (inCallControlState.canSwap() && inCallControlState.canHold()) {
             // Uh oh, the InCallControlState thinks that Swap *and* Hold
             // should both be available.  This *should* never happen with
             // either GSM or CDMA, but if it's possible on any future
@@ -674,7 +674,7 @@ public class InCallTouchUi extends FrameLayout
         }
 
         if (phoneType == PhoneConstants.PHONE_TYPE_CDMA) {
-            if (inCallControlState.canSwap && inCallControlState.canMerge) {
+            if (inCallControlState.canSwap() && inCallControlState.canMerge()) {
                 // Uh oh, the InCallControlState thinks that Swap *and* Merge
                 // should both be available.  This *should* never happen with
                 // CDMA, but if it's possible on any future
@@ -697,10 +697,10 @@ public class InCallTouchUi extends FrameLayout
         // Note that mExtraButtonRow is ViewStub, which will be inflated for the first time when
         // any of its buttons becomes visible.
         final boolean showCdmaMerge =
-                (phoneType == PhoneConstants.PHONE_TYPE_CDMA) && inCallControlState.canMerge;
+                (phoneType == PhoneConstants.PHONE_TYPE_CDMA) && inCallControlState.canMerge();
         final boolean showExtraButtonRow =
-                showCdmaMerge || inCallControlState.manageConferenceVisible;
-        if (showExtraButtonRow && !inCallControlState.dialpadVisible) {
+                showCdmaMerge || inCallControlState.manageConferenceVisible();
+        if (showExtraButtonRow && !inCallControlState.dialpadVisible()) {
             // This will require the ViewStub inflate itself.
             mExtraButtonRow.setVisibility(View.VISIBLE);
 
@@ -710,9 +710,10 @@ public class InCallTouchUi extends FrameLayout
                 setupExtraButtons();
             }
             mCdmaMergeButton.setVisibility(showCdmaMerge ? View.VISIBLE : View.GONE);
-            if (inCallControlState.manageConferenceVisible) {
+            if (inCallControlState.manageConferenceVisible()) {
                 mManageConferenceButton.setVisibility(View.VISIBLE);
-                mManageConferenceButtonImage.setEnabled(inCallControlState.manageConferenceEnabled);
+                mManageConferenceButtonImage.setEnabled(
+                        inCallControlState.manageConferenceEnabled());
             } else {
                 mManageConferenceButton.setVisibility(View.GONE);
             }
@@ -810,7 +811,7 @@ public class InCallTouchUi extends FrameLayout
         boolean showHandsetIcon = false;
         boolean showBluetoothIcon = false;
 
-        if (inCallControlState.bluetoothEnabled) {
+        if (inCallControlState.bluetoothEnabled()) {
             if (DBG) log("- updateAudioButton: 'popup menu action button' mode...");
 
             mAudioButton.setEnabled(true);
@@ -821,9 +822,9 @@ public class InCallTouchUi extends FrameLayout
 
             // Update desired layers:
             showMoreIndicator = true;
-            if (inCallControlState.bluetoothIndicatorOn) {
+            if (inCallControlState.bluetoothIndicatorOn()) {
                 showBluetoothIcon = true;
-            } else if (inCallControlState.speakerOn) {
+            } else if (inCallControlState.speakerOn()) {
                 showSpeakerOnIcon = true;
             } else {
                 showHandsetIcon = true;
@@ -832,20 +833,20 @@ public class InCallTouchUi extends FrameLayout
                 // sort of "wired headset" icon here instead of the "handset
                 // earpiece" icon.  (Still need an asset for that, though.)
             }
-        } else if (inCallControlState.speakerEnabled) {
+        } else if (inCallControlState.speakerEnabled()) {
             if (DBG) log("- updateAudioButton: 'speaker toggle' mode...");
 
             mAudioButton.setEnabled(true);
 
             // The audio button *is* a toggle in this state, and indicates the
             // current state of the speakerphone.
-            mAudioButton.setChecked(inCallControlState.speakerOn);
+            mAudioButton.setChecked(inCallControlState.speakerOn());
 
             // Update desired layers:
             showToggleStateIndication = true;
 
-            showSpeakerOnIcon = inCallControlState.speakerOn;
-            showSpeakerOffIcon = !inCallControlState.speakerOn;
+            showSpeakerOnIcon = inCallControlState.speakerOn();
+            showSpeakerOffIcon = !inCallControlState.speakerOn();
         } else {
             if (DBG) log("- updateAudioButton: disabled...");
 
@@ -896,7 +897,7 @@ public class InCallTouchUi extends FrameLayout
      */
     private void handleAudioButtonClick() {
         InCallControlState inCallControlState = mInCallScreen.getUpdatedInCallControlState();
-        if (inCallControlState.bluetoothEnabled) {
+        if (inCallControlState.bluetoothEnabled()) {
             if (DBG) log("- handleAudioButtonClick: 'popup menu' mode...");
             showAudioModePopup();
         } else {
@@ -930,9 +931,9 @@ public class InCallTouchUi extends FrameLayout
         // See comments below for the exact logic.
 
         MenuItem speakerItem = menu.findItem(R.id.audio_mode_speaker);
-        speakerItem.setEnabled(inCallControlState.speakerEnabled);
+        speakerItem.setEnabled(inCallControlState.speakerEnabled());
         // TODO: Show speakerItem as initially "selected" if
-        // inCallControlState.speakerOn is true.
+        // inCallControlState.speakerOn() is true.
 
         // We display *either* "earpiece" or "wired headset", never both,
         // depending on whether a wired headset is physically plugged in.
@@ -944,13 +945,13 @@ public class InCallTouchUi extends FrameLayout
         wiredHeadsetItem.setVisible(usingHeadset);
         wiredHeadsetItem.setEnabled(usingHeadset);
         // TODO: Show the above item (either earpieceItem or wiredHeadsetItem)
-        // as initially "selected" if inCallControlState.speakerOn and
-        // inCallControlState.bluetoothIndicatorOn are both false.
+        // as initially "selected" if inCallControlState.speakerOn() and
+        // inCallControlState.bluetoothIndicatorOn() are both false.
 
         MenuItem bluetoothItem = menu.findItem(R.id.audio_mode_bluetooth);
-        bluetoothItem.setEnabled(inCallControlState.bluetoothEnabled);
+        bluetoothItem.setEnabled(inCallControlState.bluetoothEnabled());
         // TODO: Show bluetoothItem as initially "selected" if
-        // inCallControlState.bluetoothIndicatorOn is true.
+        // inCallControlState.bluetoothIndicatorOn() is true.
 
         mAudioModePopup.show();
 
@@ -1281,7 +1282,7 @@ public class InCallTouchUi extends FrameLayout
         // "respond via SMS" option for certain types of calls, like SIP
         // addresses or numbers with blocked caller-id.)
         final boolean allowRespondViaSms =
-                RespondViaSmsManager.allowRespondViaSmsForCall(mInCallScreen, ringingCall);
+                RespondViaSmsManager.allowRespondViaSmsForCall(ringingCall);
 
         // The widget should be updated only when appropriate; if the previous choice can be reused
         // for this incoming call, we'll just keep using it. Otherwise we'll see UI glitch
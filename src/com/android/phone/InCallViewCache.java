@@ -0,0 +1,222 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.phone;
+
+import android.app.Activity;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.MutableContextWrapper;
+import android.content.res.Configuration;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.telephony.MSimTelephonyManager;
+import android.util.Log;
+import android.view.ContextThemeWrapper;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewStub;
+
+import com.android.internal.telephony.PhoneConstants;
+
+/**
+ * Keeps a pre-inflated, detached copy of the InCallScreen's view hierarchy
+ * (the CallCard, the InCallTouchUi widget and the stubs for the rest), so
+ * that an InCallScreen created for an incoming call doesn't have to inflate
+ * it while the phone is ringing.
+ *
+ * The views are inflated while the main thread is idle, a while after boot
+ * and again after the InCallScreen goes away.  They are inflated through a
+ * MutableContextWrapper with the InCallScreen theme, which is pointed at the
+ * InCallScreen when it takes them.  Views inflated for another configuration
+ * (e.g. orientation) or phone type are thrown away, and the whole thing is
+ * dropped when the system is low on memory.
+ *
+ * All methods must be called from the main thread.
+ */
+public class InCallViewCache {
+    private static final String LOG_TAG = "InCallViewCache";
+    private static final boolean DBG = (PhoneGlobals.DBG_LEVEL >= 2);
+
+    // Let boot settle before inflating for the first time.
+    private static final long BOOT_PREPARE_DELAY = 60 * 1000;
+    // Don't compete with whatever follows the end of a call.
+    private static final long PREPARE_DELAY = 10 * 1000;
+
+    private static InCallViewCache sInstance;
+
+    private final Context mContext;
+    private final Handler mHandler = new Handler();
+
+    private View mView;
+    private MutableContextWrapper mViewContext;
+    private int mLayoutId;
+    private int mTouchUiStubId;
+    private Configuration mConfiguration;
+
+    private boolean mPreparePending;
+    private boolean mInCallScreenExists;
+
+    private final Runnable mPrepareRunnable = new Runnable() {
+        @Override
+        public void run() {
+            Looper.myQueue().addIdleHandler(mIdleHandler);
+        }
+    };
+
+    private final MessageQueue.IdleHandler mIdleHandler = new MessageQueue.IdleHandler() {
+        @Override
+        public boolean queueIdle() {
+            mPreparePending = false;
+            prepare();
+            return false;
+        }
+    };
+
+    /**
+     * Initializes the singleton instance and schedules the first inflation.
+     */
+    static InCallViewCache init(Context context) {
+        synchronized (InCallViewCache.class) {
+            if (sInstance == null) {
+                sInstance = new InCallViewCache(context);
+                sInstance.schedulePrepare(BOOT_PREPARE_DELAY);
+            } else {
+                Log.wtf(LOG_TAG, "init() called multiple times!  sInstance = " + sInstance);
+            }
+            return sInstance;
+        }
+    }
+
+    private InCallViewCache(Context context) {
+        mContext = context;
+    }
+
+    /**
+     * Returns the layout the InCallScreen is built from on this device.
+     */
+    static int getLayoutId() {
+        return MSimTelephonyManager.getDefault().isMultiSimEnabled()
+                ? R.layout.incall_screen_multisim : R.layout.incall_screen;
+    }
+
+    /**
+     * Returns the ViewStub the InCallTouchUi widget is inflated from (in
+     * landscape, where the CDMA and GSM buttons use different layouts), for
+     * a phone of {@code phoneType}.
+     */
+    static int getTouchUiStubId(int phoneType) {
+        return (phoneType == PhoneConstants.PHONE_TYPE_CDMA)
+                ? R.id.inCallTouchUiCdmaStub : R.id.inCallTouchUiStub;
+    }
+
+    /**
+     * Hands the pre-inflated views over to {@code activity}, or returns null
+     * if there are none that fit, in which case the caller has to inflate
+     * its own.  The caller is responsible for inflating the touch UI stub
+     * in either case; it's already gone from the views returned here.
+     */
+    View take(Activity activity, int layoutId, int touchUiStubId) {
+        View view = mView;
+        MutableContextWrapper viewContext = mViewContext;
+        boolean fits = (view != null) && layoutId == mLayoutId && touchUiStubId == mTouchUiStubId
+                && mConfiguration.diff(activity.getResources().getConfiguration()) == 0;
+        release();
+        if (view == null) {
+            if (DBG) log("take: nothing prepared");
+            return null;
+        }
+        if (!fits) {
+            if (DBG) log("take: prepared for another configuration, dropping");
+            return null;
+        }
+        if (DBG) log("take: handing over prepared views");
+        viewContext.setBaseContext(activity);
+        return view;
+    }
+
+    /**
+     * Tells us whether an InCallScreen is around; there is no point in
+     * keeping views for a second one while it is.
+     */
+    void setInCallScreenExists(boolean exists) {
+        mInCallScreenExists = exists;
+        if (exists) {
+            cancelPrepare();
+        } else {
+            schedulePrepare(PREPARE_DELAY);
+        }
+    }
+
+    void onTrimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            if (DBG) log("onTrimMemory: level " + level + ", releasing");
+            cancelPrepare();
+            release();
+        }
+    }
+
+    private void schedulePrepare(long delay) {
+        if (mView != null || mPreparePending) {
+            return;
+        }
+        mPreparePending = true;
+        mHandler.postDelayed(mPrepareRunnable, delay);
+    }
+
+    private void cancelPrepare() {
+        if (mPreparePending) {
+            mHandler.removeCallbacks(mPrepareRunnable);
+            Looper.myQueue().removeIdleHandler(mIdleHandler);
+            mPreparePending = false;
+        }
+    }
+
+    private void prepare() {
+        if (mView != null || mInCallScreenExists || !PhoneGlobals.sVoiceCapable) {
+            return;
+        }
+        int layoutId = getLayoutId();
+        int touchUiStubId = getTouchUiStubId(PhoneGlobals.getInstance().phone.getPhoneType());
+        if (DBG) log("prepare: inflating...");
+
+        MutableContextWrapper viewContext = new MutableContextWrapper(
+                new ContextThemeWrapper(mContext, R.style.Theme_InCallScreen));
+        View view = LayoutInflater.from(viewContext).inflate(layoutId, null);
+        ViewStub touchUiStub = (ViewStub) view.findViewById(touchUiStubId);
+        if (touchUiStub != null) {
+            touchUiStub.inflate();
+        }
+
+        mView = view;
+        mViewContext = viewContext;
+        mLayoutId = layoutId;
+        mTouchUiStubId = touchUiStubId;
+        mConfiguration = new Configuration(mContext.getResources().getConfiguration());
+        if (DBG) log("prepare: done");
+    }
+
+    private void release() {
+        mView = null;
+        mViewContext = null;
+        mConfiguration = null;
+    }
+
+    private static void log(String msg) {
+        Log.d(LOG_TAG, msg);
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.phone;
+
+import android.text.TextUtils;
+import android.util.Log;
+
+import com.android.internal.telephony.Call;
+import com.android.internal.telephony.CallManager;
+import com.android.internal.telephony.CallStateException;
+import com.android.internal.telephony.Connection;
+import com.android.internal.telephony.Phone;
+import com.android.internal.telephony.PhoneConstants;
+import com.android.phone.InCallUiState.InCallScreenMode;
+
+/**
+ * Immutable snapshot of the telephony and UI state that the sections of the
+ * in-call UI are bound from.
+ *
+ * InCallScreen.updateScreen() takes a new snapshot every time it runs and
+ * compares it with the one the onscreen widgets were last bound from; a
+ * section (the CallCard, the "Manage conference" panel) is only rebound if
+ * one of its inputs differs.  The InCallTouchUi widget is always rebound:
+ * it renders from ImsService capabilities, TTY and OTA state, respond-via-SMS
+ * eligibility and how long ago the user last acted on an incoming call,
+ * none of which come with an event to notice a change by.  The snapshot only
+ * holds cheap-to-read values and object identities, so taking one is much
+ * cheaper than rebinding any of the sections.
+ */
+/* package */ final class InCallViewModel {
+    private static final String LOG_TAG = "InCallViewModel";
+
+    // Sections of the in-call UI that are rebound separately.
+    static final int SECTION_TOUCH_UI = 0;
+    static final int SECTION_CALL_CARD = 1;
+    static final int SECTION_MANAGE_CONFERENCE = 2;
+    private static final int NUM_SECTIONS = 3;
+
+    private static final String[] SECTION_NAMES = new String[] {
+        "touchUi",
+        "callCard",
+        "manageConference"
+    };
+
+    /**
+     * The part of a snapshot describing one Call.
+     */
+    private static final class CallState {
+        final Call.State state;
+        final int connectionCount;
+        final Connection latestConnection;
+        final Connection.State latestConnectionState;
+        final Object latestConnectionUserData;
+        final String address;
+        final String cnapName;
+        final int numberPresentation;
+        // Only known for IMS calls; a change means a VT upgrade or downgrade.
+        final int callType;
+
+        CallState(Call call) {
+            state = call.getState();
+            callType = getCallType(call);
+            connectionCount = call.getConnections().size();
+            latestConnection = call.getLatestConnection();
+            if (latestConnection != null) {
+                latestConnectionState = latestConnection.getState();
+                latestConnectionUserData = latestConnection.getUserData();
+                address = latestConnection.getAddress();
+                cnapName = latestConnection.getCnapName();
+                numberPresentation = latestConnection.getNumberPresentation();
+            } else {
+                latestConnectionState = null;
+                latestConnectionUserData = null;
+                address = null;
+                cnapName = null;
+                numberPresentation = 0;
+            }
+        }
+
+        private static int getCallType(Call call) {
+            Phone phone = call.getPhone();
+            if (phone == null || phone.getPhoneType() != PhoneConstants.PHONE_TYPE_IMS) {
+                return Phone.CALL_TYPE_UNKNOWN;
+            }
+            try {
+                return phone.getCallType(call);
+            } catch (CallStateException ex) {
+                return Phone.CALL_TYPE_UNKNOWN;
+            }
+        }
+
+        /** True if the call is in the same state with the same connections. */
+        boolean sameState(CallState other) {
+            return state == other.state
+                    && callType == other.callType
+                    && connectionCount == other.connectionCount
+                    && latestConnection == other.latestConnection
+                    && latestConnectionState == other.latestConnectionState;
+        }
+
+        /** True if, in addition, the same party is displayed for the call. */
+        boolean sameDisplay(CallState other) {
+            return sameState(other)
+                    && latestConnectionUserData == other.latestConnectionUserData
+                    && TextUtils.equals(address, other.address)
+                    && TextUtils.equals(cnapName, other.cnapName)
+                    && numberPresentation == other.numberPresentation;
+        }
+    }
+
+    private final PhoneConstants.State mPhoneState;
+    private final InCallScreenMode mInCallScreenMode;
+    private final boolean mProviderInfoVisible;
+    private final int mActiveSubscription;
+    private final Object mCdmaCallState;
+    private final CallState mForegroundCall;
+    private final CallState mBackgroundCall;
+    private final CallState mRingingCall;
+
+    // Other inputs of the CallCard's call state label and icons.
+    private final boolean mShowBluetoothIndication;
+    private final boolean mShowAlreadyDisconnectedState;
+    private final boolean mCdmaRedialCall;
+    private final boolean mPhoneInEcm;
+
+    private InCallViewModel(CallManager cm, PhoneGlobals app) {
+        mPhoneState = cm.getState();
+        mInCallScreenMode = app.inCallUiState.inCallScreenMode;
+        mProviderInfoVisible = app.inCallUiState.providerInfoVisible;
+        mActiveSubscription = PhoneUtils.getActiveSubscription();
+        mCdmaCallState = (app.cdmaPhoneCallState != null)
+                ? app.cdmaPhoneCallState.getCurrentCallState() : null;
+        mForegroundCall = new CallState(cm.getActiveFgCall());
+        mBackgroundCall = new CallState(cm.getFirstActiveBgCall());
+        mRingingCall = new CallState(cm.getFirstActiveRingingCall());
+        mShowBluetoothIndication = app.showBluetoothIndication();
+        mShowAlreadyDisconnectedState = app.inCallUiState.showAlreadyDisconnectedState;
+        mCdmaRedialCall = (app.notifier != null) && app.notifier.getIsCdmaRedialCall();
+        mPhoneInEcm = PhoneUtils.isPhoneInEcm(cm.getFgPhone());
+    }
+
+    /**
+     * Takes a snapshot of the current state.  Must be called from the UI
+     * thread.
+     */
+    static InCallViewModel create(CallManager cm) {
+        return new InCallViewModel(cm, PhoneGlobals.getInstance());
+    }
+
+    /**
+     * Returns true if {@code section} has to be rebound to go from
+     * {@code previous} (null if nothing is bound yet) to {@code current}.
+     */
+    static boolean isChanged(int section, InCallViewModel previous, InCallViewModel current) {
+        if (previous == null) {
+            return true;
+        }
+        switch (section) {
+            case SECTION_CALL_CARD:
+                return !current.sameCallCard(previous);
+            case SECTION_MANAGE_CONFERENCE:
+                return current.mInCallScreenMode != previous.mInCallScreenMode
+                        || !current.mForegroundCall.sameState(previous.mForegroundCall);
+            case SECTION_TOUCH_UI:
+            default:
+                // Not (fully) covered by the snapshot; always rebind.
+                return true;
+        }
+    }
+
+    /** True if the CallCard would show the same thing for both snapshots. */
+    private boolean sameCallCard(InCallViewModel other) {
+        return mPhoneState == other.mPhoneState
+                && mInCallScreenMode == other.mInCallScreenMode
+                && mActiveSubscription == other.mActiveSubscription
+                && mCdmaCallState == other.mCdmaCallState
+                && mProviderInfoVisible == other.mProviderInfoVisible
+                && mShowBluetoothIndication == other.mShowBluetoothIndication
+                && mShowAlreadyDisconnectedState == other.mShowAlreadyDisconnectedState
+                && mCdmaRedialCall == other.mCdmaRedialCall
+                && mPhoneInEcm == other.mPhoneInEcm
+                && mForegroundCall.sameDisplay(other.mForegroundCall)
+                && mBackgroundCall.sameDisplay(other.mBackgroundCall)
+                && mRingingCall.sameDisplay(other.mRingingCall);
+    }
+
+    /**
+     * Counts of section updates that were applied and skipped, for
+     * checking how much work the change detection saves.
+     */
+    static final class Stats {
+        private final int[] mApplied = new int[NUM_SECTIONS];
+        private final int[] mSkipped = new int[NUM_SECTIONS];
+
+        void record(int section, boolean applied) {
+            if (applied) {
+                mApplied[section]++;
+            } else {
+                mSkipped[section]++;
+            }
+        }
+
+        int getApplied(int section) {
+            return mApplied[section];
+        }
+
+        int getSkipped(int section) {
+            return mSkipped[section];
+        }
+
+        void dump() {
+            for (int i = 0; i < NUM_SECTIONS; i++) {
+                Log.d(LOG_TAG, "  " + SECTION_NAMES[i] + ": applied " + mApplied[i]
+                        + ", skipped " + mSkipped[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.phone;
+
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.View;
+import android.view.ViewStub;
+
+/**
+ * A part of the in-call UI that most calls never use (the video call panel,
+ * the "Manage conference" panel, the OTASP widgets), declared as a ViewStub
+ * and only inflated the first time somebody actually needs it.  Once
+ * inflated it is kept for as long as the views it lives in, so the inflation
+ * cost is paid at most once per InCallScreen and only by calls that need it.
+ */
+/* package */ final class LazyViewStub<T extends View> {
+    private static final String LOG_TAG = "LazyViewStub";
+    private static final boolean DBG = (PhoneGlobals.DBG_LEVEL >= 2);
+
+    private final View mRoot;
+    private final int mStubId;
+    private final int mInflatedId;
+    private T mView;
+
+    /**
+     * @param root the view containing the ViewStub
+     * @param stubId the id of the ViewStub
+     * @param inflatedId the id the inflated view ends up with (its
+     *        android:inflatedId, or the id of the layout's root view)
+     */
+    LazyViewStub(View root, int stubId, int inflatedId) {
+        mRoot = root;
+        mStubId = stubId;
+        mInflatedId = inflatedId;
+    }
+
+    /**
+     * Returns the panel, inflating it if necessary, or null if it isn't
+     * part of the layout at all.
+     */
+    @SuppressWarnings("unchecked")
+    T get() {
+        if (mView == null) {
+            ViewStub stub = (ViewStub) mRoot.findViewById(mStubId);
+            if (stub != null) {
+                long start = SystemClock.uptimeMillis();
+                mView = (T) stub.inflate();
+                if (DBG) log("inflated " + mView + " in "
+                        + (SystemClock.uptimeMillis() - start) + " ms");
+            } else {
+                // Somebody inflated it already (e.g. for an earlier call).
+                mView = (T) mRoot.findViewById(mInflatedId);
+            }
+        }
+        return mView;
+    }
+
+    private static void log(String msg) {
+        Log.d(LOG_TAG, msg);
+    }
+}
@@ -41,7 +41,6 @@ import android.preference.PreferenceManager;
 import android.provider.CallLog.Calls;
 import android.provider.Settings;
 import android.telephony.MSimTelephonyManager;
-import android.telephony.PhoneNumberUtils;
 import android.telephony.PhoneStateListener;
 import android.telephony.TelephonyManager;
 import android.util.EventLog;
@@ -179,6 +178,7 @@ public class MSimCallNotifier extends CallNotifier {
 
     protected void onCfiChanged(boolean visible, int subscription) {
         if (VDBG) log("onCfiChanged(): " + visible + " sub: " + subscription);
+        SuppServiceCache.getInstance().invalidateCallForwarding(subscription);
         ((MSimNotificationMgr)mApplication.notificationMgr).updateCfi(visible, subscription);
     }
 
@@ -550,8 +550,8 @@ public class MSimCallNotifier extends CallNotifier {
 
         if (fgPhone.getPhoneType() == PhoneConstants.PHONE_TYPE_CDMA) {
             Connection c = fgPhone.getForegroundCall().getLatestConnection();
-            if ((c != null) && (PhoneNumberUtils.isLocalEmergencyNumber(c.getAddress(),
-                                                                        mApplication))) {
+            if ((c != null) && (EmergencyNumberMatcher.getInstance().isEmergencyNumber(
+                                        c.getAddress()))) {
                 if (VDBG) log("onPhoneStateChanged: it is an emergency call.");
                 Call.State callState = fgPhone.getForegroundCall().getState();
                 if (mEmergencyTonePlayerVibrator == null) {
@@ -789,7 +789,7 @@ public class MSimCallNotifier extends CallNotifier {
             final String number = c.getAddress();
             final Phone phone = c.getCall().getPhone();
             final boolean isEmergencyNumber =
-                    PhoneNumberUtils.isLocalEmergencyNumber(number, mApplication);
+                    EmergencyNumberMatcher.getInstance().isEmergencyNumber(number);
 
             if (phone.getPhoneType() == PhoneConstants.PHONE_TYPE_CDMA) {
                 if ((isEmergencyNumber)
@@ -78,8 +78,9 @@ public class MSimDeleteFdnContactScreen extends DeleteFdnContactScreen {
             Log.e(LOG_TAG, "Error received invalid sub =" + mSubscription);
         }
 
+        SimPhoneBookCache.getInstance(this).applyDelete(uri, mName, mNumber);
         mQueryHandler = new QueryHandler(getContentResolver());
-        mQueryHandler.startDelete(0, null, uri, buf.toString(), null);
+        mQueryHandler.startDelete(0, uri, uri, buf.toString(), null);
         displayProgress(true);
     }
 
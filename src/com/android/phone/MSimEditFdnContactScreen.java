@@ -92,8 +92,9 @@ public class MSimEditFdnContactScreen extends EditFdnContactScreen {
         bundle.put("pin2", mPin2);
         bundle.put(SUBSCRIPTION_KEY, mSubscription);
 
+        SimPhoneBookCache.getInstance(this).applyInsert(uri, getNameFromTextField(), number);
         mQueryHandler = new QueryHandler(getContentResolver());
-        mQueryHandler.startInsert(0, null, uri, bundle);
+        mQueryHandler.startInsert(0, uri, uri, bundle);
         displayProgress(true);
         showStatus(getResources().getText(R.string.adding_fdn_contact));
     }
@@ -119,8 +120,9 @@ public class MSimEditFdnContactScreen extends EditFdnContactScreen {
         bundle.put("pin2", mPin2);
         bundle.put(SUBSCRIPTION_KEY, mSubscription);
 
+        SimPhoneBookCache.getInstance(this).applyUpdate(uri, mName, mNumber, name, number);
         mQueryHandler = new QueryHandler(getContentResolver());
-        mQueryHandler.startUpdate(0, null, uri, bundle, null, null);
+        mQueryHandler.startUpdate(0, uri, uri, bundle, null, null);
         displayProgress(true);
         showStatus(getResources().getText(R.string.updating_fdn_contact));
     }
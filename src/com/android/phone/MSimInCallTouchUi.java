@@ -27,7 +27,6 @@ import android.view.View;
 import android.widget.CompoundButton;
 
 import com.android.internal.telephony.CallManager;
-import com.android.internal.telephony.PhoneConstants;
 import com.android.phone.PhoneUtils;
 
 /**
@@ -83,22 +82,14 @@ public class MSimInCallTouchUi extends InCallTouchUi {
      * Updates the Switch subscription button based on the
      * active phone count.
      */
-    private void updateSwitchButton() {
-        int phoneCount = MSimTelephonyManager.getDefault().getPhoneCount();
-        int activePhoneCount = 0;
-
-        for (int i = 0; i < phoneCount; i++) {
-            if (mApp.mCM.getState(i) != PhoneConstants.State.IDLE)
-                activePhoneCount++;
-        }
-
-        if ((phoneCount > 1) && (activePhoneCount > 1)) {
+    private void updateSwitchButton(InCallControlState inCallControlState) {
+        if (inCallControlState.canSwitchSubscription()) {
             mSwitchButton.setVisibility(View.VISIBLE);
             mSwitchButton.setEnabled(true);
         } else {
             mSwitchButton.setVisibility(View.GONE);
         }
-        log("updateSwitchButton count =" + phoneCount + " active count =" + activePhoneCount);
+        if (DBG) log("updateSwitchButton: " + inCallControlState.canSwitchSubscription());
     }
 
     /**
@@ -109,7 +100,9 @@ public class MSimInCallTouchUi extends InCallTouchUi {
     protected void updateInCallControls(CallManager cm) {
         super.updateInCallControls(cm);
 
-        updateSwitchButton();
+        // The state was just brought up to date by the superclass, so this
+        // only reads the shared flags.
+        updateSwitchButton(mInCallScreen.getUpdatedInCallControlState());
     }
 
     @Override
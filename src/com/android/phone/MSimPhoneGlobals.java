@@ -154,6 +154,7 @@ public class MSimPhoneGlobals extends PhoneGlobals {
             // Set Default PhoneApp variables
             setDefaultPhone(mDefaultSubscription);
             mCM.registerPhone(phone);
+            InCallControlState.init(mCM);
 
             // Create the NotificationMgr singleton, which is used to display
             // status bar icons and control other status bar behavior.
@@ -191,9 +192,8 @@ public class MSimPhoneGlobals extends PhoneGlobals {
             // before registering for phone state changes
             mPowerManager = (PowerManager) getSystemService(Context.POWER_SERVICE);
             mWakeLock = mPowerManager.newWakeLock(PowerManager.FULL_WAKE_LOCK, LOG_TAG);
-            // lock used to keep the processor awake, when we don't care for the display.
-            mPartialWakeLock = mPowerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK
-                    | PowerManager.ON_AFTER_RELEASE, LOG_TAG);
+            // The processor is kept awake (when we don't care for the display)
+            // through PhoneWakeLock; see requestWakeState().
             // Wake lock used to control proximity sensor behavior.
             if (mPowerManager.isWakeLockLevelSupported(
                     PowerManager.PROXIMITY_SCREEN_OFF_WAKE_LOCK)) {
@@ -237,6 +237,17 @@ public class MSimPhoneGlobals extends PhoneGlobals {
             // The asynchronous caching will start just after this call.
             callerInfoCache = CallerInfoCache.init(this);
 
+            // Create the InCallViewCache singleton, which inflates the
+            // in-call UI ahead of time once boot has settled.
+            inCallViewCache = InCallViewCache.init(this);
+
+            // Open the call event journal before any call events come in.
+            CallEventJournal.getInstance();
+
+            // Load what "Respond via Message" needs while the phone is
+            // ringing, in the background.
+            RespondViaSmsCache.getInstance().preload();
+
             // Create the CallNotifer singleton, which handles
             // asynchronous events from the telephony layer (like
             // launching the incoming-call UI when an incoming call comes
@@ -463,6 +474,8 @@ public class MSimPhoneGlobals extends PhoneGlobals {
         if (VDBG) Log.d(LOG_TAG, "onMMIComplete()...");
         MmiCode mmiCode = (MmiCode) r.result;
         Phone localPhone = (Phone) mmiCode.getPhone();
+        // The code may have changed any supplementary service setting.
+        SuppServiceCache.getInstance().invalidateAll(localPhone.getSubscription());
         PhoneUtils.displayMMIComplete(localPhone, getInstance(), mmiCode, null, null);
     }
 
@@ -541,6 +554,7 @@ public class MSimPhoneGlobals extends PhoneGlobals {
                 Phone phone = getPhone(subscription);
                 handleServiceStateChanged(intent, phone);
             } else if (action.equals(TelephonyIntents.ACTION_EMERGENCY_CALLBACK_MODE_CHANGED)) {
+                InCallControlState.invalidateCallState();
                 Phone phone = getPhone(subscription);
                 if (TelephonyCapabilities.supportsEcm(phone)) {
                     Log.d(LOG_TAG, "Emergency Callback Mode arrived in PhoneApp"
@@ -19,15 +19,12 @@
 
 package com.android.phone;
 
+import android.os.SystemClock;
 import android.os.SystemProperties;
 import android.text.TextUtils;
 import android.util.Log;
 import android.view.View;
 import android.view.ViewGroup;
-import android.view.ViewStub;
-import android.widget.Button;
-import android.widget.Chronometer;
-import android.widget.ImageButton;
 import android.widget.TextView;
 
 import com.android.internal.telephony.CallerInfo;
@@ -35,6 +32,9 @@ import com.android.internal.telephony.CallerInfoAsyncQuery;
 import com.android.internal.telephony.CallManager;
 import com.android.internal.telephony.Connection;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 
 
@@ -47,38 +47,120 @@ public class ManageConferenceUtils {
             (PhoneGlobals.DBG_LEVEL >= 1) && (SystemProperties.getInt("ro.debuggable", 0) == 1);
 
     /**
-     * CallerInfoAsyncQuery.OnQueryCompleteListener implementation.
-     *
-     * This object listens for results from the caller-id info queries we
-     * fire off in updateManageConferenceRow(), and updates the
-     * corresponding conference row.
+     * One participant of the conference, i.e. one row of the "Manage
+     * conference" list.  A participant is identified by its Connection, or,
+     * for IMS conferences where the conference server reports the
+     * participants, by its URI (and, since the server may report the same
+     * URI more than once, by how many times it came earlier in the list).
+     */
+    protected static final class Participant {
+        final Connection connection;
+        final String uri;
+        final boolean canSeparate;
+
+        Participant(Connection connection, String uri, boolean canSeparate) {
+            this.connection = connection;
+            this.uri = uri;
+            this.canSeparate = canSeparate;
+        }
+    }
+
+    /**
+     * Returns the keys of {@code participants}, in the same order: the
+     * Connection, or the URI followed by its occurrence number.
+     */
+    private static Object[] getKeys(List<Participant> participants) {
+        Object[] keys = new Object[participants.size()];
+        HashMap<String, Integer> uriCounts = null;
+        for (int i = 0; i < keys.length; i++) {
+            Participant participant = participants.get(i);
+            if (participant.uri == null) {
+                keys[i] = participant.connection;
+                continue;
+            }
+            if (uriCounts == null) {
+                uriCounts = new HashMap<String, Integer>();
+            }
+            Integer count = uriCounts.get(participant.uri);
+            int occurrence = (count != null) ? count : 0;
+            uriCounts.put(participant.uri, occurrence + 1);
+            keys[i] = participant.uri + '\n' + occurrence;
+        }
+        return keys;
+    }
+
+    /**
+     * A row of the "Manage conference" list, along with the participant it
+     * is currently bound to.  Rows of participants that leave the conference
+     * are kept for reuse rather than inflated again.
      */
-    private final class QueryCompleteListener
-            implements CallerInfoAsyncQuery.OnQueryCompleteListener {
-        private final int mConferencCallListIndex;
+    private final class ParticipantRow implements View.OnClickListener {
+        final ViewGroup view;
+        final View endButton;
+        final View separateButton;
+        final TextView nameTextView;
+        final TextView numberTextView;
+        final TextView numberTypeTextView;
+        Participant participant;
+        Object key;
+
+        ParticipantRow(ViewGroup view) {
+            this.view = view;
+            endButton = view.findViewById(R.id.conferenceCallerDisconnect);
+            separateButton = view.findViewById(R.id.conferenceCallerSeparate);
+            nameTextView = (TextView) view.findViewById(R.id.conferenceCallerName);
+            numberTextView = (TextView) view.findViewById(R.id.conferenceCallerNumber);
+            numberTypeTextView = (TextView) view.findViewById(R.id.conferenceCallerNumberType);
+            endButton.setOnClickListener(this);
+            separateButton.setOnClickListener(this);
+        }
 
-        public QueryCompleteListener(int index) {
-            mConferencCallListIndex = index;
+        @Override
+        public void onClick(View v) {
+            if (participant == null) {
+                return;
+            }
+            int index = mRows.indexOf(this);
+            if (v == endButton) {
+                endConferenceParticipant(index, participant);
+            } else if (v == separateButton) {
+                separateConferenceConnection(index, participant.connection);
+            }
+            PhoneGlobals.getInstance().pokeUserActivity();
         }
+    }
 
+    /**
+     * CallerInfoAsyncQuery.OnQueryCompleteListener implementation.
+     *
+     * This object listens for results from the caller-id info queries we
+     * fire off when a participant joins the list, and updates the row of
+     * that participant if it is still there.  The cookie of every query is
+     * the Connection or the URI of the participant.
+     */
+    private final CallerInfoAsyncQuery.OnQueryCompleteListener mQueryListener =
+            new CallerInfoAsyncQuery.OnQueryCompleteListener() {
         @Override
         public void onQueryComplete(int token, Object cookie, CallerInfo ci) {
             if (DBG) log("callerinfo query complete, updating UI." + ci);
 
-            Connection connection = (Connection) cookie;
-            int presentation = connection.getNumberPresentation();
-
-            // get the viewgroup (conference call list item) and make it visible
-            ViewGroup viewGroup = mConferenceCallList[mConferencCallListIndex];
-            viewGroup.setVisibility(View.VISIBLE);
-
-            // update the list item with this information.
-            displayCallerInfoForConferenceRow(ci, presentation,
-                    (TextView) viewGroup.findViewById(R.id.conferenceCallerName),
-                    (TextView) viewGroup.findViewById(R.id.conferenceCallerNumberType),
-                    (TextView) viewGroup.findViewById(R.id.conferenceCallerNumber));
+            if (cookie instanceof String) {
+                String uri = (String) cookie;
+                mUriQueries.remove(uri);
+                CallerInfoLookupCache.getInstance().put(getNumberFromUri(uri), ci);
+                for (ParticipantRow row : mRows) {
+                    if (uri.equals(row.participant.uri)) {
+                        displayParticipant(row, ci);
+                    }
+                }
+                return;
+            }
+            ParticipantRow row = mRowsByKey.get(cookie);
+            if (row != null) {
+                displayParticipant(row, ci);
+            }
         }
-    }
+    };
 
     protected InCallScreen mInCallScreen;
     protected CallManager mCM;
@@ -86,12 +168,40 @@ public class ManageConferenceUtils {
     // "Manage conference" UI elements and state
     protected ViewGroup mManageConferencePanel;
     protected View mButtonManageConferenceDone;
-    protected ViewGroup[] mConferenceCallList;
+    protected ViewGroup mConferenceCallerList;
     protected int mNumCallersInConference;
-    protected Chronometer mConferenceTime;
+    protected TextView mConferenceTime;
+    private CallDurationTicker.ElapsedTimeText mConferenceTimeText;
+    private long mConferenceTimeBase;
+    private boolean mConferenceTimeRunning;
+
+    // The conference header is driven by the shared call duration ticker
+    // rather than by the Chronometer's own timer.
+    private final CallDurationTicker.Listener mConferenceTimeListener =
+            new CallDurationTicker.Listener() {
+        @Override
+        public void onTick() {
+            updateConferenceTime();
+        }
+    };
+
+    // Rows currently in the list, in display order, and the same rows by
+    // participant key (see getKeys()).
+    private final ArrayList<ParticipantRow> mRows = new ArrayList<ParticipantRow>();
+    private final HashMap<Object, ParticipantRow> mRowsByKey =
+            new HashMap<Object, ParticipantRow>();
+    // Rows of participants that left, ready to be bound to new ones.
+    private final ArrayList<ParticipantRow> mRecycledRows = new ArrayList<ParticipantRow>();
+
+    // Caller-id lookups of URI participants still running.  (Unlike
+    // Connections, URIs have no user data to share the lookup through.)
+    private final HashSet<String> mUriQueries = new HashSet<String>();
 
-    // See CallTracker.MAX_CONNECTIONS_PER_CALL
-    private static final int MAX_CALLERS_IN_CONFERENCE = 5;
+    // Enough for the participants of a GSM conference (see
+    // CallTracker.MAX_CONNECTIONS_PER_CALL) to come and go without inflating.
+    private static final int MAX_RECYCLED_ROWS = 5;
+
+    private static final int QUERY_TOKEN = 0;
 
     public ManageConferenceUtils(InCallScreen inCallScreen, CallManager cm) {
         if (DBG) log("ManageConferenceUtils constructor...");
@@ -105,29 +215,22 @@ public class ManageConferenceUtils {
             if (DBG) log("initManageConferencePanel: first-time initialization!");
 
             // Inflate the ViewStub, look up and initialize the UI elements.
-            ViewStub stub = (ViewStub) mInCallScreen.findViewById(R.id.manageConferencePanelStub);
-            stub.inflate();
-
-            mManageConferencePanel =
-                    (ViewGroup) mInCallScreen.findViewById(R.id.manageConferencePanel);
+            mManageConferencePanel = new LazyViewStub<ViewGroup>(
+                    mInCallScreen.getWindow().getDecorView(),
+                    R.id.manageConferencePanelStub, R.id.manageConferencePanel).get();
             if (mManageConferencePanel == null) {
                 throw new IllegalStateException("Couldn't find manageConferencePanel!");
             }
 
-            // set up the Conference Call chronometer
+            // set up the Conference Call time header
             mConferenceTime =
-                    (Chronometer) mInCallScreen.findViewById(R.id.manageConferencePanelHeader);
-            mConferenceTime.setFormat(mInCallScreen.getString(R.string.caller_manage_header));
+                    (TextView) mInCallScreen.findViewById(R.id.manageConferencePanelHeader);
+            mConferenceTimeText = new CallDurationTicker.ElapsedTimeText(
+                    mInCallScreen.getString(R.string.caller_manage_header));
 
-            // Create list of conference call widgets
-            mConferenceCallList = new ViewGroup[MAX_CALLERS_IN_CONFERENCE];
-
-            final int[] viewGroupIdList = { R.id.caller0, R.id.caller1, R.id.caller2,
-                                            R.id.caller3, R.id.caller4 };
-            for (int i = 0; i < MAX_CALLERS_IN_CONFERENCE; i++) {
-                mConferenceCallList[i] =
-                        (ViewGroup) mInCallScreen.findViewById(viewGroupIdList[i]);
-            }
+            // The rows of the list are added as participants join.
+            mConferenceCallerList =
+                    (ViewGroup) mInCallScreen.findViewById(R.id.conferenceCallerList);
 
             mButtonManageConferenceDone = mInCallScreen.findViewById(R.id.manage_done);
             mButtonManageConferenceDone.setOnClickListener(mInCallScreen);
@@ -144,24 +247,38 @@ public class ManageConferenceUtils {
     }
 
     /**
-     * Starts the "conference time" chronometer.
+     * Starts the "conference time" display.
+     *
+     * @param base the start of the conference, in the
+     *        SystemClock.elapsedRealtime() time base
      */
     public void startConferenceTime(long base) {
-        if (mConferenceTime != null) {
-            mConferenceTime.setBase(base);
-            mConferenceTime.start();
+        // (Like a Chronometer, don't bother ticking while the header is hidden.)
+        if (mConferenceTime != null && mConferenceTime.getVisibility() == View.VISIBLE) {
+            mConferenceTimeBase = base;
+            updateConferenceTime();
+            if (!mConferenceTimeRunning) {
+                mConferenceTimeRunning = true;
+                CallDurationTicker.getInstance().addListener(mConferenceTimeListener);
+            }
         }
     }
 
     /**
-     * Stops the "conference time" chronometer.
+     * Stops the "conference time" display.
      */
     public void stopConferenceTime() {
-        if (mConferenceTime != null) {
-            mConferenceTime.stop();
+        if (mConferenceTimeRunning) {
+            mConferenceTimeRunning = false;
+            CallDurationTicker.getInstance().removeListener(mConferenceTimeListener);
         }
     }
 
+    private void updateConferenceTime() {
+        long seconds = (SystemClock.elapsedRealtime() - mConferenceTimeBase) / 1000;
+        mConferenceTimeText.setText(mConferenceTime, seconds);
+    }
+
     public int getNumCallersInConference() {
         return mNumCallersInConference;
     }
@@ -175,9 +292,8 @@ public class ManageConferenceUtils {
      *        (or it wouldn't be a conference call in the first place.)
      */
     public void updateManageConferencePanel(List<Connection> connections) {
-        mNumCallersInConference = connections.size();
         if (DBG) log("updateManageConferencePanel()... num connections in conference = "
-                      + mNumCallersInConference);
+                      + connections.size());
 
         // Can we give the user the option to separate out ("go private with") a single
         // caller from this conference?
@@ -185,88 +301,130 @@ public class ManageConferenceUtils {
         final boolean hasHoldingCall = mCM.hasActiveBgCall();
         boolean canSeparate = !(hasActiveCall && hasHoldingCall);
 
-        for (int i = 0; i < MAX_CALLERS_IN_CONFERENCE; i++) {
-            if (i < mNumCallersInConference) {
-                // Fill in the row in the UI for this caller.
-                Connection connection = (Connection) connections.get(i);
-                updateManageConferenceRow(i, connection, canSeparate);
-            } else {
-                // Blank out this row in the UI
-                updateManageConferenceRow(i, null, false);
-            }
+        ArrayList<Participant> participants = new ArrayList<Participant>(connections.size());
+        for (Connection connection : connections) {
+            participants.add(new Participant(connection, null, canSeparate));
         }
+        updateParticipants(participants);
     }
 
     /**
-     * Updates a single row of the "Manage conference" UI.  (One row in this
-     * UI represents a single caller in the conference.)
+     * Makes the list show {@code participants}, in that order.
      *
-     * @param i the row to update
-     * @param connection the Connection corresponding to this caller.
-     *        If null, that means this is an "empty slot" in the conference,
-     *        so hide this row in the UI.
-     * @param canSeparate if true, show a "Separate" (i.e. "Private") button
-     *        on this row in the UI.
+     * The new list is diffed against the displayed one by participant key:
+     * the rows of participants that are still in the conference are left
+     * alone (other than their "Separate" button), so a participant joining or
+     * leaving only binds or unbinds a single row, and starts at most one
+     * caller-id lookup.
      */
-    public void updateManageConferenceRow(final int i,
-                                          final Connection connection,
-                                          boolean canSeparate) {
-        if (DBG) log("updateManageConferenceRow(" + i + ")...  connection = " + connection);
-
-        if (connection != null) {
-            // Activate this row of the Manage conference panel:
-            mConferenceCallList[i].setVisibility(View.VISIBLE);
-
-            // get the relevant children views
-            View endButton = mConferenceCallList[i].findViewById(R.id.conferenceCallerDisconnect);
-            View separateButton = mConferenceCallList[i].findViewById(
-                    R.id.conferenceCallerSeparate);
-            TextView nameTextView = (TextView) mConferenceCallList[i].findViewById(
-                    R.id.conferenceCallerName);
-            TextView numberTextView = (TextView) mConferenceCallList[i].findViewById(
-                    R.id.conferenceCallerNumber);
-            TextView numberTypeTextView = (TextView) mConferenceCallList[i].findViewById(
-                    R.id.conferenceCallerNumberType);
-
-            if (DBG) log("- button: " + endButton + ", nameTextView: " + nameTextView);
-
-            // Hook up this row's buttons.
-            View.OnClickListener endThisConnection = new View.OnClickListener() {
-                    @Override
-                    public void onClick(View v) {
-                        endConferenceConnection(i, connection);
-                        PhoneGlobals.getInstance().pokeUserActivity();
-                    }
-                };
-            endButton.setOnClickListener(endThisConnection);
-            //
-            if (canSeparate) {
-                View.OnClickListener separateThisConnection = new View.OnClickListener() {
-                        @Override
-                        public void onClick(View v) {
-                            separateConferenceConnection(i, connection);
-                            PhoneGlobals.getInstance().pokeUserActivity();
-                        }
-                    };
-                separateButton.setOnClickListener(separateThisConnection);
-                separateButton.setVisibility(View.VISIBLE);
+    protected void updateParticipants(List<Participant> participants) {
+        mNumCallersInConference = participants.size();
+
+        Object[] keys = getKeys(participants);
+        HashSet<Object> keySet = new HashSet<Object>();
+        for (Object key : keys) {
+            keySet.add(key);
+        }
+
+        // Take out the rows of the participants that left first, so their
+        // views can go to the participants that joined.
+        for (int i = mRows.size() - 1; i >= 0; i--) {
+            ParticipantRow row = mRows.get(i);
+            Object key = row.key;
+            if (!keySet.contains(key)) {
+                if (DBG) log("- participant left: " + key);
+                mConferenceCallerList.removeView(row.view);
+                mRowsByKey.remove(key);
+                row.participant = null;
+                row.key = null;
+                if (mRecycledRows.size() < MAX_RECYCLED_ROWS) {
+                    mRecycledRows.add(row);
+                }
+            }
+        }
+
+        mRows.clear();
+        for (int i = 0; i < participants.size(); i++) {
+            Participant participant = participants.get(i);
+            Object key = keys[i];
+            ParticipantRow row = mRowsByKey.get(key);
+            if (row == null) {
+                if (DBG) log("- participant joined: " + key);
+                row = obtainRow();
+                mRowsByKey.put(key, row);
+                row.participant = participant;
+                row.key = key;
+                bindSeparateButton(row);
+                startCallerInfoLookup(row);
             } else {
-                separateButton.setVisibility(View.INVISIBLE);
+                boolean separateChanged = row.participant.canSeparate != participant.canSeparate;
+                row.participant = participant;
+                if (separateChanged) {
+                    bindSeparateButton(row);
+                }
             }
+            mRows.add(row);
 
-            // Name/number for this caller.
-            QueryCompleteListener listener = new QueryCompleteListener(i);
-            PhoneUtils.CallerInfoToken info =
-                    PhoneUtils.startGetCallerInfo(mInCallScreen,
-                            connection, listener, connection);
+            if (mConferenceCallerList.getChildAt(i) != row.view) {
+                if (row.view.getParent() != null) {
+                    mConferenceCallerList.removeView(row.view);
+                }
+                mConferenceCallerList.addView(row.view, i);
+            }
+        }
+    }
+
+    private ParticipantRow obtainRow() {
+        int size = mRecycledRows.size();
+        if (size > 0) {
+            return mRecycledRows.remove(size - 1);
+        }
+        ViewGroup view = (ViewGroup) mInCallScreen.getLayoutInflater().inflate(
+                R.layout.caller_in_conference, mConferenceCallerList, false);
+        return new ParticipantRow(view);
+    }
+
+    private void bindSeparateButton(ParticipantRow row) {
+        row.separateButton.setVisibility(
+                row.participant.canSeparate ? View.VISIBLE : View.INVISIBLE);
+    }
+
+    /**
+     * Shows what we know about the participant of a newly bound row, and
+     * looks up the rest.  The lookup of a Connection is shared with the rest
+     * of the in-call UI through the Connection's user data, and the lookups
+     * of URIs through the CallerInfoLookupCache.
+     */
+    private void startCallerInfoLookup(ParticipantRow row) {
+        Participant participant = row.participant;
+        if (participant.uri == null) {
+            PhoneUtils.CallerInfoToken info = PhoneUtils.startGetCallerInfo(mInCallScreen,
+                    participant.connection, mQueryListener, participant.connection);
             if (DBG) log("  - got info from startGetCallerInfo(): " + info);
+            displayParticipant(row, info.currentInfo);
+            return;
+        }
+
+        String number = getNumberFromUri(participant.uri);
+        CallerInfo ci = CallerInfoLookupCache.getInstance().get(number);
+        if (ci == null && !mUriQueries.contains(participant.uri)) {
+            if (!TextUtils.isEmpty(number)) {
+                mUriQueries.add(participant.uri);
+                CallerInfoAsyncQuery.startQuery(QUERY_TOKEN, mInCallScreen, number,
+                        mQueryListener, participant.uri);
+            }
+        }
+        displayParticipant(row, ci);
+    }
 
-            // display the CallerInfo.
-            displayCallerInfoForConferenceRow(info.currentInfo, connection.getNumberPresentation(),
-                    nameTextView, numberTypeTextView, numberTextView);
+    private void displayParticipant(ParticipantRow row, CallerInfo ci) {
+        if (row.participant.uri != null) {
+            displayCallerInfoForUri(ci, row.participant.uri,
+                    row.nameTextView, row.numberTypeTextView, row.numberTextView);
         } else {
-            // Disable this row of the Manage conference panel:
-            mConferenceCallList[i].setVisibility(View.GONE);
+            displayCallerInfoForConferenceRow(ci,
+                    row.participant.connection.getNumberPresentation(),
+                    row.nameTextView, row.numberTypeTextView, row.numberTextView);
         }
     }
 
@@ -316,11 +474,62 @@ public class ManageConferenceUtils {
         }
     }
 
+    /**
+     * Fills out a row of the list for a participant known only by its URI.
+     * The URI is always shown; the name and number type too, once the
+     * lookup has found a contact for it.
+     */
+    private void displayCallerInfoForUri(CallerInfo ci, String uri,
+            TextView nameTextView, TextView numberTypeTextView, TextView numberTextView) {
+        String callerName = "";
+        String callerNumberType = "";
+        if (ci != null && !TextUtils.isEmpty(ci.name)) {
+            callerName = ci.name;
+            callerNumberType = ci.phoneLabel;
+        }
+
+        nameTextView.setText(callerName);
+
+        if (TextUtils.isEmpty(uri)) {
+            numberTextView.setVisibility(View.GONE);
+            numberTypeTextView.setVisibility(View.GONE);
+        } else {
+            numberTextView.setVisibility(View.VISIBLE);
+            numberTextView.setText(uri);
+            numberTypeTextView.setVisibility(View.VISIBLE);
+            numberTypeTextView.setText(callerNumberType);
+        }
+    }
+
+    /**
+     * Returns what to look up in the contacts for a participant URI: the
+     * number of a "tel:" URI, or the address of a "sip:" one.
+     */
+    private static String getNumberFromUri(String uri) {
+        String number = uri;
+        int index = number.indexOf(':');
+        if (index >= 0) {
+            number = number.substring(index + 1);
+        }
+        index = number.indexOf(';');
+        if (index >= 0) {
+            number = number.substring(0, index);
+        }
+        return number;
+    }
+
+    /**
+     * Ends the participant of the row at {@code i}, when the user clicks the
+     * "End" button of that row.
+     */
+    protected void endConferenceParticipant(int i, Participant participant) {
+        endConferenceConnection(i, participant.connection);
+    }
+
     /**
      * Ends the specified connection on a conference call.  This method is
-     * run (via a closure containing a row index and Connection) when the
-     * user clicks the "End" button on a specific row in the Manage
-     * conference UI.
+     * run (via endConferenceParticipant()) when the user clicks the "End"
+     * button on a specific row in the Manage conference UI.
      */
     public void endConferenceConnection(int i, Connection connection) {
         if (DBG) log("===> ENDING conference connection " + i
@@ -334,8 +543,7 @@ public class ManageConferenceUtils {
 
     /**
      * Separates out the specified connection on a conference call.  This
-     * method is run (via a closure containing a row index and Connection)
-     * when the user clicks the "Separate" (i.e. "Private") button on a
+     * method is run when the user clicks the "Separate" (i.e. "Private") button on a
      * specific row in the Manage conference UI.
      */
     public void separateConferenceConnection(int i, Connection connection) {
@@ -26,17 +26,27 @@ import android.os.IBinder;
 import android.os.Message;
 import android.os.RemoteCallbackList;
 import android.os.RemoteException;
+import android.os.SystemClock;
 import com.android.internal.telephony.Phone;
 import com.android.internal.telephony.PhoneFactory;
 import android.util.Log;
+import android.util.SparseArray;
 
 import java.util.ArrayList;
+import java.util.List;
 
 import static com.android.internal.telephony.MSimConstants.SUBSCRIPTION_KEY;
 
 /**
  * Service code used to assist in querying the network for service
- * availability.   
+ * availability.
+ *
+ * Scans are tracked per subscription: every client asking for the same
+ * subscription while a scan is running shares that scan.  The result of the
+ * last successful scan of each subscription is kept (for the life of the
+ * process, not just of the service) and handed to new clients right away, so
+ * that the list can be shown while the new scan, which takes a minute or two,
+ * is running.
  */
 public class NetworkQueryService extends Service {
     // debug data
@@ -44,22 +54,51 @@ public class NetworkQueryService extends Service {
     private static final boolean DBG = false;
 
     // static events
-    private static final int EVENT_NETWORK_SCAN_COMPLETED = 100; 
-    
-    // static states indicating the query status of the service 
+    private static final int EVENT_NETWORK_SCAN_COMPLETED = 100;
+
+    // static states indicating the query status of a subscription
     private static final int QUERY_READY = -1;
     private static final int QUERY_IS_RUNNING = -2;
-    
+
     // error statuses that will be retured in the callback.
     public static final int QUERY_OK = 0;
     public static final int QUERY_EXCEPTION = 1;
-    
-    /** state of the query service */
-    private int mState;
-    
-    /** local handle to the phone object */
+
+    /** Cached scan results older than this are not handed out any more. */
+    private static final long CACHED_RESULTS_MAX_AGE = 30 * 60 * 1000;
+
+    /** local handle to the phone object of the subscription we were started for */
     private Phone mPhone;
-    
+
+    /**
+     * State of the scan of one subscription, along with the callbacks waiting
+     * for it.
+     */
+    private static class Scan {
+        int state = QUERY_READY;
+        final RemoteCallbackList<INetworkQueryServiceCallback> callbacks =
+                new RemoteCallbackList<INetworkQueryServiceCallback>();
+    }
+
+    /** Result of a successful scan and the time it was received. */
+    private static class CachedResults {
+        final ArrayList<OperatorInfo> networks;
+        final long timestamp;
+
+        CachedResults(ArrayList<OperatorInfo> networks) {
+            this.networks = networks;
+            this.timestamp = SystemClock.elapsedRealtime();
+        }
+
+        long age() {
+            return SystemClock.elapsedRealtime() - timestamp;
+        }
+    }
+
+    /** Last scan results by subscription, kept across service instances. */
+    private static final SparseArray<CachedResults> sCachedResults =
+            new SparseArray<CachedResults>();
+
     /**
      * Class for clients to access.  Because we know this service always
      * runs in the same process as its clients, we don't need to deal with
@@ -81,87 +120,115 @@ public class NetworkQueryService extends Service {
         public void handleMessage(Message msg) {
             switch (msg.what) {
                 // if the scan is complete, broadcast the results.
-                // to all registerd callbacks.
+                // to all callbacks registered for the subscription.
                 case EVENT_NETWORK_SCAN_COMPLETED:
-                    if (DBG) log("scan completed, broadcasting results");
-                    broadcastQueryResults((AsyncResult) msg.obj);
+                    if (DBG) log("scan completed on sub " + msg.arg1 + ", broadcasting results");
+                    broadcastQueryResults(msg.arg1, (AsyncResult) msg.obj);
                     break;
             }
         }
     };
-    
-    /** 
-     * List of callback objects, also used to synchronize access to 
-     * itself and to changes in state.
+
+    /**
+     * Scans by subscription, also used to synchronize access to
+     * the callback lists and to changes in state.
      */
-    final RemoteCallbackList<INetworkQueryServiceCallback> mCallbacks =
-        new RemoteCallbackList<INetworkQueryServiceCallback> ();
-    
+    final SparseArray<Scan> mScans = new SparseArray<Scan>();
+
     /**
      * Implementation of the INetworkQueryService interface.
      */
     private final INetworkQueryService.Stub mBinder = new INetworkQueryService.Stub() {
-        
+
         /**
-         * Starts a query with a INetworkQueryServiceCallback object if
-         * one has not been started yet.  Ignore the new query request
-         * if the query has been started already.  Either way, place the
-         * callback object in the queue to be notified upon request 
-         * completion.
+         * Starts a query on the subscription the service was started for.
          */
         public void startNetworkQuery(INetworkQueryServiceCallback cb) {
-            if (cb != null) {
-                // register the callback to the list of callbacks.
-                synchronized (mCallbacks) {
-                    mCallbacks.register(cb);
-                    if (DBG) log("registering callback " + cb.getClass().toString());
-                    
-                    switch (mState) {
-                        case QUERY_READY:
-                            // TODO: we may want to install a timeout here in case we
-                            // do not get a timely response from the RIL.
-                            mPhone.getAvailableNetworks(
-                                    mHandler.obtainMessage(EVENT_NETWORK_SCAN_COMPLETED));
-                            mState = QUERY_IS_RUNNING;
-                            if (DBG) log("starting new query");
-                            break;
-                            
-                        // do nothing if we're currently busy.
-                        case QUERY_IS_RUNNING:
-                            if (DBG) log("query already in progress");
-                            break;
-                        default:
-                    }
+            startNetworkQueryForSubscription(cb, mPhone.getSubscription());
+        }
+
+        /**
+         * Starts a query on the given subscription with a
+         * INetworkQueryServiceCallback object if one has not been started
+         * yet.  Ignore the new query request if the query has been started
+         * already.  Either way, hand the callback the last results of the
+         * subscription if we have any, and place it in the queue to be
+         * notified upon request completion.
+         */
+        public void startNetworkQueryForSubscription(INetworkQueryServiceCallback cb,
+                int subscription) {
+            if (cb == null) {
+                return;
+            }
+
+            CachedResults cached = getCachedResults(subscription);
+            if (cached != null) {
+                if (DBG) log("handing out results cached " + cached.age() + "ms ago");
+                try {
+                    cb.onCachedResults(cached.networks, cached.age());
+                } catch (RemoteException e) {
+                }
+            }
+
+            // register the callback to the list of callbacks.
+            synchronized (mScans) {
+                Scan scan = mScans.get(subscription);
+                if (scan == null) {
+                    scan = new Scan();
+                    mScans.put(subscription, scan);
+                }
+                scan.callbacks.register(cb);
+                if (DBG) log("registering callback " + cb.getClass().toString()
+                        + " on sub " + subscription);
+
+                switch (scan.state) {
+                    case QUERY_READY:
+                        // TODO: we may want to install a timeout here in case we
+                        // do not get a timely response from the RIL.
+                        MSimPhoneGlobals.getInstance().getPhone(subscription).getAvailableNetworks(
+                                mHandler.obtainMessage(EVENT_NETWORK_SCAN_COMPLETED,
+                                        subscription, 0));
+                        scan.state = QUERY_IS_RUNNING;
+                        if (DBG) log("starting new query");
+                        break;
+
+                    // do nothing if we're currently busy.
+                    case QUERY_IS_RUNNING:
+                        if (DBG) log("query already in progress");
+                        break;
+                    default:
                 }
             }
         }
-        
+
         /**
          * Stops a query with a INetworkQueryServiceCallback object as
          * a token.
          */
         public void stopNetworkQuery(INetworkQueryServiceCallback cb) {
-            // currently we just unregister the callback, since there is 
-            // no way to tell the RIL to terminate the query request.  
-            // This means that the RIL may still be busy after the stop 
-            // request was made, but the state tracking logic ensures 
-            // that the delay will only last for 1 request even with 
-            // repeated button presses in the NetworkSetting activity. 
+            // currently we just unregister the callback, since there is
+            // no way to tell the RIL to terminate the query request.
+            // This means that the RIL may still be busy after the stop
+            // request was made, but the state tracking logic ensures
+            // that the delay will only last for 1 request even with
+            // repeated button presses in the NetworkSetting activity.
+            // The results of that request still go to the cache.
             if (cb != null) {
-                synchronized (mCallbacks) {
+                synchronized (mScans) {
                     if (DBG) log("unregistering callback " + cb.getClass().toString());
-                    mCallbacks.unregister(cb);
+                    for (int i = 0; i < mScans.size(); i++) {
+                        mScans.valueAt(i).callbacks.unregister(cb);
+                    }
                 }
-            }            
+            }
         }
     };
-    
+
     @Override
     public void onCreate() {
-        mState = QUERY_READY;
         mPhone = PhoneFactory.getDefaultPhone();
     }
-    
+
     /**
      * Required for service implementation.
      */
@@ -177,55 +244,97 @@ public class NetworkQueryService extends Service {
         mPhone = MSimPhoneGlobals.getInstance().getPhone(subscription);
         return START_REDELIVER_INTENT;
     }
-    
+
+    @Override
+    public void onDestroy() {
+        synchronized (mScans) {
+            for (int i = 0; i < mScans.size(); i++) {
+                mScans.valueAt(i).callbacks.kill();
+            }
+            mScans.clear();
+        }
+    }
+
     /**
      * Handle the bind request.
      */
     @Override
     public IBinder onBind(Intent intent) {
         // TODO: Currently, return only the LocalBinder instance.  If we
-        // end up requiring support for a remote binder, we will need to 
+        // end up requiring support for a remote binder, we will need to
         // return mBinder as well, depending upon the intent.
         if (DBG) log("binding service implementation");
         return mLocalBinder;
     }
 
     /**
-     * Broadcast the results from the query to all registered callback
-     * objects. 
+     * Returns the last scan results of the subscription, or null if there are
+     * none or they are too old to be useful.
      */
-    private void broadcastQueryResults (AsyncResult ar) {
-        // reset the state.
-        synchronized (mCallbacks) {
-            mState = QUERY_READY;
-            
-            // see if we need to do any work.
-            if (ar == null) {
-                if (DBG) log("AsyncResult is null.");
+    private static CachedResults getCachedResults(int subscription) {
+        synchronized (sCachedResults) {
+            CachedResults cached = sCachedResults.get(subscription);
+            if (cached != null && cached.age() >= CACHED_RESULTS_MAX_AGE) {
+                sCachedResults.delete(subscription);
+                cached = null;
+            }
+            return cached;
+        }
+    }
+
+    /**
+     * Broadcast the results from the query to all callback objects
+     * registered for the subscription, and keep them for later clients.
+     */
+    private void broadcastQueryResults(int subscription, AsyncResult ar) {
+        // see if we need to do any work.
+        if (ar == null) {
+            if (DBG) log("AsyncResult is null.");
+            synchronized (mScans) {
+                Scan scan = mScans.get(subscription);
+                if (scan != null) {
+                    scan.state = QUERY_READY;
+                }
+            }
+            return;
+        }
+
+        // TODO: we may need greater accuracy here, but for now, just a
+        // simple status integer will suffice.
+        int exception = (ar.exception == null) ? QUERY_OK : QUERY_EXCEPTION;
+        if (DBG) log("AsyncResult has exception " + exception);
+
+        ArrayList<OperatorInfo> networks = (ArrayList<OperatorInfo>) ar.result;
+        if (exception == QUERY_OK && networks != null) {
+            synchronized (sCachedResults) {
+                sCachedResults.put(subscription, new CachedResults(networks));
+            }
+        }
+
+        synchronized (mScans) {
+            Scan scan = mScans.get(subscription);
+            if (scan == null) {
                 return;
             }
-    
-            // TODO: we may need greater accuracy here, but for now, just a
-            // simple status integer will suffice.
-            int exception = (ar.exception == null) ? QUERY_OK : QUERY_EXCEPTION;
-            if (DBG) log("AsyncResult has exception " + exception);
-            
+            // reset the state.
+            scan.state = QUERY_READY;
+
             // Make the calls to all the registered callbacks.
-            for (int i = (mCallbacks.beginBroadcast() - 1); i >= 0; i--) {
-                INetworkQueryServiceCallback cb = mCallbacks.getBroadcastItem(i); 
+            for (int i = (scan.callbacks.beginBroadcast() - 1); i >= 0; i--) {
+                INetworkQueryServiceCallback cb = scan.callbacks.getBroadcastItem(i);
                 if (DBG) log("broadcasting results to " + cb.getClass().toString());
                 try {
-                    cb.onQueryComplete((ArrayList<OperatorInfo>) ar.result, exception);
+                    cb.onQueryComplete(networks, exception);
                 } catch (RemoteException e) {
                 }
             }
-            
+
             // finish up.
-            mCallbacks.finishBroadcast();
+            scan.callbacks.finishBroadcast();
         }
     }
-    
+
     private static void log(String msg) {
         Log.d(LOG_TAG, msg);
-    }    
+    }
 }
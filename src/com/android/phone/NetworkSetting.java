@@ -60,6 +60,7 @@ public class NetworkSetting extends PreferenceActivity
     private static final int EVENT_NETWORK_SCAN_COMPLETED = 100;
     private static final int EVENT_NETWORK_SELECTION_DONE = 200;
     private static final int EVENT_AUTO_SELECT_DONE = 300;
+    private static final int EVENT_CACHED_NETWORKS_LOADED = 400;
 
     //dialog ids
     private static final int DIALOG_NETWORK_SELECTION = 100;
@@ -75,6 +76,7 @@ public class NetworkSetting extends PreferenceActivity
     private HashMap<Preference, OperatorInfo> mNetworkMap;
 
     Phone mPhone;
+    private int mSubscription;
     protected boolean mIsForeground = false;
 
     /** message for network selection */
@@ -94,6 +96,10 @@ public class NetworkSetting extends PreferenceActivity
                     networksListLoaded ((List<OperatorInfo>) msg.obj, msg.arg1);
                     break;
 
+                case EVENT_CACHED_NETWORKS_LOADED:
+                    cachedNetworksListLoaded((List<OperatorInfo>) msg.obj);
+                    break;
+
                 case EVENT_NETWORK_SELECTION_DONE:
                     if (DBG) log("hideProgressPanel");
                     removeDialog(DIALOG_NETWORK_SELECTION);
@@ -178,6 +184,14 @@ public class NetworkSetting extends PreferenceActivity
                     status, 0, networkInfoArray);
             msg.sendToTarget();
         }
+
+        /** show the results of the previous scan while the new one runs. */
+        public void onCachedResults(List<OperatorInfo> networkInfoArray, long ageMillis) {
+            if (DBG) log("notifying message loop of cached results, age " + ageMillis);
+            Message msg = mHandler.obtainMessage(EVENT_CACHED_NETWORKS_LOADED,
+                    networkInfoArray);
+            msg.sendToTarget();
+        }
     };
 
     @Override
@@ -231,12 +245,12 @@ public class NetworkSetting extends PreferenceActivity
 
         addPreferencesFromResource(R.xml.carrier_select);
 
-        int subscription = getIntent().getIntExtra(SUBSCRIPTION_KEY,
+        mSubscription = getIntent().getIntExtra(SUBSCRIPTION_KEY,
                 MSimPhoneGlobals.getInstance().getDefaultSubscription());
-        log("onCreate subscription :" + subscription);
-        mPhone = MSimPhoneGlobals.getInstance().getPhone(subscription);
+        log("onCreate subscription :" + mSubscription);
+        mPhone = MSimPhoneGlobals.getInstance().getPhone(mSubscription);
         Intent intent = new Intent(this, NetworkQueryService.class);
-        intent.putExtra(SUBSCRIPTION_KEY, subscription);
+        intent.putExtra(SUBSCRIPTION_KEY, mSubscription);
 
         mNetworkList = (PreferenceGroup) getPreferenceScreen().findPreference(LIST_NETWORKS_KEY);
         mNetworkMap = new HashMap<Preference, OperatorInfo>();
@@ -385,7 +399,7 @@ public class NetworkSetting extends PreferenceActivity
 
         // delegate query request to the service.
         try {
-            mNetworkQueryService.startNetworkQuery(mCallback);
+            mNetworkQueryService.startNetworkQueryForSubscription(mCallback, mSubscription);
         } catch (RemoteException e) {
         }
 
@@ -402,10 +416,52 @@ public class NetworkSetting extends PreferenceActivity
     private void networksListLoaded(List<OperatorInfo> result, int status) {
         if (DBG) log("networks list loaded");
 
+        hideNetworkListLoadProgress();
+        clearList();
+
+        if (status != NetworkQueryService.QUERY_OK) {
+            if (DBG) log("error while querying available networks");
+            displayNetworkQueryFailed(status);
+            displayEmptyNetworkList(true);
+        } else {
+            if (result != null){
+                displayEmptyNetworkList(false);
+                addNetworks(result);
+            } else {
+                displayEmptyNetworkList(true);
+            }
+        }
+    }
+
+    /**
+     * Shows the results of the previous scan of this subscription while the
+     * new scan is running, instead of blocking the screen with the progress
+     * dialog.  networksListLoaded() replaces them once the scan completes;
+     * until then the screen stays disabled, so that no network can be
+     * selected from a list that is about to be rebuilt.
+     */
+    private void cachedNetworksListLoaded(List<OperatorInfo> result) {
+        if (DBG) log("cached networks list loaded");
+        if (result == null || result.isEmpty()) {
+            // nothing worth showing, keep waiting for the scan.
+            return;
+        }
+
+        dismissNetworkListLoadDialog();
+        clearList();
+        mNetworkList.setTitle(R.string.label_available_updating);
+        addNetworks(result);
+    }
+
+    private void hideNetworkListLoadProgress() {
         // update the state of the preferences.
         if (DBG) log("hideProgressPanel");
 
+        dismissNetworkListLoadDialog();
+        getPreferenceScreen().setEnabled(true);
+    }
 
+    private void dismissNetworkListLoadDialog() {
         // Always try to dismiss the dialog because activity may
         // be moved to background after dialog is shown.
         try {
@@ -416,34 +472,20 @@ public class NetworkSetting extends PreferenceActivity
             // connected after this activity is moved to background.
             if (DBG) log("Fail to dismiss network load list dialog");
         }
+    }
 
-        getPreferenceScreen().setEnabled(true);
-        clearList();
-
-        if (status != NetworkQueryService.QUERY_OK) {
-            if (DBG) log("error while querying available networks");
-            displayNetworkQueryFailed(status);
-            displayEmptyNetworkList(true);
-        } else {
-            if (result != null){
-                displayEmptyNetworkList(false);
-
-                // create a preference for each item in the list.
-                // just use the operator name instead of the mildly
-                // confusing mcc/mnc.
-                for (OperatorInfo ni : result) {
-                    Preference carrier = new Preference(this, null);
-                    carrier.setTitle(getNetworkTitle(ni));
-                    carrier.setPersistent(false);
-                    mNetworkList.addPreference(carrier);
-                    mNetworkMap.put(carrier, ni);
-
-                    if (DBG) log("  " + ni);
-                }
-
-            } else {
-                displayEmptyNetworkList(true);
-            }
+    private void addNetworks(List<OperatorInfo> result) {
+        // create a preference for each item in the list.
+        // just use the operator name instead of the mildly
+        // confusing mcc/mnc.
+        for (OperatorInfo ni : result) {
+            Preference carrier = new Preference(this, null);
+            carrier.setTitle(getNetworkTitle(ni));
+            carrier.setPersistent(false);
+            mNetworkList.addPreference(carrier);
+            mNetworkMap.put(carrier, ni);
+
+            if (DBG) log("  " + ni);
         }
     }
 
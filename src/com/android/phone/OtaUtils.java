@@ -43,7 +43,6 @@ import android.util.Log;
 import android.view.KeyEvent;
 import android.view.View;
 import android.view.ViewGroup;
-import android.view.ViewStub;
 import android.view.WindowManager;
 import android.widget.Button;
 import android.widget.ProgressBar;
@@ -251,14 +250,11 @@ public class OtaUtils {
         mCallCard = callCard;
         mOtaWidgetData = new OtaWidgetData();
 
-        // Inflate OTASP-specific UI elements:
-        ViewStub otaCallCardStub = (ViewStub) mInCallScreen.findViewById(R.id.otaCallCardStub);
-        if (otaCallCardStub != null) {
-            // If otaCallCardStub is null here, that means it's already been
-            // inflated (which could have happened in the current InCallScreen
-            // instance for a *prior* OTASP call.)
-            otaCallCardStub.inflate();
-        }
+        // Inflate OTASP-specific UI elements.  (They may already have been
+        // inflated in the current InCallScreen instance for a *prior* OTASP
+        // call.)
+        new LazyViewStub<View>(mInCallScreen.getWindow().getDecorView(),
+                R.id.otaCallCardStub, R.id.otaTopLevel).get();
 
         readXmlSettings();
         initOtaInCallScreen();
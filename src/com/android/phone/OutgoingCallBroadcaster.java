@@ -151,6 +151,7 @@ public class OutgoingCallBroadcaster extends Activity
         @Override
         public void onReceive(Context context, Intent intent) {
             mHandler.removeMessages(EVENT_OUTGOING_CALL_TIMEOUT);
+            Profiler.outgoingCallBroadcastDone();
             doReceive(context, intent);
             if (DBG) Log.v(TAG, "OutgoingCallReceiver is going to finish the Activity itself.");
             finish();
@@ -178,6 +179,11 @@ public class OutgoingCallBroadcaster extends Activity
             number = getResultData();
             if (VDBG) Log.v(TAG, "- got number from resultData: '" + number + "'");
 
+            // If nobody rewrote the number during the broadcast, it is still
+            // the one we checked and normalized in processMSimIntent().
+            final boolean numberUnchanged = (number != null)
+                    && number.equals(intent.getStringExtra(Intent.EXTRA_PHONE_NUMBER));
+
             final PhoneGlobals app = PhoneGlobals.getInstance();
 
             if (isOtaActive()) {
@@ -194,7 +200,8 @@ public class OutgoingCallBroadcaster extends Activity
                     && (app.phone.isOtaSpNumber(number))) {
                 if (DBG) Log.v(TAG, "Call is active, a 2nd OTA call cancelled -- returning.");
                 return;
-            } else if (PhoneNumberUtils.isPotentialLocalEmergencyNumber(number, context)) {
+            } else if (!numberUnchanged
+                    && EmergencyNumberMatcher.getInstance().isPotentialEmergencyNumber(number)) {
                 // Just like 3rd-party apps aren't allowed to place emergency
                 // calls via the ACTION_CALL intent, we also don't allow 3rd
                 // party apps to use the NEW_OUTGOING_CALL broadcast to rewrite
@@ -215,9 +222,9 @@ public class OutgoingCallBroadcaster extends Activity
             // We already called convertKeypadLettersToDigits() and
             // stripSeparators() way back in onCreate(), before we sent out the
             // NEW_OUTGOING_CALL broadcast.  But we need to do it again here
-            // too, since the number might have been modified/rewritten during
-            // the broadcast (and may now contain letters or separators again.)
-            if (!isConferenceUri) {
+            // too if the number was modified/rewritten during the broadcast
+            // (and may now contain letters or separators again.)
+            if (!isConferenceUri && !numberUnchanged) {
                 number = PhoneNumberUtils.convertKeypadLettersToDigits(number);
                 number = PhoneNumberUtils.stripSeparators(number);
             }
@@ -300,6 +307,10 @@ public class OutgoingCallBroadcaster extends Activity
      *     decision may also involve popping up a dialog to ask the user to
      *     choose what type of call this should be.)
      *
+     *     For a regular PSTN call with nothing to decide (see
+     *     SipCallOptionHandler.isPstnCallWithoutChoice()) we skip that
+     *     activity and place the call right here.
+     *
      * @param context used for the startActivity() call
      *
      * @param intent the intent from the previous step of the outgoing-call
@@ -339,6 +350,13 @@ public class OutgoingCallBroadcaster extends Activity
         PhoneUtils.checkAndCopyPhoneProviderExtras(intent, newIntent);
         PhoneUtils.copyImsExtras(intent, newIntent);
 
+        if (SipCallOptionHandler.isPstnCallWithoutChoice(context, newIntent, number)) {
+            if (DBG) Log.v(TAG, "startSipCallOptionHandler(): no choice needed, placing call");
+            Profiler.outgoingCallRouted(true);
+            PhoneGlobals.getInstance().callController.placeCall(newIntent);
+            return;
+        }
+
         // Finally, launch the SipCallOptionHandler, with the copy of the
         // original CALL intent stashed away in the EXTRA_NEW_CALL_INTENT
         // extra.
@@ -462,6 +480,7 @@ public class OutgoingCallBroadcaster extends Activity
          * calls will be blocked in OutgoingCallReceiver
          */
         otaCleanup();
+        Profiler.outgoingCallStarted();
 
         boolean promptEnabled = MSimPhoneFactory.isPromptEnabled();
         String number = PhoneNumberUtils.getNumberFromIntent(intent, this);
@@ -552,9 +571,10 @@ public class OutgoingCallBroadcaster extends Activity
         // emergency number but might still result in an emergency call
         // with some networks.)
         final boolean isExactEmergencyNumber =
-                (number != null) && PhoneNumberUtils.isLocalEmergencyNumber(number, this);
+                (number != null) && EmergencyNumberMatcher.getInstance().isEmergencyNumber(number);
         final boolean isPotentialEmergencyNumber =
-                (number != null) && PhoneNumberUtils.isPotentialLocalEmergencyNumber(number, this);
+                (number != null)
+                && EmergencyNumberMatcher.getInstance().isPotentialEmergencyNumber(number);
         if (VDBG) {
             Log.v(TAG, " - Checking restrictions for number '" + number + "':");
             Log.v(TAG, "     isExactEmergencyNumber     = " + isExactEmergencyNumber);
@@ -676,6 +696,7 @@ public class OutgoingCallBroadcaster extends Activity
 
             // Initiate the outgoing call, and simultaneously launch the
             // InCallScreen to display the in-call UI:
+            Profiler.outgoingCallRouted(true);
             PhoneGlobals.getInstance().callController.placeCall(intent);
 
             // Note we do *not* "return" here, but instead continue and
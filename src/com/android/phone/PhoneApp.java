@@ -17,6 +17,7 @@
 package com.android.phone;
 
 import android.app.Application;
+import android.content.ComponentCallbacks2;
 import android.content.res.Configuration;
 import android.os.UserHandle;
 
@@ -52,4 +53,20 @@ public class PhoneApp extends Application {
         }
         super.onConfigurationChanged(newConfig);
     }
+
+    @Override
+    public void onTrimMemory(int level) {
+        if (mPhoneGlobals != null) {
+            mPhoneGlobals.onTrimMemory(level);
+        }
+        super.onTrimMemory(level);
+    }
+
+    @Override
+    public void onLowMemory() {
+        if (mPhoneGlobals != null) {
+            mPhoneGlobals.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+        }
+        super.onLowMemory();
+    }
 }
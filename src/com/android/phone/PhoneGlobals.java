@@ -154,6 +154,9 @@ public class PhoneGlobals extends ContextWrapper
         FULL
     }
 
+    // PhoneWakeLock reason for the PARTIAL wake state.
+    private static final String WAKE_STATE_REASON = "PhoneGlobals.WakeState";
+
     /**
      * Intent Action used for hanging up the current call from Notification bar. This will
      * choose first ringing call, first active call, or first background call (typically in
@@ -185,6 +188,7 @@ public class PhoneGlobals extends ContextWrapper
     CallController callController;
     InCallUiState inCallUiState;
     CallerInfoCache callerInfoCache;
+    InCallViewCache inCallViewCache;
     CallNotifier notifier;
     NotificationMgr notificationMgr;
     Ringer ringer;
@@ -241,11 +245,12 @@ public class PhoneGlobals extends ContextWrapper
     protected PowerManager mPowerManager;
     protected IPowerManager mPowerManagerService;
     protected PowerManager.WakeLock mWakeLock;
-    protected PowerManager.WakeLock mPartialWakeLock;
     protected PowerManager.WakeLock mProximityWakeLock;
     protected KeyguardManager mKeyguardManager;
     protected AccelerometerListener mAccelerometerListener;
     private int mOrientation = AccelerometerListener.ORIENTATION_UNKNOWN;
+    // Whether the screen is on, as last reported by ACTION_SCREEN_ON / OFF.
+    private boolean mScreenOn = true;
 
     protected UpdateLock mUpdateLock;
 
@@ -368,6 +373,7 @@ public class PhoneGlobals extends ContextWrapper
                     break;
 
                 case MMI_COMPLETE:
+                    CallEventJournal.getInstance().recordMmiComplete();
                     onMMIComplete((AsyncResult) msg.obj);
                     break;
 
@@ -502,6 +508,7 @@ public class PhoneGlobals extends ContextWrapper
 
             mCM = CallManager.getInstance();
             mCM.registerPhone(phone);
+            InCallControlState.init(mCM);
 
             createImsService();
 
@@ -541,9 +548,8 @@ public class PhoneGlobals extends ContextWrapper
             // before registering for phone state changes
             mPowerManager = (PowerManager) getSystemService(Context.POWER_SERVICE);
             mWakeLock = mPowerManager.newWakeLock(PowerManager.FULL_WAKE_LOCK, LOG_TAG);
-            // lock used to keep the processor awake, when we don't care for the display.
-            mPartialWakeLock = mPowerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK
-                    | PowerManager.ON_AFTER_RELEASE, LOG_TAG);
+            // The processor is kept awake (when we don't care for the display)
+            // through PhoneWakeLock; see requestWakeState().
             // Wake lock used to control proximity sensor behavior.
             if (mPowerManager.isWakeLockLevelSupported(
                     PowerManager.PROXIMITY_SCREEN_OFF_WAKE_LOCK)) {
@@ -586,6 +592,17 @@ public class PhoneGlobals extends ContextWrapper
             // The asynchronous caching will start just after this call.
             callerInfoCache = CallerInfoCache.init(this);
 
+            // Create the InCallViewCache singleton, which inflates the
+            // in-call UI ahead of time once boot has settled.
+            inCallViewCache = InCallViewCache.init(this);
+
+            // Open the call event journal before any call events come in.
+            CallEventJournal.getInstance();
+
+            // Load what "Respond via Message" needs while the phone is
+            // ringing, in the background.
+            RespondViaSmsCache.getInstance().preload();
+
             // Create the CallNotifer singleton, which handles
             // asynchronous events from the telephony layer (like
             // launching the incoming-call UI when an incoming call comes
@@ -733,6 +750,7 @@ public class PhoneGlobals extends ContextWrapper
             //Get handle to IImsService.Stub.asInterface(service);
             mImsService = IImsService.Stub.asInterface(service);
             Log.d(LOG_TAG,"Ims Service Connected" + mImsService);
+            InCallControlState.invalidateCallState();
         }
 
         public void onServiceDisconnected(ComponentName arg0) {
@@ -766,6 +784,15 @@ public class PhoneGlobals extends ContextWrapper
         }
     };
 
+    /**
+     * Forwarded from PhoneApp.onTrimMemory() / onLowMemory().
+     */
+    public void onTrimMemory(int level) {
+        if (inCallViewCache != null) {
+            inCallViewCache.onTrimMemory(level);
+        }
+    }
+
     public void onConfigurationChanged(Configuration newConfig) {
         if (newConfig.hardKeyboardHidden == Configuration.HARDKEYBOARDHIDDEN_NO) {
             mIsHardKeyboardOpen = true;
@@ -941,6 +968,9 @@ public class PhoneGlobals extends ContextWrapper
 
     void setInCallScreenInstance(InCallScreen inCallScreen) {
         mInCallScreen = inCallScreen;
+        if (inCallViewCache != null) {
+            inCallViewCache.setInCallScreenExists(inCallScreen != null);
+        }
     }
 
     /**
@@ -1108,11 +1138,12 @@ public class PhoneGlobals extends ContextWrapper
         if (VDBG) Log.d(LOG_TAG, "requestWakeState(" + ws + ")...");
         synchronized (this) {
             if (mWakeState != ws) {
+                final PhoneWakeLock partialWakeLock = PhoneWakeLock.getInstance();
                 switch (ws) {
                     case PARTIAL:
                         // acquire the processor wake lock, and release the FULL
                         // lock if it is being held.
-                        mPartialWakeLock.acquire();
+                        partialWakeLock.acquire(WAKE_STATE_REASON);
                         if (mWakeLock.isHeld()) {
                             mWakeLock.release();
                         }
@@ -1121,9 +1152,7 @@ public class PhoneGlobals extends ContextWrapper
                         // acquire the full wake lock, and release the PARTIAL
                         // lock if it is being held.
                         mWakeLock.acquire();
-                        if (mPartialWakeLock.isHeld()) {
-                            mPartialWakeLock.release();
-                        }
+                        partialWakeLock.releaseAll(WAKE_STATE_REASON);
                         break;
                     case SLEEP:
                     default:
@@ -1131,9 +1160,7 @@ public class PhoneGlobals extends ContextWrapper
                         if (mWakeLock.isHeld()) {
                             mWakeLock.release();
                         }
-                        if (mPartialWakeLock.isHeld()) {
-                            mPartialWakeLock.release();
-                        }
+                        partialWakeLock.releaseAll(WAKE_STATE_REASON);
                         break;
                 }
                 mWakeState = ws;
@@ -1288,12 +1315,7 @@ public class PhoneGlobals extends ContextWrapper
                 // turn proximity sensor off and turn screen on immediately if
                 // we are using a headset, the keyboard is open, or the device
                 // is being held in a horizontal position.
-                boolean screenOnImmediately = (isHeadsetPlugged()
-                                               || PhoneUtils.isSpeakerOn(this)
-                                               || isBluetoothHeadsetAudioOn()
-                                               || mIsHardKeyboardOpen
-                                               || PhoneUtils.isImsVideoCallActive(
-                                                       mCM.getActiveFgCall()));
+                boolean screenOnImmediately = isAudioAwayFromEar();
 
                 // We do not keep the screen off when the user is outside in-call screen and we are
                 // horizontal, but we do not force it on when we become horizontal until the
@@ -1309,8 +1331,8 @@ public class PhoneGlobals extends ContextWrapper
                 boolean dialpadVisible = false;
                 if (mInCallScreen != null) {
                     dialpadVisible =
-                            mInCallScreen.getUpdatedInCallControlState().dialpadEnabled
-                            && mInCallScreen.getUpdatedInCallControlState().dialpadVisible
+                            mInCallScreen.getUpdatedInCallControlState().dialpadEnabled()
+                            && mInCallScreen.getUpdatedInCallControlState().dialpadVisible()
                             && isShowingCallScreen();
                 }
                 screenOnImmediately |= dialpadVisible && horizontal;
@@ -1342,7 +1364,44 @@ public class PhoneGlobals extends ContextWrapper
                     }
                 }
             }
+            updateAccelerometerRate(state);
+        }
+    }
+
+    /**
+     * @return true if the phone isn't going to be held to the ear, whatever
+     * its orientation: a headset or the speaker is in use, the keyboard is
+     * open, or it's a video call.
+     */
+    private boolean isAudioAwayFromEar() {
+        return isHeadsetPlugged()
+                || PhoneUtils.isSpeakerOn(this)
+                || isBluetoothHeadsetAudioOn()
+                || mIsHardKeyboardOpen
+                || PhoneUtils.isImsVideoCallActive(mCM.getActiveFgCall());
+    }
+
+    /**
+     * Picks how often the accelerometer is sampled for
+     * updateProximitySensorMode(): not at all unless a call is off-hook and
+     * the screen is on, nor while the orientation can't make a difference
+     * (see isAudioAwayFromEar()); quickly while dialing, when the phone is
+     * likely being moved to the ear; and slowly for the rest of the call.
+     */
+    private void updateAccelerometerRate(PhoneConstants.State state) {
+        if (mAccelerometerListener == null) {
+            return;
+        }
+        int rate;
+        if (state != PhoneConstants.State.OFFHOOK || !mScreenOn || isAudioAwayFromEar()) {
+            rate = AccelerometerListener.RATE_OFF;
+            mOrientation = AccelerometerListener.ORIENTATION_UNKNOWN;
+        } else if (mCM.getActiveFgCallState().isDialing()) {
+            rate = AccelerometerListener.RATE_FAST;
+        } else {
+            rate = AccelerometerListener.RATE_SLOW;
         }
+        mAccelerometerListener.setRate(rate);
     }
 
     @Override
@@ -1391,9 +1450,13 @@ public class PhoneGlobals extends ContextWrapper
             }
 
             if (mAccelerometerListener != null) {
-                // use accelerometer to augment proximity sensor when in call
+                // use accelerometer to augment proximity sensor when in call,
+                // starting over with every phone state change
                 mOrientation = AccelerometerListener.ORIENTATION_UNKNOWN;
-                mAccelerometerListener.enable(state == PhoneConstants.State.OFFHOOK);
+                mAccelerometerListener.setRate(AccelerometerListener.RATE_OFF);
+                if (state == PhoneConstants.State.IDLE) {
+                    mAccelerometerListener.logStats();
+                }
             }
             // clear our beginning call flag
             mBeginningCall = false;
@@ -1406,6 +1469,9 @@ public class PhoneGlobals extends ContextWrapper
                 mInCallScreen.updateKeyguardPolicy(state == PhoneConstants.State.OFFHOOK);
             }
         }
+        // The foreground call may have gone from dialing to active without
+        // the phone state changing.
+        updateAccelerometerRate(state);
     }
 
     /* package */ PhoneConstants.State getPhoneState() {
@@ -1438,6 +1504,8 @@ public class PhoneGlobals extends ContextWrapper
     protected void onMMIComplete(AsyncResult r) {
         if (VDBG) Log.d(LOG_TAG, "onMMIComplete()...");
         MmiCode mmiCode = (MmiCode) r.result;
+        // The code may have changed any supplementary service setting.
+        SuppServiceCache.getInstance().invalidateAll(getDefaultSubscription());
         PhoneUtils.displayMMIComplete(phone, getInstance(), mmiCode, null, null);
     }
 
@@ -1657,6 +1725,7 @@ public class PhoneGlobals extends ContextWrapper
             } else if (action.equals(TelephonyIntents.ACTION_SERVICE_STATE_CHANGED)) {
                 handleServiceStateChanged(intent);
             } else if (action.equals(TelephonyIntents.ACTION_EMERGENCY_CALLBACK_MODE_CHANGED)) {
+                InCallControlState.invalidateCallState();
                 boolean isImsPhone = intent.getBooleanExtra("ims_phone", false);
 
                 if (isImsPhone) {
@@ -1709,10 +1778,8 @@ public class PhoneGlobals extends ContextWrapper
                  * This is done to ensure that power consumption is kept to a minimum
                  * in such a scenario
                  */
-                if(mAccelerometerListener != null) {
-                    mAccelerometerListener.enable(mLastPhoneState == PhoneConstants.State.OFFHOOK
-                            && action.equals(Intent.ACTION_SCREEN_ON));
-                }
+                mScreenOn = action.equals(Intent.ACTION_SCREEN_ON);
+                updateAccelerometerRate(mLastPhoneState);
             } else if (action.equals(ACTION_VIBRATE_60)) {
                 if (VDBG) Log.d(LOG_TAG, "mReceiver: ACTION_VIBRATE_60");
                 mAM.set(AlarmManager.ELAPSED_REALTIME_WAKEUP, SystemClock.elapsedRealtime() + 60000, mVibrateIntent);
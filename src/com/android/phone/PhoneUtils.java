@@ -71,7 +71,6 @@ import com.google.android.collect.Maps;
 import com.android.internal.util.Objects;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.List;
@@ -958,6 +957,7 @@ public class PhoneUtils {
      */
     static void switchHoldingAndActive(Call heldCall) {
         log("switchHoldingAndActive()...");
+        final long startTime = CallPipelineStats.start();
         try {
             CallManager cm = PhoneGlobals.getInstance().mCM;
             if (heldCall.isIdle()) {
@@ -971,6 +971,7 @@ public class PhoneUtils {
         } catch (CallStateException ex) {
             Log.w(LOG_TAG, "switchHoldingAndActive: caught " + ex, ex);
         }
+        CallPipelineStats.record(CallPipelineStats.STAGE_SWITCH_HOLDING_AND_ACTIVE, startTime);
     }
 
     /**
@@ -1020,6 +1021,7 @@ public class PhoneUtils {
     }
 
     static void mergeCalls(CallManager cm) {
+        final long startTime = CallPipelineStats.start();
         int phoneType = cm.getFgPhone().getPhoneType();
         if (phoneType == PhoneConstants.PHONE_TYPE_CDMA) {
             log("mergeCalls(): CDMA...");
@@ -1045,6 +1047,7 @@ public class PhoneUtils {
                 Log.w(LOG_TAG, "mergeCalls: caught " + ex, ex);
             }
         }
+        CallPipelineStats.record(CallPipelineStats.STAGE_MERGE_CALLS, startTime);
     }
 
     static void separateCall(Connection c) {
@@ -1516,7 +1519,12 @@ public class PhoneUtils {
                     if (DBG) log("getCallerInfo: number = " + toLogSafePhoneNumber(number));
 
                     if (!TextUtils.isEmpty(number)) {
-                        info = CallerInfo.getCallerInfo(context, number);
+                        CallerInfoLookupCache cache = CallerInfoLookupCache.getInstance();
+                        info = cache.get(number);
+                        if (info == null) {
+                            info = CallerInfo.getCallerInfo(context, number);
+                            cache.put(number, info);
+                        }
                         if (info != null) {
                             c.setUserData(info);
                         }
@@ -1630,6 +1638,7 @@ public class PhoneUtils {
             // No URI, or Existing CallerInfo, so we'll have to make do with
             // querying a new CallerInfo using the connection's phone number.
             String number = c.getAddress();
+            CallerInfo cachedInfo = null;
 
             if (DBG) {
                 log("PhoneUtils.startGetCallerInfo: new query for phone number...");
@@ -1677,8 +1686,17 @@ public class PhoneUtils {
                 // For scenarios where we may receive a valid number from the network but a
                 // restricted/unavailable presentation, we do not want to perform a contact query
                 // (see note on isFinal above). So we set isFinal to true here as well.
+                if (cit.currentInfo.numberPresentation == PhoneConstants.PRESENTATION_ALLOWED) {
+                    cachedInfo = CallerInfoLookupCache.getInstance().get(number);
+                }
                 if (cit.currentInfo.numberPresentation != PhoneConstants.PRESENTATION_ALLOWED) {
                     cit.isFinal = true;
+                } else if (cachedInfo != null) {
+                    // Somebody looked this number up a moment ago; the
+                    // result is merged in below, once the Connection holds
+                    // our token.
+                    if (DBG) log("==> Using the cached caller-id lookup for this number");
+                    cit.isFinal = true;
                 } else {
                     if (DBG) log("==> Actually starting CallerInfoAsyncQuery.startQuery()...");
                     cit.asyncQuery = CallerInfoAsyncQuery.startQuery(QUERY_TOKEN, context,
@@ -1698,6 +1716,12 @@ public class PhoneUtils {
 
             c.setUserData(cit);
 
+            if (cachedInfo != null) {
+                // Same as when the query completes (see sCallerInfoQueryListener).
+                cit.currentInfo = mergeCallerInfoQueryResult(cachedInfo, c);
+                c.setUserData(cit.currentInfo);
+            }
+
             if (DBG) {
                 log("startGetCallerInfo: query based on number: " + toLogSafePhoneNumber(number));
             }
@@ -1747,8 +1771,17 @@ public class PhoneUtils {
                     // For scenarios where we may receive a valid number from the network but a
                     // restricted/unavailable presentation, we do not want to perform a contact query
                     // (see note on isFinal above). So we set isFinal to true here as well.
+                    CallerInfo cachedInfo = null;
+                    if (cit.currentInfo.numberPresentation == PhoneConstants.PRESENTATION_ALLOWED) {
+                        cachedInfo = CallerInfoLookupCache.getInstance().get(updatedNumber);
+                    }
                     if (cit.currentInfo.numberPresentation != PhoneConstants.PRESENTATION_ALLOWED) {
                         cit.isFinal = true;
+                    } else if (cachedInfo != null) {
+                        if (DBG) log("startGetCallerInfo: using the cached caller-id lookup");
+                        cit.currentInfo = mergeCallerInfoQueryResult(cachedInfo, c);
+                        cit.isFinal = true;
+                        c.setUserData(cit.currentInfo);
                     } else {
                         cit.asyncQuery = CallerInfoAsyncQuery.startQuery(QUERY_TOKEN, context,
                                 updatedNumber, sCallerInfoQueryListener, c);
@@ -1815,60 +1848,87 @@ public class PhoneUtils {
                 if (DBG) log("query complete, updating connection.userdata");
                 Connection conn = (Connection) cookie;
 
-                // Added a check if CallerInfo is coming from ContactInfo or from Connection.
-                // If no ContactInfo, then we want to use CNAP information coming from network
-                if (DBG) log("- onQueryComplete: CallerInfo:" + ci);
-                if (ci.contactExists || ci.isEmergencyNumber() || ci.isVoiceMailNumber()) {
-                    // If the number presentation has not been set by
-                    // the ContactInfo, use the one from the
-                    // connection.
-
-                    // TODO: Need a new util method to merge the info
-                    // from the Connection in a CallerInfo object.
-                    // Here 'ci' is a new CallerInfo instance read
-                    // from the DB. It has lost all the connection
-                    // info preset before the query (see PhoneUtils
-                    // line 1334). We should have a method to merge
-                    // back into this new instance the info from the
-                    // connection object not set by the DB. If the
-                    // Connection already has a CallerInfo instance in
-                    // userData, then we could use this instance to
-                    // fill 'ci' in. The same routine could be used in
-                    // PhoneUtils.
-                    if (0 == ci.numberPresentation) {
-                        ci.numberPresentation = conn.getNumberPresentation();
-                    }
-                } else {
-                    // No matching contact was found for this number.
-                    // Return a new CallerInfo based solely on the CNAP
-                    // information from the network.
-
-                    CallerInfo newCi = getCallerInfo(null, conn);
-
-                    // ...but copy over the (few) things we care about
-                    // from the original CallerInfo object:
-                    if (newCi != null) {
-                        newCi.phoneNumber = ci.phoneNumber; // To get formatted phone number
-                        newCi.geoDescription = ci.geoDescription; // To get geo description string
-                        ci = newCi;
-                    }
-                }
+                // Remember the contacts lookup as is for the next Connection
+                // with this number.
+                CallerInfoLookupCache.getInstance().put(conn.getAddress(), ci);
 
+                ci = mergeCallerInfoQueryResult(ci, conn);
                 if (DBG) log("==> Stashing CallerInfo " + ci + " into the connection...");
                 conn.setUserData(ci);
             }
         };
 
+    /**
+     * Combines the result of a caller-id lookup for {@code conn} with the
+     * information the network gave us about the connection, and returns the
+     * CallerInfo to stash into the Connection.
+     */
+    private static CallerInfo mergeCallerInfoQueryResult(CallerInfo ci, Connection conn) {
+        // Added a check if CallerInfo is coming from ContactInfo or from Connection.
+        // If no ContactInfo, then we want to use CNAP information coming from network
+        if (DBG) log("- onQueryComplete: CallerInfo:" + ci);
+        if (ci.contactExists || ci.isEmergencyNumber() || ci.isVoiceMailNumber()) {
+            // If the number presentation has not been set by
+            // the ContactInfo, use the one from the
+            // connection.
+
+            // TODO: Need a new util method to merge the info
+            // from the Connection in a CallerInfo object.
+            // Here 'ci' is a new CallerInfo instance read
+            // from the DB. It has lost all the connection
+            // info preset before the query (see PhoneUtils
+            // line 1334). We should have a method to merge
+            // back into this new instance the info from the
+            // connection object not set by the DB. If the
+            // Connection already has a CallerInfo instance in
+            // userData, then we could use this instance to
+            // fill 'ci' in. The same routine could be used in
+            // PhoneUtils.
+            if (0 == ci.numberPresentation) {
+                ci.numberPresentation = conn.getNumberPresentation();
+            }
+        } else {
+            // No matching contact was found for this number.
+            // Return a new CallerInfo based solely on the CNAP
+            // information from the network.
+
+            CallerInfo newCi = getCallerInfo(null, conn);
+
+            // ...but copy over the (few) things we care about
+            // from the original CallerInfo object:
+            if (newCi != null) {
+                newCi.phoneNumber = ci.phoneNumber; // To get formatted phone number
+                newCi.geoDescription = ci.geoDescription; // To get geo description string
+                ci = newCi;
+            }
+        }
+        return ci;
+    }
+
 
     /**
      * Returns a single "name" for the specified given a CallerInfo object.
      * If the name is null, return defaultString as the default value, usually
      * context.getString(R.string.unknown).
+     *
+     * The result is remembered for the CallerInfo (see PresentationStrings)
+     * and reused until its name, number or presentation change.
      */
     static String getCompactNameFromCallerInfo(CallerInfo ci, Context context) {
         if (DBG) log("getCompactNameFromCallerInfo: info = " + ci);
 
+        final PresentationStrings strings = PresentationStrings.get(context);
         String compactName = null;
+        if (ci != null) {
+            compactName = strings.getCompactName(ci);
+            if (compactName != null) {
+                return compactName;
+            }
+        }
+        final String name = (ci != null) ? ci.name : null;
+        final String phoneNumber = (ci != null) ? ci.phoneNumber : null;
+        final int numberPresentation = (ci != null) ? ci.numberPresentation : 0;
+
         if (ci != null) {
             if (TextUtils.isEmpty(ci.name)) {
                 // Perform any modifications for special CNAP cases to
@@ -1885,15 +1945,13 @@ public class PhoneUtils {
             // If we're still null/empty here, then check if we have a presentation
             // string that takes precedence that we could return, otherwise display
             // "unknown" string.
-            if (ci != null && ci.numberPresentation == PhoneConstants.PRESENTATION_RESTRICTED) {
-                compactName = context.getString(R.string.private_num);
-            } else if (ci != null && ci.numberPresentation == PhoneConstants.PRESENTATION_PAYPHONE) {
-                compactName = context.getString(R.string.payphone);
-            } else {
-                compactName = context.getString(R.string.unknown);
-            }
+            compactName = strings.forPresentation(
+                    (ci != null) ? ci.numberPresentation : PhoneConstants.PRESENTATION_UNKNOWN);
         }
         if (VDBG) log("getCompactNameFromCallerInfo: compactName=" + compactName);
+        if (ci != null) {
+            strings.putCompactName(ci, name, phoneNumber, numberPresentation, compactName);
+        }
         return compactName;
     }
 
@@ -2008,6 +2066,7 @@ public class PhoneUtils {
 
         AudioManager audioManager = (AudioManager) context.getSystemService(Context.AUDIO_SERVICE);
         audioManager.setSpeakerphoneOn(flag);
+        InCallControlState.invalidateAudioState();
 
         // record the speaker-enable value
         if (store) {
@@ -2126,6 +2185,7 @@ public class PhoneUtils {
             if (DBG) log("setMuteInternal: using phone.setMute(" + muted + ")...");
             phone.setMute(muted);
         }
+        InCallControlState.invalidateAudioState();
         app.notificationMgr.updateMuteNotification();
     }
 
@@ -2179,6 +2239,7 @@ public class PhoneUtils {
         int modeAfter = audioManager.getMode();
 
         if (modeBefore != modeAfter) {
+            CallEventJournal.getInstance().recordAudioMode(modeBefore, modeAfter);
             // Enable stack dump only when actively debugging ("new Throwable()" is expensive!)
             if (DBG_SETAUDIOMODE_STACK) Log.d(LOG_TAG, "Stack:", new Throwable("stack dump"));
         } else {
@@ -2262,8 +2323,8 @@ public class PhoneUtils {
                      event.getRepeatCount() == 0) {
                 Connection c = phone.getForegroundCall().getLatestConnection();
                 // If it is NOT an emg #, toggle the mute state. Otherwise, ignore the hook.
-                if (c != null && !PhoneNumberUtils.isLocalEmergencyNumber(c.getAddress(),
-                                                                          PhoneGlobals.getInstance())) {
+                if (c != null && !EmergencyNumberMatcher.getInstance().isEmergencyNumber(
+                                          c.getAddress())) {
                     if (getMute()) {
                         if (DBG) log("handleHeadsetHook: UNmuting...");
                         setMute(false);
@@ -2461,21 +2522,9 @@ public class PhoneUtils {
      * Otherwise, return CNAP_SPECIAL_CASE_NO.
      */
     private static int checkCnapSpecialCases(String n) {
-        if (n.equals("PRIVATE") ||
-                n.equals("P") ||
-                n.equals("RES")) {
-            if (DBG) log("checkCnapSpecialCases, PRIVATE string: " + n);
-            return PhoneConstants.PRESENTATION_RESTRICTED;
-        } else if (n.equals("UNAVAILABLE") ||
-                n.equals("UNKNOWN") ||
-                n.equals("UNA") ||
-                n.equals("U")) {
-            if (DBG) log("checkCnapSpecialCases, UNKNOWN string: " + n);
-            return PhoneConstants.PRESENTATION_UNKNOWN;
-        } else {
-            if (DBG) log("checkCnapSpecialCases, normal str. number: " + n);
-            return CNAP_SPECIAL_CASE_NO;
-        }
+        int cnapSpecialCase = PresentationStrings.getCnapSpecialCase(n, CNAP_SPECIAL_CASE_NO);
+        if (DBG) log("checkCnapSpecialCases: " + n + " -> " + cnapSpecialCase);
+        return cnapSpecialCase;
     }
 
     /**
@@ -2502,11 +2551,10 @@ public class PhoneUtils {
         // "ABSENT NUMBER" is a possible value we could get from the network as the
         // phone number, so if this happens, change it to "Unknown" in the CallerInfo
         // and fix the presentation to be the same.
-        final String[] absentNumberValues =
-                context.getResources().getStringArray(R.array.absent_num);
-        if (Arrays.asList(absentNumberValues).contains(number)
-                && presentation == PhoneConstants.PRESENTATION_ALLOWED) {
-            number = context.getString(R.string.unknown);
+        final PresentationStrings strings = PresentationStrings.get(context);
+        if (presentation == PhoneConstants.PRESENTATION_ALLOWED
+                && strings.isAbsentNumber(number)) {
+            number = strings.unknown;
             ci.numberPresentation = PhoneConstants.PRESENTATION_UNKNOWN;
         }
 
@@ -2522,9 +2570,9 @@ public class PhoneUtils {
             if (cnapSpecialCase != CNAP_SPECIAL_CASE_NO) {
                 // For all special strings, change number & numberPresentation.
                 if (cnapSpecialCase == PhoneConstants.PRESENTATION_RESTRICTED) {
-                    number = context.getString(R.string.private_num);
+                    number = strings.privateNumber;
                 } else if (cnapSpecialCase == PhoneConstants.PRESENTATION_UNKNOWN) {
-                    number = context.getString(R.string.unknown);
+                    number = strings.unknown;
                 }
                 if (DBG) {
                     log("SpecialCnap: number=" + toLogSafePhoneNumber(number)
@@ -2843,13 +2891,7 @@ public class PhoneUtils {
     }
 
     public static String getPresentationString(Context context, int presentation) {
-        String name = context.getString(R.string.unknown);
-        if (presentation == PhoneConstants.PRESENTATION_RESTRICTED) {
-            name = context.getString(R.string.private_num);
-        } else if (presentation == PhoneConstants.PRESENTATION_PAYPHONE) {
-            name = context.getString(R.string.payphone);
-        }
-        return name;
+        return PresentationStrings.get(context).forPresentation(presentation);
     }
 
     public static void sendViewNotificationAsync(Context context, Uri contactUri) {
@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.phone;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Message;
+import android.os.PowerManager;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.PrintWriter;
+import java.util.LinkedHashMap;
+
+/**
+ * The one partial wake lock of the phone process.
+ *
+ * Everybody who needs the processor to stay awake for a while (PhoneGlobals
+ * in the PARTIAL wake state, the CallerInfoCache refresh, the emergency call
+ * sequence, ...) used to have a wake lock of their own, and acquired and
+ * released it with a binder call into the PowerManager each time; during a
+ * call transition several of them would go up and down within a few
+ * milliseconds.  Now they acquire and release this one instead, for a
+ * reason of their own: the underlying wake lock is held as long as any
+ * reason holds it, and is only released {@link #RELEASE_DELAY} after the
+ * last one lets go, so that back-to-back requests don't cost anything.
+ *
+ * How long each reason has held the lock is dumped by the
+ * TelephonyDebugService.
+ */
+/* package */ final class PhoneWakeLock {
+    private static final String LOG_TAG = "PhoneWakeLock";
+    private static final boolean DBG = (PhoneGlobals.DBG_LEVEL >= 2);
+
+    /** How long (in ms) the wake lock is kept after the last reason is gone. */
+    private static final long RELEASE_DELAY = 500;
+
+    private static final int MSG_RELEASE = 1;
+    private static final int MSG_TIMEOUT = 2;
+
+    private static PhoneWakeLock sInstance;
+
+    /** Hold count and accounting for one reason. */
+    private static final class Reason {
+        int count;
+        long heldSince;
+        int holds;
+        long totalTime;
+        long maxTime;
+    }
+
+    private final PowerManager.WakeLock mWakeLock;
+    private final LinkedHashMap<String, Reason> mReasons = new LinkedHashMap<String, Reason>();
+    private int mHeldReasons;
+
+    // Stats, for dump().
+    private int mAcquires;
+    private int mRequests;
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper()) {
+        @Override
+        public void handleMessage(Message msg) {
+            switch (msg.what) {
+                case MSG_RELEASE:
+                    releaseIfUnused();
+                    break;
+                case MSG_TIMEOUT:
+                    Log.w(LOG_TAG, "timed out: " + msg.obj);
+                    releaseAll((String) msg.obj);
+                    break;
+            }
+        }
+    };
+
+    static synchronized PhoneWakeLock getInstance() {
+        if (sInstance == null) {
+            sInstance = new PhoneWakeLock(PhoneGlobals.getInstance());
+        }
+        return sInstance;
+    }
+
+    private PhoneWakeLock(Context context) {
+        PowerManager pm = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+        mWakeLock = pm.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, LOG_TAG);
+        mWakeLock.setReferenceCounted(false);
+    }
+
+    /**
+     * Keeps the processor awake for {@code reason} until a matching
+     * {@link #release}.  Holds are counted per reason.
+     */
+    void acquire(String reason) {
+        acquire(reason, 0);
+    }
+
+    /**
+     * Like {@link #acquire(String)}, but all of {@code reason}'s holds are
+     * dropped after {@code timeout} ms if they haven't been released by then.
+     */
+    synchronized void acquire(String reason, long timeout) {
+        Reason r = mReasons.get(reason);
+        if (r == null) {
+            r = new Reason();
+            mReasons.put(reason, r);
+        }
+        mRequests++;
+        if (r.count++ == 0) {
+            r.heldSince = SystemClock.elapsedRealtime();
+            r.holds++;
+            if (mHeldReasons++ == 0) {
+                mHandler.removeMessages(MSG_RELEASE);
+                if (!mWakeLock.isHeld()) {
+                    if (DBG) log("acquiring for " + reason);
+                    mWakeLock.acquire();
+                    mAcquires++;
+                }
+            }
+        }
+        if (timeout > 0) {
+            mHandler.removeMessages(MSG_TIMEOUT, reason);
+            mHandler.sendMessageDelayed(mHandler.obtainMessage(MSG_TIMEOUT, reason), timeout);
+        }
+    }
+
+    /**
+     * Drops one of {@code reason}'s holds.
+     */
+    synchronized void release(String reason) {
+        Reason r = mReasons.get(reason);
+        if (r == null || r.count == 0) {
+            Log.w(LOG_TAG, "release: not held for " + reason);
+            return;
+        }
+        if (--r.count == 0) {
+            onReasonReleased(reason, r);
+        }
+    }
+
+    /**
+     * Drops all of {@code reason}'s holds, if any.
+     */
+    synchronized void releaseAll(String reason) {
+        Reason r = mReasons.get(reason);
+        if (r != null && r.count > 0) {
+            r.count = 0;
+            onReasonReleased(reason, r);
+        }
+    }
+
+    /**
+     * Returns true if {@code reason} holds the lock.
+     */
+    synchronized boolean isHeld(String reason) {
+        Reason r = mReasons.get(reason);
+        return r != null && r.count > 0;
+    }
+
+    private void onReasonReleased(String reason, Reason r) {
+        mHandler.removeMessages(MSG_TIMEOUT, reason);
+        long time = SystemClock.elapsedRealtime() - r.heldSince;
+        r.totalTime += time;
+        r.maxTime = Math.max(r.maxTime, time);
+        if (DBG) log(reason + " released after " + time + " ms");
+        if (--mHeldReasons == 0) {
+            mHandler.sendEmptyMessageDelayed(MSG_RELEASE, RELEASE_DELAY);
+        }
+    }
+
+    private synchronized void releaseIfUnused() {
+        if (mHeldReasons == 0 && mWakeLock.isHeld()) {
+            if (DBG) log("releasing");
+            mWakeLock.release();
+        }
+    }
+
+    synchronized void dump(PrintWriter pw) {
+        pw.println("PhoneWakeLock: held=" + mWakeLock.isHeld() + ", " + mRequests
+                + " requests, " + mAcquires + " acquires");
+        long now = SystemClock.elapsedRealtime();
+        for (String reason : mReasons.keySet()) {
+            Reason r = mReasons.get(reason);
+            long total = r.totalTime + (r.count > 0 ? now - r.heldSince : 0);
+            pw.println("  " + reason + ": count=" + r.count + ", holds=" + r.holds
+                    + ", total=" + total + " ms, max=" + r.maxTime + " ms");
+        }
+    }
+
+    private static void log(String msg) {
+        Log.d(LOG_TAG, msg);
+    }
+}
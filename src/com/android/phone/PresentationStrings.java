@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.phone;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.util.Log;
+
+import com.android.internal.telephony.CallerInfo;
+import com.android.internal.telephony.PhoneConstants;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.WeakHashMap;
+
+/**
+ * The strings PhoneUtils needs to present a caller: "Unknown", "Private
+ * number", "Pay phone", the "ABSENT NUMBER" values and the special CNAP
+ * strings, plus the compact name last worked out for each CallerInfo.
+ *
+ * The CallCard, the notifications and the conference list ask for the name
+ * of every caller on every update of the call state; that used to load the
+ * same resource strings and compare the number against every special case
+ * each time.  The strings are now loaded once per locale, and as long as a
+ * CallerInfo's name, number and presentation stay the same, its compact
+ * name is reused as is.  A locale change starts over with a new instance.
+ */
+/* package */ final class PresentationStrings {
+    private static final String LOG_TAG = "PresentationStrings";
+    private static final boolean DBG = (PhoneGlobals.DBG_LEVEL >= 2);
+
+    /** Presentation of the special CNAP strings the network sends as "numbers". */
+    private static final HashMap<String, Integer> CNAP_SPECIAL_CASES =
+            new HashMap<String, Integer>();
+    static {
+        for (String s : new String[] { "PRIVATE", "P", "RES" }) {
+            CNAP_SPECIAL_CASES.put(s, PhoneConstants.PRESENTATION_RESTRICTED);
+        }
+        for (String s : new String[] { "UNAVAILABLE", "UNKNOWN", "UNA", "U" }) {
+            CNAP_SPECIAL_CASES.put(s, PhoneConstants.PRESENTATION_UNKNOWN);
+        }
+    }
+
+    private static PresentationStrings sInstance;
+
+    /** The compact name of a CallerInfo, and what it was worked out from. */
+    private static final class CompactName {
+        String name;
+        String phoneNumber;
+        int numberPresentation;
+        String compactName;
+        int newNumberPresentation;
+    }
+
+    private final Locale mLocale;
+
+    final String unknown;
+    final String privateNumber;
+    final String payphone;
+    private final HashSet<String> mAbsentNumbers = new HashSet<String>();
+
+    // Keyed by identity; a CallerInfo lives as long as its connection.
+    private final WeakHashMap<CallerInfo, CompactName> mCompactNames =
+            new WeakHashMap<CallerInfo, CompactName>();
+
+    /**
+     * Returns the strings for the current locale of {@code context}.
+     */
+    static synchronized PresentationStrings get(Context context) {
+        Locale locale = context.getResources().getConfiguration().locale;
+        if (sInstance == null || !sInstance.mLocale.equals(locale)) {
+            if (DBG) log("loading strings for " + locale);
+            sInstance = new PresentationStrings(context.getResources(), locale);
+        }
+        return sInstance;
+    }
+
+    private PresentationStrings(Resources res, Locale locale) {
+        mLocale = locale;
+        unknown = res.getString(R.string.unknown);
+        privateNumber = res.getString(R.string.private_num);
+        payphone = res.getString(R.string.payphone);
+        for (String s : res.getStringArray(R.array.absent_num)) {
+            mAbsentNumbers.add(s);
+        }
+    }
+
+    /**
+     * Returns PRESENTATION_RESTRICTED or PRESENTATION_UNKNOWN if {@code number}
+     * is one of the special CNAP strings, or {@code defaultValue}.
+     */
+    static int getCnapSpecialCase(String number, int defaultValue) {
+        Integer presentation = CNAP_SPECIAL_CASES.get(number);
+        return (presentation != null) ? presentation : defaultValue;
+    }
+
+    /** Returns true if {@code number} is how the network says "no number". */
+    boolean isAbsentNumber(String number) {
+        return mAbsentNumbers.contains(number);
+    }
+
+    /**
+     * Returns the string shown for a caller with the given presentation and
+     * no name or number.
+     */
+    String forPresentation(int presentation) {
+        if (presentation == PhoneConstants.PRESENTATION_RESTRICTED) {
+            return privateNumber;
+        } else if (presentation == PhoneConstants.PRESENTATION_PAYPHONE) {
+            return payphone;
+        }
+        return unknown;
+    }
+
+    /**
+     * Returns the compact name last stored for {@code ci} if its name, number
+     * and presentation haven't changed since, applying the presentation that
+     * came with it, or null.
+     */
+    synchronized String getCompactName(CallerInfo ci) {
+        CompactName entry = mCompactNames.get(ci);
+        if (entry == null || entry.name != ci.name || entry.phoneNumber != ci.phoneNumber
+                || entry.numberPresentation != ci.numberPresentation) {
+            return null;
+        }
+        ci.numberPresentation = entry.newNumberPresentation;
+        return entry.compactName;
+    }
+
+    /**
+     * Stores the compact name worked out for {@code ci}, which had the
+     * given name, number and presentation before.
+     */
+    synchronized void putCompactName(CallerInfo ci, String name, String phoneNumber,
+            int numberPresentation, String compactName) {
+        CompactName entry = mCompactNames.get(ci);
+        if (entry == null) {
+            entry = new CompactName();
+            mCompactNames.put(ci, entry);
+        }
+        entry.name = name;
+        entry.phoneNumber = phoneNumber;
+        entry.numberPresentation = numberPresentation;
+        entry.compactName = compactName;
+        entry.newNumberPresentation = ci.numberPresentation;
+    }
+
+    private static void log(String msg) {
+        Log.d(LOG_TAG, msg);
+    }
+}
@@ -40,6 +40,22 @@ public class Profiler {
     static long sTimeCallScreenOnCreate;
     static long sTimeCallScreenCreated;
 
+    // Totals of the onCreate -> created times, for InCallScreens built from
+    // the InCallViewCache's views ("warm") and inflated from scratch ("cold").
+    static int sWarmCallScreenStarts;
+    static long sWarmCallScreenCreateTime;
+    static int sColdCallScreenStarts;
+    static long sColdCallScreenCreateTime;
+
+    // Stages of the outgoing call sequence: OutgoingCallBroadcaster,
+    // NEW_OUTGOING_CALL broadcast, routing (with or without the
+    // SipCallOptionHandler activity), CallController.placeCall().
+    static long sTimeOutgoingCallStarted;
+    static long sTimeOutgoingCallBroadcastDone;
+    static long sTimeOutgoingCallRouted;
+    static long sTimeOutgoingCallPlaced;
+    static boolean sOutgoingCallRoutedDirectly;
+
     // TODO: Clean up any usage of these times.  (There's no "incoming call
     // panel" in the Phone UI any more; incoming calls just go straight to the
     // regular in-call UI.)
@@ -74,20 +90,90 @@ public class Profiler {
         }
     }
 
-    static void callScreenCreated() {
+    /**
+     * @param warmStart true if the InCallScreen used the views prepared by
+     *        the InCallViewCache rather than inflating its own
+     */
+    static void callScreenCreated(boolean warmStart) {
         if (PROFILE) {
             sTimeCallScreenCreated = SystemClock.uptimeMillis();
-            dumpCallScreenStat();
+            long createTime = sTimeCallScreenCreated - sTimeCallScreenOnCreate;
+            if (warmStart) {
+                sWarmCallScreenStarts++;
+                sWarmCallScreenCreateTime += createTime;
+            } else {
+                sColdCallScreenStarts++;
+                sColdCallScreenCreateTime += createTime;
+            }
+            dumpCallScreenStat(warmStart);
         }
     }
 
-    private static void dumpCallScreenStat() {
+    private static void dumpCallScreenStat(boolean warmStart) {
         if (PROFILE) {
-            log(">>> call screen perf stats <<<");
+            log(">>> call screen perf stats (" + (warmStart ? "warm" : "cold") + " start) <<<");
             log(">>> request -> onCreate = " +
                     (sTimeCallScreenOnCreate - sTimeCallScreenRequested));
             log(">>> onCreate -> created = " +
                     (sTimeCallScreenCreated - sTimeCallScreenOnCreate));
+            if (sWarmCallScreenStarts > 0) {
+                log(">>> warm starts: " + sWarmCallScreenStarts + ", average onCreate -> created = "
+                        + (sWarmCallScreenCreateTime / sWarmCallScreenStarts));
+            }
+            if (sColdCallScreenStarts > 0) {
+                log(">>> cold starts: " + sColdCallScreenStarts + ", average onCreate -> created = "
+                        + (sColdCallScreenCreateTime / sColdCallScreenStarts));
+            }
+        }
+    }
+
+    static void outgoingCallStarted() {
+        if (PROFILE) {
+            sTimeOutgoingCallStarted = SystemClock.uptimeMillis();
+            sTimeOutgoingCallBroadcastDone = 0;
+        }
+    }
+
+    static void outgoingCallBroadcastDone() {
+        if (PROFILE) {
+            sTimeOutgoingCallBroadcastDone = SystemClock.uptimeMillis();
+        }
+    }
+
+    /**
+     * @param direct true if the call was placed without going through the
+     *        SipCallOptionHandler activity
+     */
+    static void outgoingCallRouted(boolean direct) {
+        if (PROFILE) {
+            sTimeOutgoingCallRouted = SystemClock.uptimeMillis();
+            sOutgoingCallRoutedDirectly = direct;
+        }
+    }
+
+    static void outgoingCallPlaced() {
+        if (PROFILE) {
+            sTimeOutgoingCallPlaced = SystemClock.uptimeMillis();
+            dumpOutgoingCallStat();
+        }
+    }
+
+    private static void dumpOutgoingCallStat() {
+        if (PROFILE) {
+            log(">>> outgoing call perf stats ("
+                    + (sOutgoingCallRoutedDirectly ? "direct" : "via SipCallOptionHandler")
+                    + ") <<<");
+            // Emergency and SIP calls don't go through the broadcast.
+            if (sTimeOutgoingCallBroadcastDone != 0) {
+                log(">>> start -> broadcast done = " +
+                        (sTimeOutgoingCallBroadcastDone - sTimeOutgoingCallStarted));
+                log(">>> broadcast done -> routed = " +
+                        (sTimeOutgoingCallRouted - sTimeOutgoingCallBroadcastDone));
+            }
+            log(">>> routed -> placed = " +
+                    (sTimeOutgoingCallPlaced - sTimeOutgoingCallRouted));
+            log(">>> start -> placed = " +
+                    (sTimeOutgoingCallPlaced - sTimeOutgoingCallStarted));
         }
     }
 
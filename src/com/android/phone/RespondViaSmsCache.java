@@ -0,0 +1,281 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.phone;
+
+import android.content.BroadcastReceiver;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.SharedPreferences;
+import android.content.pm.PackageManager;
+import android.content.pm.ResolveInfo;
+import android.content.pm.ServiceInfo;
+import android.content.res.Resources;
+import android.graphics.drawable.Drawable;
+import android.net.Uri;
+import android.telephony.TelephonyManager;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Process-wide cache of what the "Respond via Message" feature needs while
+ * the phone is ringing: whether anything handles the respond-via-message
+ * intent at all, the services allowed to send the message for us along with
+ * their labels and icons, and the canned responses.
+ *
+ * RespondViaSmsManager.allowRespondViaSmsForCall() runs on every update of
+ * the incoming call UI, and used to ask the PackageManager each time; the
+ * package selection dialog queried the services again and loaded their
+ * labels and icons one by one.  All of that is now loaded on a background
+ * thread when the phone process starts, and again whenever a package is
+ * added, removed or changed or the locale changes.  The canned responses are
+ * reloaded when RespondViaSmsManager.Settings changes them.
+ *
+ * If something is asked for before the first load has finished, it's loaded
+ * right away on the calling thread.
+ */
+/* package */ final class RespondViaSmsCache {
+    private static final String LOG_TAG = "RespondViaSmsCache";
+    private static final boolean DBG = (PhoneGlobals.DBG_LEVEL >= 2);
+
+    private static final String PERMISSION_SEND_RESPOND_VIA_MESSAGE =
+            "android.permission.SEND_RESPOND_VIA_MESSAGE";
+
+    private static RespondViaSmsCache sInstance;
+
+    /** A service allowed to send "Respond via Message" messages. */
+    static final class Entry {
+        final ComponentName component;
+        final CharSequence label;
+        private final Drawable.ConstantState mIconState;
+        private final Drawable mIcon;
+
+        Entry(ComponentName component, CharSequence label, Drawable icon) {
+            this.component = component;
+            this.label = label;
+            // Views showing the icon hold on to the Drawable and vice versa,
+            // so we keep its constant state and hand out fresh Drawables.
+            mIconState = (icon != null) ? icon.getConstantState() : null;
+            mIcon = (mIconState == null) ? icon : null;
+        }
+
+        Drawable newIcon(Resources res) {
+            return (mIconState != null) ? mIconState.newDrawable(res) : mIcon;
+        }
+    }
+
+    /** Everything we got from the PackageManager in one go. */
+    private static final class Handlers {
+        final boolean hasAny;
+        final List<Entry> permitted;
+
+        Handlers(boolean hasAny, List<Entry> permitted) {
+            this.hasAny = hasAny;
+            this.permitted = permitted;
+        }
+    }
+
+    private final Context mContext;
+    private final SharedPreferences mPrefs;
+
+    private Handlers mHandlers;
+    private String[] mCannedResponses;
+    // Bumped by every invalidation, so that a load that was started earlier
+    // doesn't replace what the invalidation dropped.
+    private int mGeneration;
+    private boolean mLoading;
+
+    private final BroadcastReceiver mReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            if (DBG) log("onReceive: " + intent.getAction() + ", dropping cache");
+            synchronized (RespondViaSmsCache.this) {
+                mGeneration++;
+                mHandlers = null;
+                mCannedResponses = null;
+            }
+            preload();
+        }
+    };
+
+    private final SharedPreferences.OnSharedPreferenceChangeListener mPrefsListener =
+            new SharedPreferences.OnSharedPreferenceChangeListener() {
+        @Override
+        public void onSharedPreferenceChanged(SharedPreferences prefs, String key) {
+            synchronized (RespondViaSmsCache.this) {
+                mGeneration++;
+                mCannedResponses = null;
+            }
+        }
+    };
+
+    static synchronized RespondViaSmsCache getInstance() {
+        if (sInstance == null) {
+            sInstance = new RespondViaSmsCache(PhoneGlobals.getInstance());
+        }
+        return sInstance;
+    }
+
+    private RespondViaSmsCache(Context context) {
+        mContext = context;
+        mPrefs = context.getSharedPreferences(
+                RespondViaSmsManager.SHARED_PREFERENCES_NAME, Context.MODE_PRIVATE);
+        mPrefs.registerOnSharedPreferenceChangeListener(mPrefsListener);
+
+        IntentFilter packageFilter = new IntentFilter();
+        packageFilter.addAction(Intent.ACTION_PACKAGE_ADDED);
+        packageFilter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        packageFilter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+        packageFilter.addDataScheme("package");
+        context.registerReceiver(mReceiver, packageFilter);
+        context.registerReceiver(mReceiver, new IntentFilter(Intent.ACTION_LOCALE_CHANGED));
+    }
+
+    /**
+     * Loads whatever isn't loaded yet on a background thread.
+     */
+    void preload() {
+        synchronized (this) {
+            if (mLoading || (mHandlers != null && mCannedResponses != null)) {
+                return;
+            }
+            mLoading = true;
+        }
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                getHandlers();
+                getCannedResponses();
+                synchronized (RespondViaSmsCache.this) {
+                    mLoading = false;
+                }
+            }
+        }, LOG_TAG).start();
+    }
+
+    /**
+     * Returns true if anything at all handles the respond-via-message
+     * intent.
+     */
+    boolean hasHandler() {
+        return getHandlers().hasAny;
+    }
+
+    /**
+     * Returns the services that handle the respond-via-message intent AND
+     * require the permission to do so.
+     */
+    List<Entry> getPermittedHandlers() {
+        return getHandlers().permitted;
+    }
+
+    /**
+     * Returns the entry for {@code component} if it's one of
+     * {@link #getPermittedHandlers()}, or null.
+     */
+    Entry getPermittedHandler(ComponentName component) {
+        for (Entry entry : getHandlers().permitted) {
+            if (entry.component.equals(component)) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the (customizable) canned responses, from SharedPreferences or
+     * from the defaults if the user has never actually brought up the
+     * Settings UI.
+     *
+     * @see RespondViaSmsManager.Settings
+     */
+    String[] getCannedResponses() {
+        int generation;
+        synchronized (this) {
+            if (mCannedResponses != null) {
+                return mCannedResponses;
+            }
+            generation = mGeneration;
+        }
+        String[] responses = RespondViaSmsManager.loadCannedResponses(mPrefs,
+                mContext.getResources());
+        synchronized (this) {
+            if (generation == mGeneration) {
+                mCannedResponses = responses;
+            }
+        }
+        return responses;
+    }
+
+    private Handlers getHandlers() {
+        int generation;
+        synchronized (this) {
+            if (mHandlers != null) {
+                return mHandlers;
+            }
+            generation = mGeneration;
+        }
+        Handlers handlers = loadHandlers();
+        synchronized (this) {
+            if (generation == mGeneration) {
+                mHandlers = handlers;
+            }
+        }
+        return handlers;
+    }
+
+    private Handlers loadHandlers() {
+        if (DBG) log("loadHandlers()...");
+        final PackageManager pm = mContext.getPackageManager();
+        final Intent intent = new Intent(TelephonyManager.ACTION_RESPOND_VIA_MESSAGE,
+                Uri.fromParts(Constants.SCHEME_SMSTO, "", null));
+        final List<ResolveInfo> infos = pm.queryIntentServices(intent, 0);
+
+        List<Entry> permitted = new ArrayList<Entry>();
+        for (ResolveInfo resolveInfo : infos) {
+            final ServiceInfo serviceInfo = resolveInfo.serviceInfo;
+            if (serviceInfo == null) {
+                Log.w(LOG_TAG, "Ignore package without proper service.");
+                continue;
+            }
+
+            // A Service is valid only if it requires the permission
+            // PERMISSION_SEND_RESPOND_VIA_MESSAGE
+            if (!PERMISSION_SEND_RESPOND_VIA_MESSAGE.equals(serviceInfo.permission)) {
+                continue;
+            }
+            final CharSequence label = pm.getApplicationLabel(serviceInfo.applicationInfo);
+            Drawable icon = pm.getApplicationIcon(serviceInfo.applicationInfo);
+            if (icon == null) {
+                icon = pm.getDefaultActivityIcon();
+            }
+            permitted.add(new Entry(new ComponentName(serviceInfo.packageName, serviceInfo.name),
+                    label, icon));
+        }
+        if (DBG) log("loadHandlers: " + infos.size() + " handlers, " + permitted.size()
+                + " permitted");
+        return new Handlers(!infos.isEmpty(), Collections.unmodifiableList(permitted));
+    }
+
+    private static void log(String msg) {
+        Log.d(LOG_TAG, msg);
+    }
+}
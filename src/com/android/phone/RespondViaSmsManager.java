@@ -25,14 +25,7 @@ import android.content.Context;
 import android.content.DialogInterface;
 import android.content.Intent;
 import android.content.SharedPreferences;
-import android.content.pm.ApplicationInfo;
-import android.content.pm.PackageInfo;
-import android.content.pm.PackageManager;
-import android.content.pm.PackageManager;
-import android.content.pm.ResolveInfo;
-import android.content.pm.ServiceInfo;
 import android.content.res.Resources;
-import android.graphics.drawable.Drawable;
 import android.net.Uri;
 import android.os.Bundle;
 import android.os.SystemProperties;
@@ -61,9 +54,7 @@ import android.widget.Toast;
 import com.android.internal.telephony.Call;
 import com.android.internal.telephony.Connection;
 import com.android.internal.telephony.PhoneConstants;
-import com.google.android.collect.Lists;
 
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
@@ -79,9 +70,6 @@ public class RespondViaSmsManager {
     // Do not check in with VDBG = true, since that may write PII to the system log.
     private static final boolean VDBG = false;
 
-    private static final String PERMISSION_SEND_RESPOND_VIA_MESSAGE =
-            "android.permission.SEND_RESPOND_VIA_MESSAGE";
-
     private int mIconSize = -1;
 
     /**
@@ -113,7 +101,7 @@ public class RespondViaSmsManager {
     private String[] mCannedResponses;
 
     /** SharedPreferences file name for our persistent settings. */
-    private static final String SHARED_PREFERENCES_NAME = "respond_via_sms_prefs";
+    /* package */ static final String SHARED_PREFERENCES_NAME = "respond_via_sms_prefs";
 
     // Preference keys for the 4 "canned responses"; see RespondViaSmsManager$Settings.
     // Since (for now at least) the number of messages is fixed at 4, and since
@@ -137,9 +125,9 @@ public class RespondViaSmsManager {
         mInCallScreen = inCallScreen;
 
         if (mInCallScreen != null) {
-            // Prefetch shared preferences to make the first canned response lookup faster
-            // (and to prevent StrictMode violation)
-            mInCallScreen.getSharedPreferences(SHARED_PREFERENCES_NAME, Context.MODE_PRIVATE);
+            // Make sure the canned responses and the handlers are loaded
+            // by the time the phone rings (normally they already are).
+            RespondViaSmsCache.getInstance().preload();
         }
     }
 
@@ -161,7 +149,7 @@ public class RespondViaSmsManager {
         ListView lv = new ListView(mInCallScreen);
 
         // Refresh the array of "canned responses".
-        mCannedResponses = loadCannedResponses();
+        mCannedResponses = RespondViaSmsCache.getInstance().getCannedResponses();
 
         // Build the list: start with the canned responses, but manually add
         // the write-your-own option as the last choice.
@@ -324,7 +312,7 @@ public class RespondViaSmsManager {
 
     private void sendTextToDefaultActivity(String phoneNumber, String message) {
         if (DBG) log("sendTextToDefaultActivity()...");
-        final PackageManager packageManager = mInCallScreen.getPackageManager();
+        final RespondViaSmsCache cache = RespondViaSmsCache.getInstance();
 
         // Check to see if the default component to receive this intent is already saved
         // and check to see if it still has the corrent permissions.
@@ -335,72 +323,34 @@ public class RespondViaSmsManager {
             if (DBG) log("Default package was found." + flattenedName);
 
             final ComponentName componentName = ComponentName.unflattenFromString(flattenedName);
-            ServiceInfo serviceInfo = null;
-            try {
-                serviceInfo = packageManager.getServiceInfo(componentName, 0);
-            } catch (PackageManager.NameNotFoundException e) {
-                Log.w(TAG, "Default service does not have permission.");
-            }
-
-            if (serviceInfo != null &&
-                    PERMISSION_SEND_RESPOND_VIA_MESSAGE.equals(serviceInfo.permission)) {
+            if (componentName != null && cache.getPermittedHandler(componentName) != null) {
                 sendTextAndExit(phoneNumber, message, componentName, false);
                 return;
             } else {
+                Log.w(TAG, "Default service does not have permission.");
                 SharedPreferences.Editor editor = prefs.edit();
                 editor.remove(KEY_INSTANT_TEXT_DEFAULT_COMPONENT);
                 editor.apply();
             }
         }
 
-        final ArrayList<ComponentName> componentsWithPermission =
-            getPackagesWithInstantTextPermission();
+        final List<RespondViaSmsCache.Entry> componentsWithPermission =
+                cache.getPermittedHandlers();
 
         final int size = componentsWithPermission.size();
         if (size == 0) {
             Log.e(TAG, "No appropriate package receiving the Intent. Don't send anything");
             onPostMessageSent();
         } else if (size == 1) {
-            sendTextAndExit(phoneNumber, message, componentsWithPermission.get(0), false);
+            sendTextAndExit(phoneNumber, message, componentsWithPermission.get(0).component,
+                    false);
         } else {
             showPackageSelectionDialog(phoneNumber, message, componentsWithPermission);
         }
     }
 
-    /**
-     * Queries the System to determine what packages contain services that can handle the instant
-     * text response Action AND have permissions to do so.
-     */
-    private ArrayList<ComponentName> getPackagesWithInstantTextPermission() {
-        PackageManager packageManager = mInCallScreen.getPackageManager();
-
-        ArrayList<ComponentName> componentsWithPermission = Lists.newArrayList();
-
-        // Get list of all services set up to handle the Instant Text intent.
-        final List<ResolveInfo> infos = packageManager.queryIntentServices(
-                getInstantTextIntent("", null, null), 0);
-
-        // Collect all the valid services
-        for (ResolveInfo resolveInfo : infos) {
-            final ServiceInfo serviceInfo = resolveInfo.serviceInfo;
-            if (serviceInfo == null) {
-                Log.w(TAG, "Ignore package without proper service.");
-                continue;
-            }
-
-            // A Service is valid only if it requires the permission
-            // PERMISSION_SEND_RESPOND_VIA_MESSAGE
-            if (PERMISSION_SEND_RESPOND_VIA_MESSAGE.equals(serviceInfo.permission)) {
-                componentsWithPermission.add(new ComponentName(serviceInfo.packageName,
-                    serviceInfo.name));
-            }
-        }
-
-        return componentsWithPermission;
-    }
-
     private void showPackageSelectionDialog(String phoneNumber, String message,
-            List<ComponentName> components) {
+            List<RespondViaSmsCache.Entry> components) {
         if (DBG) log("showPackageSelectionDialog()...");
 
         dismissPopup();
@@ -433,9 +383,10 @@ public class RespondViaSmsManager {
 
     private class PackageSelectionAdapter extends BaseAdapter {
         private final LayoutInflater mInflater;
-        private final List<ComponentName> mComponents;
+        private final List<RespondViaSmsCache.Entry> mComponents;
 
-        public PackageSelectionAdapter(Context context, List<ComponentName> components) {
+        public PackageSelectionAdapter(Context context,
+                List<RespondViaSmsCache.Entry> components) {
             mInflater = (LayoutInflater)context.getSystemService(Context.LAYOUT_INFLATER_SERVICE);
             mComponents = components;
         }
@@ -462,9 +413,7 @@ public class RespondViaSmsManager {
                         com.android.internal.R.layout.resolve_list_item, parent, false);
             }
 
-            final ComponentName component = mComponents.get(position);
-            final String packageName = component.getPackageName();
-            final PackageManager packageManager = mInCallScreen.getPackageManager();
+            final RespondViaSmsCache.Entry entry = mComponents.get(position);
 
             // Set the application label
             final TextView text = (TextView) convertView.findViewById(
@@ -475,28 +424,13 @@ public class RespondViaSmsManager {
             // Reset any previous values
             text.setText("");
             text2.setVisibility(View.GONE);
-            try {
-                final ApplicationInfo appInfo = packageManager.getApplicationInfo(packageName, 0);
-                final CharSequence label = packageManager.getApplicationLabel(appInfo);
-                if (label != null) {
-                    text.setText(label);
-                }
-            } catch (PackageManager.NameNotFoundException e) {
-                Log.w(TAG, "Failed to load app label because package was not found.");
+            if (entry.label != null) {
+                text.setText(entry.label);
             }
 
             // Set the application icon
             final ImageView icon = (ImageView) convertView.findViewById(android.R.id.icon);
-            Drawable drawable = null;
-            try {
-                drawable = mInCallScreen.getPackageManager().getApplicationIcon(packageName);
-            } catch (PackageManager.NameNotFoundException e) {
-                Log.w(TAG, "Failed to load icon because it wasn't found.");
-            }
-            if (drawable == null) {
-                drawable = mInCallScreen.getPackageManager().getDefaultActivityIcon();
-            }
-            icon.setImageDrawable(drawable);
+            icon.setImageDrawable(entry.newIcon(mInCallScreen.getResources()));
             ViewGroup.LayoutParams lp = (ViewGroup.LayoutParams) icon.getLayoutParams();
             lp.width = lp.height = getIconSize();
 
@@ -510,11 +444,11 @@ public class RespondViaSmsManager {
         /** Phone number to send the SMS to. */
         final private String mPhoneNumber;
         final private String mMessage;
-        final private List<ComponentName> mComponents;
+        final private List<RespondViaSmsCache.Entry> mComponents;
         private boolean mMakeDefault = false;
 
         public PackageClickListener(String phoneNumber, String message,
-                List<ComponentName> components) {
+                List<RespondViaSmsCache.Entry> components) {
             mPhoneNumber = phoneNumber;
             mMessage = message;
             mComponents = components;
@@ -522,7 +456,7 @@ public class RespondViaSmsManager {
 
         @Override
         public void onClick(DialogInterface dialog, int which) {
-            ComponentName component = mComponents.get(which);
+            ComponentName component = mComponents.get(which).component;
             sendTextAndExit(mPhoneNumber, mMessage, component, mMakeDefault);
         }
 
@@ -742,17 +676,14 @@ public class RespondViaSmsManager {
      * the Settings UI.
      *
      * This method does disk I/O (reading the SharedPreferences file)
-     * so don't call it from the main thread.
+     * so don't call it from the main thread; RespondViaSmsCache calls it
+     * ahead of time.
      *
      * @see RespondViaSmsManager.Settings
      */
-    private String[] loadCannedResponses() {
+    /* package */ static String[] loadCannedResponses(SharedPreferences prefs, Resources res) {
         if (DBG) log("loadCannedResponses()...");
 
-        SharedPreferences prefs = mInCallScreen.getSharedPreferences(SHARED_PREFERENCES_NAME,
-                Context.MODE_PRIVATE);
-        final Resources res = mInCallScreen.getResources();
-
         String[] responses = new String[NUM_CANNED_RESPONSES];
 
         // Note the default values here must agree with the corresponding
@@ -787,7 +718,7 @@ public class RespondViaSmsManager {
      * networks at least), so we still enable this feature even though
      * SMSes to that number will silently fail.
      */
-    public static boolean allowRespondViaSmsForCall(Context context, Call ringingCall) {
+    public static boolean allowRespondViaSmsForCall(Call ringingCall) {
         if (DBG) log("allowRespondViaSmsForCall(" + ringingCall + ")...");
 
         // First some basic sanity checks:
@@ -842,8 +773,7 @@ public class RespondViaSmsManager {
         }
 
         // Allow the feature only when there's a destination for it.
-        if (context.getPackageManager().resolveService(getInstantTextIntent(number, null, null) , 0)
-                == null) {
+        if (!RespondViaSmsCache.getInstance().hasHandler()) {
             return false;
         }
 
@@ -476,7 +476,8 @@ public class SimContacts extends ADNList {
                 Log.e(LOG_TAG, "deleteOneSimContact: uri is null, return!!!");
                 return;
             }
-            mQueryHandler.startDelete(DELETE_TOKEN, null, uri, "tag=" + name
+            mPhoneBookCache.applyDelete(uri, mCursor.getString(NAME_COLUMN), phoneNumber);
+            mQueryHandler.startDelete(DELETE_TOKEN, uri, uri, "tag=" + name
                         + " AND number=" + phoneNumber, null);
             displayProgress(true);
         } else {
@@ -539,7 +540,8 @@ public class SimContacts extends ADNList {
             String number = intent.getStringExtra("NEWPHONE");
             values.put("tag", name);
             values.put("number", number);
-            mQueryHandler.startInsert(INSERT_TOKEN, null, uri, values);
+            mPhoneBookCache.applyInsert(uri, name, number);
+            mQueryHandler.startInsert(INSERT_TOKEN, uri, uri, values);
             displayProgress(true);
         } else if (resultCode == RESULT_OK && requestCode == 2) {
             String oldName = intent.getStringExtra("NAME");
@@ -550,7 +552,8 @@ public class SimContacts extends ADNList {
             values.put("number", oldNumber);
             values.put("newTag", newName);
             values.put("newNumber", newNumber);
-            mQueryHandler.startUpdate(UPDATE_TOKEN, null, uri, values, null, null);
+            mPhoneBookCache.applyUpdate(uri, oldName, oldNumber, newName, newNumber);
+            mQueryHandler.startUpdate(UPDATE_TOKEN, uri, uri, values, null, null);
             displayProgress(true);
         }
     }
@@ -607,6 +610,9 @@ public class SimContacts extends ADNList {
         public void handleMessage(Message msg) {
             switch(msg.what) {
                 case EVENT_CONTACTS_DELETED:
+                    // The delete-all pass may have stopped part way through,
+                    // so read back whatever is left on the SIM.
+                    mPhoneBookCache.invalidate(getUri());
                     reQuery();
                     int result = (Integer)msg.obj;
                     if (result == 1) {
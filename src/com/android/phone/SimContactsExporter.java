@@ -0,0 +1,293 @@
+/* Copyright (c) 2013 The Linux Foundation. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials provided
+ *       with the distribution.
+ *     * Neither the name of The Linux Foundation, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived
+ *       from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NON-INFRINGEMENT
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR
+ * BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN
+ * IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package com.android.phone;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.RemoteException;
+import android.os.ServiceManager;
+import android.telephony.MSimTelephonyManager;
+import android.telephony.PhoneNumberUtils;
+import android.text.TextUtils;
+import android.util.Log;
+
+import com.android.internal.telephony.EncodeException;
+import com.android.internal.telephony.GsmAlphabet;
+import com.android.internal.telephony.IIccPhoneBook;
+import com.android.internal.telephony.IccConstants;
+import com.android.internal.telephony.msim.IIccPhoneBookMSim;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Writes a batch of phone book entries into the SIM ADN file.
+ *
+ * The current ADN list and the ADN capacity are read once before anything
+ * is written.  Entries whose normalized name and number are already on the
+ * SIM, or appear earlier in the same batch, are skipped; since the SIM only
+ * keeps as much of a name as fits in its alpha tag, names are cut to that
+ * length before they are compared.  The remaining entries are inserted one
+ * after the other (IccPhoneBookInterfaceManager handles one ADN update at a
+ * time anyway).  Once the SIM runs out of free ADN records the remaining
+ * entries are reported as {@link #RESULT_SIM_FULL} without touching the
+ * modem.
+ */
+class SimContactsExporter {
+    private static final String LOG_TAG = "SimContactsExporter";
+    private static final boolean DBG = false;
+
+    /** Bytes of an ADN record that aren't the alpha tag (TS 51.011 10.5.1). */
+    private static final int ADN_FOOTER_SIZE = 14;
+
+    private static final String[] ADN_PROJECTION = new String[] {
+        "name",
+        "number"
+    };
+
+    // Per-entry export results.
+    static final int RESULT_PENDING = 0;
+    static final int RESULT_EXPORTED = 1;
+    static final int RESULT_ALREADY_ON_SIM = 2;
+    static final int RESULT_DUPLICATE = 3;
+    static final int RESULT_SIM_FULL = 4;
+    static final int RESULT_FAILED = 5;
+
+    /**
+     * One phone book row to be exported, along with its export result.
+     */
+    static class Entry {
+        final String name;
+        final String number;
+        int result = RESULT_PENDING;
+
+        Entry(String name, String number) {
+            this.name = name;
+            this.number = number;
+        }
+    }
+
+    /**
+     * Summary of a finished export.
+     */
+    static class Summary {
+        final List<Entry> entries;
+        int exported;
+        int alreadyOnSim;
+        int duplicates;
+        int simFull;
+        int failed;
+        // Entries the export didn't get to because it was interrupted.
+        int notExported;
+
+        Summary(List<Entry> entries) {
+            this.entries = entries;
+        }
+
+        boolean isSuccess() {
+            return !entries.isEmpty() && failed == 0 && simFull == 0 && notExported == 0;
+        }
+    }
+
+    private final ContentResolver mResolver;
+    private final Uri mAdnUri;
+    private final int mSubscription;
+
+    SimContactsExporter(ContentResolver resolver, Uri adnUri, int subscription) {
+        mResolver = resolver;
+        mAdnUri = adnUri;
+        mSubscription = subscription;
+    }
+
+    /**
+     * Exports the given entries and returns once all of them have a result,
+     * or the calling thread is interrupted.  Must not be called on the UI
+     * thread.
+     */
+    Summary export(List<Entry> entries) {
+        HashSet<String> onSim = new HashSet<String>();
+        int usedRecords = loadAdnKeys(onSim);
+        int[] sizes = getAdnRecordsSize();
+        // sizes[0] is the record size, sizes[1] the total size in bytes and
+        // sizes[2] the number of records.
+        int capacity = (sizes != null && sizes[2] > 0) ? sizes[2] : -1;
+        int maxTagLength = (sizes != null) ? sizes[0] - ADN_FOOTER_SIZE : -1;
+        if (DBG) log("export: " + entries.size() + " entries, " + usedRecords
+                + " used of " + capacity + " ADN records, tag length " + maxTagLength);
+
+        // Diff against what is already on the SIM, and collapse duplicates
+        // within the batch itself.
+        HashSet<String> inBatch = new HashSet<String>();
+        List<Entry> pending = new ArrayList<Entry>();
+        for (Entry entry : entries) {
+            String key = makeKey(truncateToTagLength(entry.name, maxTagLength), entry.number);
+            if (onSim.contains(key)) {
+                entry.result = RESULT_ALREADY_ON_SIM;
+            } else if (!inBatch.add(key)) {
+                entry.result = RESULT_DUPLICATE;
+            } else {
+                pending.add(entry);
+            }
+        }
+
+        int freeRecords = (capacity < 0) ? Integer.MAX_VALUE : capacity - usedRecords;
+        for (Entry entry : pending) {
+            if (Thread.currentThread().isInterrupted()) {
+                Log.w(LOG_TAG, "Interrupted, not exporting the remaining entries");
+                break;
+            }
+            if (freeRecords <= 0) {
+                entry.result = RESULT_SIM_FULL;
+                continue;
+            }
+            freeRecords--;
+            insert(entry);
+        }
+
+        Summary summary = new Summary(entries);
+        for (Entry entry : entries) {
+            switch (entry.result) {
+                case RESULT_EXPORTED: summary.exported++; break;
+                case RESULT_ALREADY_ON_SIM: summary.alreadyOnSim++; break;
+                case RESULT_DUPLICATE: summary.duplicates++; break;
+                case RESULT_SIM_FULL: summary.simFull++; break;
+                case RESULT_PENDING: summary.notExported++; break;
+                default: summary.failed++; break;
+            }
+        }
+        return summary;
+    }
+
+    private void insert(Entry entry) {
+        ContentValues values = new ContentValues();
+        values.put("tag", entry.name);
+        values.put("number", entry.number);
+        if (DBG) log("insert: name=" + entry.name + " number=" + entry.number);
+        Uri result = mResolver.insert(mAdnUri, values);
+        if (result != null) {
+            entry.result = RESULT_EXPORTED;
+        } else {
+            Log.e(LOG_TAG, "Failed to export contact to SIM for name : " + entry.name
+                    + " number : " + entry.number);
+            entry.result = RESULT_FAILED;
+        }
+    }
+
+    /**
+     * Reads the ADN records currently on the SIM into {@code keys}.
+     *
+     * @return the number of records on the SIM
+     */
+    private int loadAdnKeys(HashSet<String> keys) {
+        Cursor cursor = mResolver.query(mAdnUri, ADN_PROJECTION, null, null, null);
+        if (cursor == null) {
+            return 0;
+        }
+        try {
+            while (cursor.moveToNext()) {
+                keys.add(makeKey(cursor.getString(0), cursor.getString(1)));
+            }
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Returns the ADN record size, total size and record count of the SIM, or
+     * null if they can't be determined.
+     */
+    private int[] getAdnRecordsSize() {
+        int[] sizes = null;
+        try {
+            if (MSimTelephonyManager.getDefault().isMultiSimEnabled()) {
+                IIccPhoneBookMSim iccIpb = IIccPhoneBookMSim.Stub.asInterface(
+                        ServiceManager.getService("simphonebook_msim"));
+                if (iccIpb != null) {
+                    sizes = iccIpb.getAdnRecordsSize(IccConstants.EF_ADN, mSubscription);
+                }
+            } else {
+                IIccPhoneBook iccIpb = IIccPhoneBook.Stub.asInterface(
+                        ServiceManager.getService("simphonebook"));
+                if (iccIpb != null) {
+                    sizes = iccIpb.getAdnRecordsSize(IccConstants.EF_ADN);
+                }
+            }
+        } catch (RemoteException e) {
+            Log.w(LOG_TAG, "getAdnCapacity: " + e);
+        } catch (SecurityException e) {
+            Log.w(LOG_TAG, "getAdnCapacity: " + e);
+        }
+        if (sizes == null || sizes.length < 3) {
+            return null;
+        }
+        return sizes;
+    }
+
+    /**
+     * Returns as much of {@code name} as the SIM keeps in an alpha tag of
+     * {@code maxBytes} bytes, or {@code name} if the length isn't known.
+     */
+    private static String truncateToTagLength(String name, int maxBytes) {
+        if (name == null || maxBytes <= 0) {
+            return name;
+        }
+        try {
+            // GSM default alphabet: one byte per character, two for the
+            // characters of the extension table.
+            int bytes = 0;
+            for (int i = 0; i < name.length(); i++) {
+                bytes += GsmAlphabet.countGsmSeptets(name.charAt(i), true);
+                if (bytes > maxBytes) {
+                    return name.substring(0, i);
+                }
+            }
+            return name;
+        } catch (EncodeException e) {
+            // UCS2: a 0x80 byte followed by two bytes per character.
+            int maxChars = (maxBytes - 1) / 2;
+            return name.length() > maxChars ? name.substring(0, maxChars) : name;
+        }
+    }
+
+    private static String makeKey(String name, String number) {
+        String normalizedName = name == null ? "" : name.trim();
+        String normalizedNumber = TextUtils.isEmpty(number) ? ""
+                : PhoneNumberUtils.normalizeNumber(number);
+        return normalizedName + '\n' + normalizedNumber;
+    }
+
+    private static void log(String msg) {
+        Log.d(LOG_TAG, msg);
+    }
+}
@@ -0,0 +1,285 @@
+/*
+ * Copyright (c) 2013 The Linux Foundation. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials provided
+ *       with the distribution.
+ *     * Neither the name of The Linux Foundation, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived
+ *       from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NON-INFRINGEMENT
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR
+ * BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN
+ * IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.android.phone;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.telephony.PhoneNumberUtils;
+import android.text.TextUtils;
+import android.util.Log;
+
+import com.android.internal.telephony.TelephonyIntents;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+
+import static com.android.internal.telephony.MSimConstants.SUBSCRIPTION_KEY;
+
+/**
+ * In-process cache of the SIM phone books (ADN and FDN) shown by {@link ADNList}
+ * and its subclasses.
+ *
+ * Reading a whole phone book over the RIL is slow, so the result of the first
+ * query for a given icc / iccmsim URI is kept here and handed back to later
+ * queries.  Inserts, updates and deletes are applied to the cached copy as
+ * soon as they are issued; if the provider later reports that the operation
+ * failed, the entry is dropped so the next query goes back to the SIM.  All
+ * entries belonging to a subscription are dropped whenever that SIM changes
+ * state (removal, refresh, reload).
+ *
+ * All methods must be called from the main thread.
+ */
+public class SimPhoneBookCache {
+    private static final String LOG_TAG = "SimPhoneBookCache";
+    private static final boolean DBG = false;
+
+    /** Subscription value for URIs that span every SIM (e.g. "adn_all"). */
+    private static final int ALL_SUBSCRIPTIONS = -1;
+
+    private static final String[] COLUMN_NAMES = new String[] {
+        "name",
+        "number",
+        "emails",
+        "_id"
+    };
+
+    private static final int NAME_COLUMN = 0;
+    private static final int NUMBER_COLUMN = 1;
+    private static final int EMAILS_COLUMN = 2;
+    private static final int ID_COLUMN = 3;
+
+    private static SimPhoneBookCache sInstance;
+
+    /** Cached rows, keyed by phone book URI. */
+    private final HashMap<Uri, ArrayList<Object[]>> mPhoneBooks =
+            new HashMap<Uri, ArrayList<Object[]>>();
+
+    private final BroadcastReceiver mReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            if (TelephonyIntents.ACTION_SIM_STATE_CHANGED.equals(intent.getAction())) {
+                int subscription = intent.getIntExtra(SUBSCRIPTION_KEY, 0);
+                if (DBG) log("SIM state changed on sub " + subscription + ", invalidating");
+                invalidateSubscription(subscription);
+            }
+        }
+    };
+
+    static synchronized SimPhoneBookCache getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new SimPhoneBookCache(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private SimPhoneBookCache(Context context) {
+        context.registerReceiver(mReceiver,
+                new IntentFilter(TelephonyIntents.ACTION_SIM_STATE_CHANGED));
+    }
+
+    /**
+     * Returns a new cursor over the cached phone book for {@code uri}, or null
+     * if it has to be read from the SIM.
+     */
+    Cursor query(Uri uri) {
+        ArrayList<Object[]> rows = mPhoneBooks.get(uri);
+        if (rows == null) {
+            return null;
+        }
+        if (DBG) log("query: cache hit for " + uri + ", " + rows.size() + " rows");
+        return toCursor(rows);
+    }
+
+    /**
+     * Stores the result of a provider query for {@code uri} and returns the
+     * cursor the caller should display in its place.
+     */
+    Cursor put(Uri uri, Cursor c) {
+        if (uri == null || c == null) {
+            return c;
+        }
+        int[] columns = new int[COLUMN_NAMES.length];
+        for (int i = 0; i < COLUMN_NAMES.length; i++) {
+            columns[i] = c.getColumnIndex(COLUMN_NAMES[i]);
+        }
+        ArrayList<Object[]> rows = new ArrayList<Object[]>(c.getCount());
+        c.moveToPosition(-1);
+        while (c.moveToNext()) {
+            Object[] row = new Object[COLUMN_NAMES.length];
+            for (int i = 0; i < ID_COLUMN; i++) {
+                row[i] = columns[i] >= 0 ? c.getString(columns[i]) : null;
+            }
+            row[ID_COLUMN] = columns[ID_COLUMN] >= 0
+                    ? c.getLong(columns[ID_COLUMN]) : (long) rows.size();
+            rows.add(row);
+        }
+        c.close();
+        mPhoneBooks.put(uri, rows);
+        return toCursor(rows);
+    }
+
+    /**
+     * Optimistically adds a record to the cached phone book for {@code uri}.
+     */
+    void applyInsert(Uri uri, String name, String number) {
+        invalidateAggregates();
+        ArrayList<Object[]> rows = mPhoneBooks.get(uri);
+        if (rows != null) {
+            long id = 0;
+            for (Object[] row : rows) {
+                id = Math.max(id, (Long) row[ID_COLUMN] + 1);
+            }
+            rows.add(new Object[] { name, number, null, id });
+        }
+    }
+
+    /**
+     * Optimistically replaces a record in the cached phone book for {@code uri}.
+     */
+    void applyUpdate(Uri uri, String oldName, String oldNumber, String newName,
+            String newNumber) {
+        invalidateAggregates();
+        ArrayList<Object[]> rows = mPhoneBooks.get(uri);
+        if (rows == null) {
+            return;
+        }
+        int index = indexOf(rows, oldName, oldNumber);
+        if (index < 0) {
+            // Don't know which record the SIM will touch; read it back.
+            mPhoneBooks.remove(uri);
+            return;
+        }
+        Object[] row = rows.get(index);
+        rows.set(index, new Object[] { newName, newNumber, row[EMAILS_COLUMN], row[ID_COLUMN] });
+    }
+
+    /**
+     * Optimistically removes a record from the cached phone book for {@code uri}.
+     */
+    void applyDelete(Uri uri, String name, String number) {
+        invalidateAggregates();
+        ArrayList<Object[]> rows = mPhoneBooks.get(uri);
+        if (rows == null) {
+            return;
+        }
+        int index = indexOf(rows, name, number);
+        if (index < 0) {
+            mPhoneBooks.remove(uri);
+            return;
+        }
+        rows.remove(index);
+    }
+
+    /**
+     * Drops the cached phone book for {@code uri}.  Used to roll back an
+     * optimistic change the SIM rejected.
+     */
+    void invalidate(Uri uri) {
+        if (DBG) log("invalidate: " + uri);
+        mPhoneBooks.remove(uri);
+        invalidateAggregates();
+    }
+
+    private void invalidateSubscription(int subscription) {
+        Iterator<Uri> it = mPhoneBooks.keySet().iterator();
+        while (it.hasNext()) {
+            int sub = getSubscription(it.next());
+            if (sub == subscription || sub == ALL_SUBSCRIPTIONS) {
+                it.remove();
+            }
+        }
+    }
+
+    /** Drops the phone books that merge every SIM, since any edit changes them. */
+    private void invalidateAggregates() {
+        Iterator<Uri> it = mPhoneBooks.keySet().iterator();
+        while (it.hasNext()) {
+            if (getSubscription(it.next()) == ALL_SUBSCRIPTIONS) {
+                it.remove();
+            }
+        }
+    }
+
+    private static int indexOf(ArrayList<Object[]> rows, String name, String number) {
+        for (int i = 0; i < rows.size(); i++) {
+            Object[] row = rows.get(i);
+            if (TextUtils.equals(emptyToNull((String) row[NAME_COLUMN]), emptyToNull(name))
+                    && PhoneNumberUtils.compare((String) row[NUMBER_COLUMN], number)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String emptyToNull(String s) {
+        return TextUtils.isEmpty(s) ? null : s;
+    }
+
+    /**
+     * Maps an icc / iccmsim phone book URI to its subscription: "adn", "fdn"
+     * are sub 0, "adn_sub2" is sub 1 and so on; "adn_all" covers every SIM.
+     */
+    private static int getSubscription(Uri uri) {
+        String path = uri.getLastPathSegment();
+        if (path == null) {
+            return 0;
+        }
+        if (path.endsWith("_all")) {
+            return ALL_SUBSCRIPTIONS;
+        }
+        int index = path.lastIndexOf("_sub");
+        if (index >= 0) {
+            try {
+                return Integer.parseInt(path.substring(index + 4)) - 1;
+            } catch (NumberFormatException e) {
+                Log.w(LOG_TAG, "Unexpected phone book uri: " + uri);
+            }
+        }
+        return 0;
+    }
+
+    private static Cursor toCursor(ArrayList<Object[]> rows) {
+        MatrixCursor cursor = new MatrixCursor(COLUMN_NAMES, rows.size());
+        for (Object[] row : rows) {
+            cursor.addRow(row);
+        }
+        return cursor;
+    }
+
+    private static void log(String msg) {
+        Log.d(LOG_TAG, msg);
+    }
+}
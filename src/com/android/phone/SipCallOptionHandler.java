@@ -104,6 +104,36 @@ public class SipCallOptionHandler extends Activity implements
      */
     private static final String IMS_PS_DOMAIN = "persist.radio.domain.ps";
 
+    /**
+     * Returns true if {@code callIntent} (the CALL intent that would be
+     * passed to us in EXTRA_NEW_CALL_INTENT) is a regular PSTN call that
+     * this activity would place right away, without asking the user or
+     * looking at the SIP profiles: either SIP calls aren't possible, a
+     * gateway provider already took the call, or SIP is only used for SIP
+     * addresses.  Calls that may be turned into IMS calls aren't included.
+     *
+     * OutgoingCallBroadcaster uses this to skip launching this activity
+     * for most calls.  Keep it in sync with onCreate().
+     */
+    static boolean isPstnCallWithoutChoice(Context context, Intent callIntent, String number) {
+        Uri uri = callIntent.getData();
+        if (uri == null || !Constants.SCHEME_TEL.equals(uri.getScheme())
+                || PhoneNumberUtils.isUriNumber(number)
+                || callIntent.getBooleanExtra(
+                        OutgoingCallBroadcaster.EXTRA_DIAL_CONFERENCE_URI, false)) {
+            return false;
+        }
+        // See useImsPhone().
+        if (PhoneUtils.isCallOnImsEnabled()
+                && new ImsSharedPreferences(context).getisImsDefault()) {
+            return false;
+        }
+        return !PhoneUtils.isVoipSupported()
+                || PhoneUtils.hasPhoneProviderExtras(callIntent)
+                || Settings.System.SIP_ADDRESS_ONLY.equals(
+                        new SipSharedPreferences(context).getSipCallOption());
+    }
+
     @Override
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -477,6 +507,7 @@ public class SipCallOptionHandler extends Activity implements
                     }
 
                     // Woo hoo -- it's finally OK to initiate the outgoing call!
+                    Profiler.outgoingCallRouted(false);
                     PhoneGlobals.getInstance().callController.placeCall(mIntent);
                 }
                 finish();
@@ -498,6 +529,12 @@ public class SipCallOptionHandler extends Activity implements
     }
 
     private void startGetPrimarySipPhoneThread() {
+        // Once the profiles are in memory there is no I/O to get off the
+        // UI thread for.
+        if (mSipProfileDb.isLoaded()) {
+            getPrimarySipPhone();
+            return;
+        }
         new Thread(new Runnable() {
             public void run() {
                 getPrimarySipPhone();
@@ -506,11 +543,11 @@ public class SipCallOptionHandler extends Activity implements
     }
 
     private void getPrimarySipPhone() {
-        String primarySipUri = mSipSharedPreferences.getPrimaryAccount();
-
-        mOutgoingSipProfile = getPrimaryFromExistingProfiles(primarySipUri);
+        mOutgoingSipProfile = mSipProfileDb.getPrimaryProfile();
         if (mOutgoingSipProfile == null) {
-            if ((mProfileList != null) && (mProfileList.size() > 0)) {
+            // Let the user pick one.
+            mProfileList = mSipProfileDb.retrieveSipProfileList();
+            if (mProfileList.size() > 0) {
                 runOnUiThread(new Runnable() {
                     public void run() {
                         showDialog(DIALOG_SELECT_OUTGOING_SIP_PHONE);
@@ -521,13 +558,4 @@ public class SipCallOptionHandler extends Activity implements
         }
         setResultAndFinish();
     }
-
-    private SipProfile getPrimaryFromExistingProfiles(String primarySipUri) {
-        mProfileList = mSipProfileDb.retrieveSipProfileList();
-        if (mProfileList == null) return null;
-        for (SipProfile p : mProfileList) {
-            if (p.getUriString().equals(primarySipUri)) return p;
-        }
-        return null;
-    }
 }
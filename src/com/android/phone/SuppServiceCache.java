@@ -0,0 +1,230 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.phone;
+
+import android.os.SystemClock;
+import android.util.Log;
+import android.util.SparseArray;
+
+import com.android.internal.telephony.CallForwardInfo;
+
+/**
+ * Per-subscription cache of supplementary service settings read from the
+ * network (call waiting, CLIR and call forwarding per reason), so that the
+ * call settings screens don't have to query the network every time they are
+ * opened.  XDivert is derived from the CFNRc and call waiting entries of both
+ * subscriptions and so shares them.
+ *
+ * Every kind of setting has a {@link Policy}: within its fresh period an entry
+ * is used as is; after that and until it expires it is still shown right away
+ * but the caller should refresh it from the network in the background.
+ * Entries are dropped when we write the setting, when the network tells us it
+ * may have changed (supplementary service notifications, call forwarding
+ * indicator changes) and when an MMI code completes, since the user may have
+ * changed any of them with a "*#" code.  All methods must be called from the
+ * main thread.
+ */
+public class SuppServiceCache {
+    private static final String LOG_TAG = "SuppServiceCache";
+    private static final boolean DBG = (PhoneGlobals.DBG_LEVEL >= 2);
+
+    // Keys of the cached settings; call forwarding uses one key per CF reason,
+    // see callForwardingKey().
+    static final int KEY_CALL_WAITING = 0;
+    static final int KEY_CLIR = 1;
+    private static final int KEY_CALL_FORWARDING_BASE = 100;
+
+    /**
+     * Freshness policy of a kind of setting.
+     */
+    static class Policy {
+        /** How long an entry can be used without refreshing it. */
+        final long freshMillis;
+        /** How long an entry can be shown at all, while refreshing it. */
+        final long expireMillis;
+
+        Policy(long freshMillis, long expireMillis) {
+            this.freshMillis = freshMillis;
+            this.expireMillis = expireMillis;
+        }
+    }
+
+    private static final long MINUTE = 60 * 1000;
+    private static final Policy CALL_WAITING_POLICY = new Policy(5 * MINUTE, 60 * MINUTE);
+    private static final Policy CLIR_POLICY = new Policy(5 * MINUTE, 60 * MINUTE);
+    private static final Policy CALL_FORWARDING_POLICY = new Policy(5 * MINUTE, 30 * MINUTE);
+
+    private static SuppServiceCache sInstance;
+
+    /** A cached network response along with the time it was received. */
+    private static class Entry {
+        final Object value;
+        final long timestamp;
+
+        Entry(Object value) {
+            this.value = value;
+            this.timestamp = SystemClock.elapsedRealtime();
+        }
+
+        long age() {
+            return SystemClock.elapsedRealtime() - timestamp;
+        }
+    }
+
+    /** Cached entries, by subscription and then by key. */
+    private final SparseArray<SparseArray<Entry>> mEntries = new SparseArray<SparseArray<Entry>>();
+
+    static synchronized SuppServiceCache getInstance() {
+        if (sInstance == null) {
+            sInstance = new SuppServiceCache();
+        }
+        return sInstance;
+    }
+
+    private SuppServiceCache() {
+    }
+
+    static int callForwardingKey(int reason) {
+        return KEY_CALL_FORWARDING_BASE + reason;
+    }
+
+    /**
+     * Returns the cached call waiting response ({@code int[]} as returned by
+     * Phone.getCallWaiting()), or null if there is no usable one.
+     */
+    int[] getCallWaiting(int subscription) {
+        return (int[]) get(subscription, KEY_CALL_WAITING);
+    }
+
+    void putCallWaiting(int subscription, int[] cwArray) {
+        put(subscription, KEY_CALL_WAITING, cwArray);
+    }
+
+    /**
+     * Returns the cached CLIR response ({@code int[2]} as returned by
+     * Phone.getOutgoingCallerIdDisplay()), or null if there is no usable one.
+     */
+    int[] getClir(int subscription) {
+        return (int[]) get(subscription, KEY_CLIR);
+    }
+
+    void putClir(int subscription, int[] clirArray) {
+        put(subscription, KEY_CLIR, clirArray);
+    }
+
+    /**
+     * Returns the cached call forwarding result for {@code reason}, or null
+     * if there is no usable one.
+     */
+    CallForwardInfo[] getCallForwarding(int subscription, int reason) {
+        return (CallForwardInfo[]) get(subscription, callForwardingKey(reason));
+    }
+
+    void putCallForwarding(int subscription, int reason, CallForwardInfo[] info) {
+        put(subscription, callForwardingKey(reason), info);
+    }
+
+    /**
+     * Drops every cached call forwarding result for the subscription.
+     */
+    void invalidateCallForwarding(int subscription) {
+        if (DBG) log("invalidateCallForwarding: sub=" + subscription);
+        SparseArray<Entry> entries = mEntries.get(subscription);
+        if (entries == null) {
+            return;
+        }
+        for (int i = entries.size() - 1; i >= 0; i--) {
+            if (entries.keyAt(i) >= KEY_CALL_FORWARDING_BASE) {
+                entries.removeAt(i);
+            }
+        }
+    }
+
+    /**
+     * Drops every cached call forwarding result, for the notifications that
+     * don't tell which subscription they are about.
+     */
+    void invalidateCallForwarding() {
+        for (int i = 0; i < mEntries.size(); i++) {
+            invalidateCallForwarding(mEntries.keyAt(i));
+        }
+    }
+
+    void invalidate(int subscription, int key) {
+        if (DBG) log("invalidate: sub=" + subscription + ", key=" + key);
+        SparseArray<Entry> entries = mEntries.get(subscription);
+        if (entries != null) {
+            entries.delete(key);
+        }
+    }
+
+    void invalidateAll(int subscription) {
+        if (DBG) log("invalidateAll: sub=" + subscription);
+        mEntries.delete(subscription);
+    }
+
+    /**
+     * Returns true if the entry for {@code key} exists and is within the fresh
+     * period of its policy, i.e. there is no need to refresh it.
+     */
+    boolean isFresh(int subscription, int key) {
+        Entry entry = getEntry(subscription, key);
+        return entry != null && entry.age() < getPolicy(key).freshMillis;
+    }
+
+    private Object get(int subscription, int key) {
+        Entry entry = getEntry(subscription, key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.age() >= getPolicy(key).expireMillis) {
+            invalidate(subscription, key);
+            return null;
+        }
+        return entry.value;
+    }
+
+    private void put(int subscription, int key, Object value) {
+        if (DBG) log("put: sub=" + subscription + ", key=" + key);
+        SparseArray<Entry> entries = mEntries.get(subscription);
+        if (entries == null) {
+            entries = new SparseArray<Entry>();
+            mEntries.put(subscription, entries);
+        }
+        entries.put(key, new Entry(value));
+    }
+
+    private Entry getEntry(int subscription, int key) {
+        SparseArray<Entry> entries = mEntries.get(subscription);
+        return entries != null ? entries.get(key) : null;
+    }
+
+    private static Policy getPolicy(int key) {
+        switch (key) {
+            case KEY_CALL_WAITING:
+                return CALL_WAITING_POLICY;
+            case KEY_CLIR:
+                return CLIR_POLICY;
+            default:
+                return CALL_FORWARDING_POLICY;
+        }
+    }
+
+    private static void log(String msg) {
+        Log.d(LOG_TAG, msg);
+    }
+}
@@ -48,6 +48,12 @@ public class TelephonyDebugService extends Service {
     @Override
     protected void dump(FileDescriptor fd, PrintWriter pw, String[] args) {
         mDebugService.dump(fd, pw, args);
+        pw.println();
+        PhoneWakeLock.getInstance().dump(pw);
+        pw.println();
+        CallEventJournal.getInstance().dump(pw);
+        pw.println();
+        CallPipelineStats.dump(pw);
     }
 }
 
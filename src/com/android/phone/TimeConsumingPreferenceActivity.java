@@ -55,6 +55,9 @@ public class TimeConsumingPreferenceActivity extends PreferenceActivity
     static final int STK_CC_SS_TO_SS_ERROR = 900;
 
     private final ArrayList<String> mBusyList = new ArrayList<String>();
+    /** Number of operations started since mBusyList was last empty. */
+    private int mBusyTotal = 0;
+    private ProgressDialog mReadingDialog;
 
     protected boolean mIsForeground = false;
 
@@ -70,6 +73,7 @@ public class TimeConsumingPreferenceActivity extends PreferenceActivity
                     dialog.setCancelable(true);
                     dialog.setOnCancelListener(this);
                     dialog.setMessage(getText(R.string.reading_settings));
+                    mReadingDialog = dialog;
                     return dialog;
                 case BUSY_SAVING_DIALOG:
                     dialog.setCancelable(false);
@@ -157,11 +161,16 @@ public class TimeConsumingPreferenceActivity extends PreferenceActivity
         if (DBG) dumpState();
         if (DBG) Log.d(LOG_TAG, "onStarted, preference=" + preference.getKey()
                 + ", reading=" + reading);
+        if (mBusyList.isEmpty()) {
+            mBusyTotal = 0;
+        }
         mBusyList.add(preference.getKey());
+        mBusyTotal++;
 
         if (mIsForeground) {
               if (reading) {
                   showDialog(BUSY_READING_DIALOG);
+                  updateReadingProgress();
               } else {
                   showDialog(BUSY_SAVING_DIALOG);
               }
@@ -182,10 +191,28 @@ public class TimeConsumingPreferenceActivity extends PreferenceActivity
             } else {
                 dismissDialogSafely(BUSY_SAVING_DIALOG);
             }
+        } else if (reading) {
+            updateReadingProgress();
         }
         preference.setEnabled(true);
     }
 
+    /**
+     * When several settings are being read at once, show how many of them
+     * have completed in the reading dialog.
+     */
+    private void updateReadingProgress() {
+        if (mReadingDialog == null) {
+            return;
+        }
+        if (mBusyTotal > 1) {
+            mReadingDialog.setMessage(getString(R.string.reading_settings_progress,
+                    mBusyTotal - mBusyList.size(), mBusyTotal));
+        } else {
+            mReadingDialog.setMessage(getText(R.string.reading_settings));
+        }
+    }
+
     @Override
     public void onError(Preference preference, int error) {
         if (DBG) dumpState();
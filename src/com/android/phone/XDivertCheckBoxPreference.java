@@ -110,7 +110,6 @@ public class XDivertCheckBoxPreference extends CheckBoxPreference {
             mXDivertUtility.storeNumber(line1Number[i], i);
         }
 
-        processStartDialog(START, true);
         if (!skipReading) {
             mPhoneObj = new Phone[mNumPhones];
             mLine1Number = new String[mNumPhones];
@@ -120,6 +119,16 @@ public class XDivertCheckBoxPreference extends CheckBoxPreference {
                 mLine1Number[i] = line1Number[i];
             }
 
+            // The XDivert state is just CFNRc and call waiting of both subs;
+            // if those are all freshly cached there is nothing to query, and
+            // no progress dialog to show.
+            if (initFromCache()) {
+                return;
+            }
+        }
+
+        processStartDialog(START, true);
+        if (!skipReading) {
             //Query for CFNRc for SUB1.
             mPhoneObj[SUB1].getCallForwardingOption(CommandsInterface.CF_REASON_NOT_REACHABLE,
                     mGetOptionComplete.obtainMessage(MESSAGE_GET_CFNRC, SUB1, 0));
@@ -171,6 +180,38 @@ public class XDivertCheckBoxPreference extends CheckBoxPreference {
         }
     }
 
+    /**
+     * Computes the XDivert state from {@link SuppServiceCache} if it holds
+     * fresh CFNRc and call waiting results for both subscriptions.
+     */
+    private boolean initFromCache() {
+        SuppServiceCache cache = SuppServiceCache.getInstance();
+        int cfKey = SuppServiceCache.callForwardingKey(CommandsInterface.CF_REASON_NOT_REACHABLE);
+        boolean[] callWaiting = new boolean[mNumPhones];
+        for (int i = 0; i < mNumPhones; i++) {
+            if (!cache.isFresh(i, cfKey) || !cache.isFresh(i, SuppServiceCache.KEY_CALL_WAITING)) {
+                return false;
+            }
+            for (CallForwardInfo info : cache.getCallForwarding(i,
+                    CommandsInterface.CF_REASON_NOT_REACHABLE)) {
+                if ((CommandsInterface.SERVICE_CLASS_VOICE & info.serviceClass) != 0) {
+                    mCFLine1Number[i] = info.number;
+                }
+            }
+            int[] cwArray = cache.getCallWaiting(i);
+            callWaiting[i] = (cwArray.length > 1)
+                    && (cwArray[0] == 1) && ((cwArray[1] & 0x01) == 0x01);
+        }
+        if (DBG) Log.d(LOG_TAG, "initFromCache: using cached CFNRc and call waiting");
+        mSub1CallWaiting = callWaiting[SUB1];
+        mSub2CallWaiting = callWaiting[SUB2];
+        mXdivertStatus = validateXDivert();
+        setChecked(mXdivertStatus);
+        mCallNotif.onXDivertChanged(mXdivertStatus);
+        mCallNotif.setXDivertStatus(mXdivertStatus);
+        return true;
+    }
+
     void queryCallWaiting(int arg) {
         //Get Call Waiting for "arg" subscription
         mPhoneObj[arg].getCallWaiting(mGetOptionComplete.obtainMessage(MESSAGE_GET_CALL_WAITING,
@@ -333,6 +374,8 @@ public class XDivertCheckBoxPreference extends CheckBoxPreference {
                 if (DBG) Log.d(LOG_TAG, "handleGetCFResponse: cfInfoArray.length==0");
                 mTcpListener.onError(XDivertCheckBoxPreference.this, RESPONSE_ERROR);
             } else {
+                SuppServiceCache.getInstance().putCallForwarding(arg,
+                        CommandsInterface.CF_REASON_NOT_REACHABLE, cfInfoArray);
                 for (int i = 0, length = cfInfoArray.length; i < length; i++) {
                     if (DBG) Log.d(LOG_TAG, "handleGetCFResponse, cfInfoArray[" + i + "]="
                             + cfInfoArray[i]);
@@ -358,6 +401,7 @@ public class XDivertCheckBoxPreference extends CheckBoxPreference {
 
     private void handleSetCFNRCResponse(AsyncResult ar, int arg) {
         if (DBG) Log.d(LOG_TAG, "handleSetCFResponse: done on Sub = " + arg);
+        SuppServiceCache.getInstance().invalidateCallForwarding(arg);
 
         if (ar.exception != null) {
             if (DBG) Log.d(LOG_TAG, "handleSetCFResponse: ar.exception = " + ar.exception);
@@ -399,6 +443,7 @@ public class XDivertCheckBoxPreference extends CheckBoxPreference {
             //with the TS 27.007 service class bit vector of services
             //for which call waiting is enabled.
             int[] cwArray = (int[])ar.result;
+            SuppServiceCache.getInstance().putCallWaiting(arg1, cwArray);
             if (arg1 == SUB1) {
                 mSub1CallWaiting = ((cwArray[0] == 1) && ((cwArray[1] & 0x01) == 0x01));
                 Log.d(LOG_TAG,"CW for Sub0 = " + mSub1CallWaiting);
@@ -432,6 +477,7 @@ public class XDivertCheckBoxPreference extends CheckBoxPreference {
     }
 
     private void handleSetCallWaitingResponse(AsyncResult ar, int arg) {
+        SuppServiceCache.getInstance().invalidate(arg, SuppServiceCache.KEY_CALL_WAITING);
         if (ar.exception != null) {
             if (DBG) Log.d(LOG_TAG, "handleSetCallWaitingResponse: ar.exception = " + ar.exception);
             handleRevertOperation(arg, REVERT_SET_CALL_WAITING);
@@ -534,6 +580,7 @@ public class XDivertCheckBoxPreference extends CheckBoxPreference {
 
     private void handleRevertSetCFNRC(AsyncResult ar, int arg) {
         if (DBG) Log.d(LOG_TAG, "handleRevertSetCFNRC: done arg = " + arg+ "res = " + ar);
+        SuppServiceCache.getInstance().invalidateCallForwarding(arg);
         processStopDialog(STOP, false);
 
         if (ar.exception != null) {
@@ -30,10 +30,17 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 
 /**
  * Utility class that helps perform operations on the SipProfile database.
+ *
+ * The profiles are read from disk once per process and kept in memory;
+ * since all changes go through saveProfile() and deleteProfile(), the
+ * in-memory copy is updated along with the files.  Lookups don't touch
+ * the disk once the profiles have been loaded (see {@link #isLoaded()}).
  */
 public class SipProfileDb {
     private static final String TAG = SipProfileDb.class.getSimpleName();
@@ -41,9 +48,15 @@ public class SipProfileDb {
     private static final String PROFILES_DIR = "/profiles/";
     private static final String PROFILE_OBJ_FILE = ".pobj";
 
+    // The profiles in sProfilesDirectory, by profile name (which is also
+    // the name of the directory a profile is stored in) and by URI.
+    // Guarded by SipProfileDb.class.
+    private static String sProfilesDirectory;
+    private static LinkedHashMap<String, SipProfile> sProfilesByName;
+    private static HashMap<String, SipProfile> sProfilesByUri;
+
     private String mProfilesDirectory;
     private SipSharedPreferences mSipSharedPreferences;
-    private int mProfilesCount = -1;
 
     public SipProfileDb(Context context) {
         mProfilesDirectory = context.getFilesDir().getAbsolutePath()
@@ -53,9 +66,10 @@ public class SipProfileDb {
 
     public void deleteProfile(SipProfile p) {
         synchronized(SipProfileDb.class) {
+            loadProfilesLocked();
             deleteProfile(new File(mProfilesDirectory + p.getProfileName()));
-            if (mProfilesCount < 0) retrieveSipProfileListInternal();
-            mSipSharedPreferences.setProfilesCount(--mProfilesCount);
+            removeProfileLocked(p.getProfileName());
+            mSipSharedPreferences.setProfilesCount(sProfilesByName.size());
         }
     }
 
@@ -68,7 +82,7 @@ public class SipProfileDb {
 
     public void saveProfile(SipProfile p) throws IOException {
         synchronized(SipProfileDb.class) {
-            if (mProfilesCount < 0) retrieveSipProfileListInternal();
+            loadProfilesLocked();
             File f = new File(mProfilesDirectory + p.getProfileName());
             if (!f.exists()) f.mkdirs();
             AtomicFile atomicFile =
@@ -80,7 +94,6 @@ public class SipProfileDb {
                 oos = new ObjectOutputStream(fos);
                 oos.writeObject(p);
                 oos.flush();
-                mSipSharedPreferences.setProfilesCount(++mProfilesCount);
                 atomicFile.finishWrite(fos);
             } catch (IOException e) {
                 atomicFile.failWrite(fos);
@@ -88,43 +101,92 @@ public class SipProfileDb {
             } finally {
                 if (oos != null) oos.close();
             }
+            removeProfileLocked(p.getProfileName());
+            sProfilesByName.put(p.getProfileName(), p);
+            sProfilesByUri.put(p.getUriString(), p);
+            mSipSharedPreferences.setProfilesCount(sProfilesByName.size());
         }
     }
 
     public int getProfilesCount() {
-        return (mProfilesCount < 0) ?
-                mSipSharedPreferences.getProfilesCount() : mProfilesCount;
+        synchronized(SipProfileDb.class) {
+            return isLoadedLocked() ? sProfilesByName.size()
+                    : mSipSharedPreferences.getProfilesCount();
+        }
+    }
+
+    /**
+     * Returns true if the profiles have been read from disk already, so
+     * that the other methods return without doing any I/O.
+     */
+    public boolean isLoaded() {
+        synchronized(SipProfileDb.class) {
+            return isLoadedLocked();
+        }
     }
 
     public List<SipProfile> retrieveSipProfileList() {
         synchronized(SipProfileDb.class) {
-            return retrieveSipProfileListInternal();
+            loadProfilesLocked();
+            // Callers are free to modify the list they get.
+            return Collections.synchronizedList(
+                    new ArrayList<SipProfile>(sProfilesByName.values()));
         }
     }
 
-    private List<SipProfile> retrieveSipProfileListInternal() {
-        List<SipProfile> sipProfileList = Collections.synchronizedList(
-                new ArrayList<SipProfile>());
+    /** Returns the profile with the URI {@code uri}, or null. */
+    public SipProfile getProfile(String uri) {
+        synchronized(SipProfileDb.class) {
+            loadProfilesLocked();
+            return (uri != null) ? sProfilesByUri.get(uri) : null;
+        }
+    }
+
+    /** Returns the primary account's profile, or null if there is none. */
+    public SipProfile getPrimaryProfile() {
+        return getProfile(mSipSharedPreferences.getPrimaryAccount());
+    }
+
+    private boolean isLoadedLocked() {
+        return (sProfilesByName != null) && mProfilesDirectory.equals(sProfilesDirectory);
+    }
+
+    private void removeProfileLocked(String profileName) {
+        SipProfile old = sProfilesByName.remove(profileName);
+        if (old != null) {
+            sProfilesByUri.remove(old.getUriString());
+        }
+    }
+
+    private void loadProfilesLocked() {
+        if (isLoadedLocked()) return;
+
+        LinkedHashMap<String, SipProfile> profilesByName =
+                new LinkedHashMap<String, SipProfile>();
+        HashMap<String, SipProfile> profilesByUri = new HashMap<String, SipProfile>();
 
         File root = new File(mProfilesDirectory);
         String[] dirs = root.list();
-        if (dirs == null) return sipProfileList;
-        for (String dir : dirs) {
-            File f = new File(new File(root, dir), PROFILE_OBJ_FILE);
-            if (!f.exists()) continue;
-            try {
-                SipProfile p = deserialize(f);
-                if (p == null) continue;
-                if (!dir.equals(p.getProfileName())) continue;
-
-                sipProfileList.add(p);
-            } catch (IOException e) {
-                Log.e(TAG, "retrieveProfileListFromStorage()", e);
+        if (dirs != null) {
+            for (String dir : dirs) {
+                File f = new File(new File(root, dir), PROFILE_OBJ_FILE);
+                if (!f.exists()) continue;
+                try {
+                    SipProfile p = deserialize(f);
+                    if (p == null) continue;
+                    if (!dir.equals(p.getProfileName())) continue;
+
+                    profilesByName.put(dir, p);
+                    profilesByUri.put(p.getUriString(), p);
+                } catch (IOException e) {
+                    Log.e(TAG, "retrieveProfileListFromStorage()", e);
+                }
             }
         }
-        mProfilesCount = sipProfileList.size();
-        mSipSharedPreferences.setProfilesCount(mProfilesCount);
-        return sipProfileList;
+        sProfilesDirectory = mProfilesDirectory;
+        sProfilesByName = profilesByName;
+        sProfilesByUri = profilesByUri;
+        mSipSharedPreferences.setProfilesCount(profilesByName.size());
     }
 
     private SipProfile deserialize(File profileObjectFile) throws IOException {
@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+// Need to be in this package to access package methods.
+package com.android.phone;
+
+import android.content.Context;
+import android.os.Debug;
+import android.telephony.PhoneNumberUtils;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.util.Log;
+
+import com.android.internal.telephony.CallerInfo;
+import static com.android.internal.telephony.PhoneConstants.PRESENTATION_ALLOWED;
+
+// Timings of the phone number handling that runs on every call, over
+// corpora of international numbers, SIP URIs and CNAP strings.  Each
+// routine is run for WARMUP_ITERATIONS first, then timed; the time and
+// the number of allocations per call are logged under the "PhoneNumberPerf"
+// tag, e.g.
+//   adb shell am instrument -w -e class com.android.phone.PhoneNumberPerfTest \
+//       com.android.phone.tests/android.test.InstrumentationTestRunner
+//   adb logcat -s PhoneNumberPerf
+// Run it on the same device before and after a change and compare.
+public class PhoneNumberPerfTest extends AndroidTestCase {
+    private static final String TAG = "PhoneNumberPerf";
+
+    private static final int WARMUP_ITERATIONS = 2000;
+    private static final int ITERATIONS = 20000;
+
+    private static final String[] INTERNATIONAL_NUMBERS = {
+        "+1 650-253-0000", "+44 20 7031 3000", "+49 (89) 36 08 60", "+33 1 42 68 53 00",
+        "+81-3-6384-9000", "+86 10 6250 3000", "+91 80 6721 8000", "+55 11 2395-8400",
+        "011 44 20 7031 3000", "00 49 89 36086 0", "6502530000", "(650) 253-0000",
+        "1-800-FLOWERS", "*67 650 253 0000", "#31#6502530000", "112", "911",
+        "6502530000,1234", "6502530000;4321", "+1 650 253 0000 ext. 12"
+    };
+
+    private static final String[] SIP_URIS = {
+        "alice@example.com", "sip:bob@sip.example.org", "6502530000@voip.example.net",
+        "carol.smith@sip2sip.info", "+16502530000@ims.mnc001.mcc001.3gppnetwork.org"
+    };
+
+    private static final String[] CNAP_STRINGS = {
+        "PRIVATE", "P", "RES", "UNAVAILABLE", "UNKNOWN", "UNA", "U", "ABSENT NUMBER",
+        "ABSENTNUMBER", "6502530000", "+44 20 7031 3000"
+    };
+
+    private Context mContext;
+    private CallerInfo mCallerInfo;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext = getContext();
+        mCallerInfo = new CallerInfo();
+    }
+
+    /** One call of the routine being measured, on one element of a corpus. */
+    private interface Operation {
+        Object run(String input);
+    }
+
+    @LargeTest
+    public void testCallerInfoCacheKey() throws Exception {
+        assertEquals("2530000",
+                CallerInfoCache.getKeyForNormalizedNumber(
+                        PhoneNumberUtils.normalizeNumber("+1 650-253-0000")));
+        assertEquals("112", CallerInfoCache.getKeyForNormalizedNumber("112"));
+
+        measure("CallerInfoCache key", INTERNATIONAL_NUMBERS, new Operation() {
+            @Override
+            public Object run(String input) {
+                return CallerInfoCache.getKeyForNormalizedNumber(
+                        PhoneNumberUtils.normalizeNumber(input));
+            }
+        });
+    }
+
+    @LargeTest
+    public void testToLogSafePhoneNumber() throws Exception {
+        assertEquals("", PhoneUtils.toLogSafePhoneNumber(null));
+
+        final Operation operation = new Operation() {
+            @Override
+            public Object run(String input) {
+                return PhoneUtils.toLogSafePhoneNumber(input);
+            }
+        };
+        measure("toLogSafePhoneNumber, international", INTERNATIONAL_NUMBERS, operation);
+        measure("toLogSafePhoneNumber, SIP", SIP_URIS, operation);
+    }
+
+    @LargeTest
+    public void testModifyForSpecialCnapCases() throws Exception {
+        measure("modifyForSpecialCnapCases", CNAP_STRINGS, new Operation() {
+            @Override
+            public Object run(String input) {
+                mCallerInfo.numberPresentation = PRESENTATION_ALLOWED;
+                return PhoneUtils.modifyForSpecialCnapCases(mContext, mCallerInfo, input,
+                        PRESENTATION_ALLOWED);
+            }
+        });
+    }
+
+    @LargeTest
+    public void testOutgoingNumberCleanup() throws Exception {
+        // What OutgoingCallBroadcaster does to a number typed or passed in
+        // with an ACTION_CALL intent.
+        assertEquals("18003569377", PhoneNumberUtils.stripSeparators(
+                PhoneNumberUtils.convertKeypadLettersToDigits("1-800-FLOWERS")));
+
+        measure("convertKeypadLettersToDigits + stripSeparators", INTERNATIONAL_NUMBERS,
+                new Operation() {
+            @Override
+            public Object run(String input) {
+                return PhoneNumberUtils.stripSeparators(
+                        PhoneNumberUtils.convertKeypadLettersToDigits(input));
+            }
+        });
+    }
+
+    // HELPERS
+
+    /**
+     * Runs {@code operation} over {@code corpus} round-robin and logs the
+     * average time and allocations per call.
+     */
+    private void measure(String name, String[] corpus, Operation operation) {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            assertNotNull(operation.run(corpus[i % corpus.length]));
+        }
+
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            operation.run(corpus[i % corpus.length]);
+        }
+        long nanos = System.nanoTime() - start;
+        Debug.stopAllocCounting();
+        int allocations = Debug.getThreadAllocCount();
+        int bytes = Debug.getThreadAllocSize();
+
+        Log.i(TAG, name + ": " + (nanos / ITERATIONS) + " ns/op, "
+                + ((float) allocations / ITERATIONS) + " allocs/op, "
+                + (bytes / ITERATIONS) + " bytes/op");
+    }
+}